@@ -0,0 +1,93 @@
+package ru.bitte.lab5;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An object of the {@code Autosave} class saves a collection automatically once enough modifications have been made
+ * since the last save, or once enough time has passed since then, whichever comes first. The collection is checked
+ * periodically on a scheduled thread, and the saves go through a {@link CollectionSaver}, so they're written in the
+ * background just like the ones requested by the {@code save} command.
+ * <br>The collection is only saved if it has been modified since the last save, and no save is requested while another
+ * one is still in progress. After a save has failed, the next one is only requested once the interval has passed
+ * again (or a minute if the collection isn't saved by time), so that a persistent failure, such as
+ * a full disk, isn't retried and reported on every check. Any modifications left unsaved are saved when the autosave
+ * is closed.
+ * <br>The collection is always saved automatically as a snapshot (see {@link CollectionSaver#saveToSnapshot()}), so
+ * only the changes are appended to the delta file of the snapshot. If there is no snapshot to append them to yet,
+ * e.g. when the collection has been loaded from an XML file, the first save writes the whole collection to a new one,
+ * which the following saves then append the changes to. Saving the whole collection every time instead would leave
+ * a new file behind on every save.
+ */
+public class Autosave implements Closeable {
+    private static final long CHECK_PERIOD = 250; // how often the collection is checked, in milliseconds
+    private static final long RETRY_DELAY = 60; // the seconds before retrying a failed save if not saving by time
+    private final CollectionKeeper collection;
+    private final CollectionSaver saver;
+    private final long modifications;
+    private final long interval;
+    private final long retryDelay; // the time after a failed save before the next one, in nanoseconds
+    private final ScheduledExecutorService scheduler;
+    private long lastSave; // the time of the last save in nanoseconds, only accessed by the scheduled thread
+
+    /**
+     * Constructs an {@code Autosave} object and starts checking the collection.
+     * @param collection the reference to a collection keeper of elements
+     * @param saver a reference to a {@link CollectionSaver} instance used for saving the collection
+     * @param modifications the number of modifications that triggers a save, or 0 to not count the modifications
+     * @param interval the number of seconds after which the modified collection is saved, or 0 to not save it by time
+     */
+    public Autosave(CollectionKeeper collection, CollectionSaver saver, long modifications, long interval) {
+        this.collection = collection;
+        this.saver = saver;
+        this.modifications = modifications;
+        this.interval = TimeUnit.SECONDS.toNanos(interval);
+        this.retryDelay = TimeUnit.SECONDS.toNanos(interval > 0 ? interval : RETRY_DELAY);
+        this.lastSave = System.nanoTime();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "autosave");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops checking the collection and requests a save of the modifications made since the last save, if there are
+     * any. The save itself is written by the saver.
+     * @throws IOException if the waiting for the last check has been interrupted
+     */
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while stopping the autosave");
+        }
+        if (collection.getUnsavedModificationCount() > 0) {
+            saver.saveToSnapshot();
+        }
+    }
+
+    // saves the collection if it has been modified enough or long enough ago
+    private void check() {
+        long unsaved = collection.getUnsavedModificationCount();
+        if (unsaved == 0 || saver.isSaving()) {
+            return;
+        }
+        if (saver.hasFailed() && System.nanoTime() - lastSave < retryDelay) {
+            return;
+        }
+        boolean enoughModifications = modifications > 0 && unsaved >= modifications;
+        boolean enoughTime = interval > 0 && System.nanoTime() - lastSave >= interval;
+        if (enoughModifications || enoughTime) {
+            saver.saveToSnapshot();
+            lastSave = System.nanoTime();
+        }
+    }
+}
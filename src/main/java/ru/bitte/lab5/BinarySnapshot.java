@@ -0,0 +1,348 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementParsingInFileException;
+import ru.bitte.lab5.route.Location;
+import ru.bitte.lab5.route.Route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * An object of the {@code BinarySnapshot} class writes {@link Route} objects from a collection to a compact binary
+ * file and reads them back. Unlike the XML files of {@link Parser}, a snapshot keeps the IDs and the exact creation
+ * dates of the elements, so the collection restored from it is the same as the saved one. The snapshot files are told
+ * apart from the XML files by the {@value #EXTENSION} extension.
+ * <br>A snapshot consists of three parts, with all the numbers stored in the big-endian byte order:
+ * <ul>
+ *     <li>a header of {@value #HEADER_SIZE} bytes: the "LAB5SNAP" magic, the format version, the size of a record,
+ *     the numbers of the records and the strings, the positions of the record and string sections, the CRC32C
+ *     checksum of both sections and, lastly, the CRC32C checksum of the header itself;</li>
+ *     <li>the records, one per element, each of the same size: the ID, the distance, the creation date in
+ *     nanoseconds (see {@link Route#getCreationTime()}), the coordinates, the starting and the destination points,
+ *     and the indexes of the element name and the point names in the string table;</li>
+ *     <li>the string table, in which every distinct name is stored once as its length in bytes followed by the bytes
+ *     themselves in UTF-8.</li>
+ * </ul>
+ * The file is read through memory mapping, so it's never copied into the heap as a whole, and since the records are
+ * of the same size, reading them takes no parsing at all. The checksums are verified before any element is read.
+ * <br>A snapshot can be followed by a delta file with the same name plus the {@value #DELTA_EXTENSION} extension,
+ * holding the changes made to the collection after the snapshot has been written (see {@link ChangeSet}). The changes
+ * are appended to the delta file on every save instead of writing the whole collection again, in the format described
+ * in {@link ChangeRecords}, and they are merged into the elements of the snapshot when it's read. The base of the delta
+ * file is the pair of the checksums from the header of its snapshot, so a delta file left over from an earlier snapshot
+ * in the same file (e.g. when a save was interrupted before deleting it) doesn't match the new snapshot and is
+ * ignored.
+ */
+public class BinarySnapshot {
+    /**
+     * The extension of the snapshot files, including the dot.
+     */
+    public static final String EXTENSION = ".bin";
+    /**
+     * The size of the snapshot header in bytes.
+     */
+    public static final int HEADER_SIZE = 64;
+    /**
+     * The extension added to the name of a snapshot file to get the name of its delta file, including the dot.
+     */
+    public static final String DELTA_EXTENSION = ".delta";
+    static final byte[] MAGIC = "LAB5SNAP".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    // id, distance, creation time, coordinates x and y, from x, y and z, to x, y and z, codes of the three names
+    static final int RECORD_SIZE = 4 + 4 + 8 + 8 + 8 + 8 + 8 + 4 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int BUFFER_SIZE = 1 << 16; // the size of the write buffer
+    private static final int CHECKSUMS_OFFSET = 48; // the position of the two checksums in the header
+
+    /**
+     * Returns whether a file is a snapshot file judging by its extension.
+     * @param file the file to be checked
+     * @return {@code true} if the name of the file ends with {@value #EXTENSION}; {@code false} otherwise
+     */
+    public static boolean isSnapshot(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Returns the delta file of a snapshot file.
+     * @param file the snapshot file
+     * @return the {@code File} object representing the delta file, which may not exist
+     */
+    public static File deltaOf(File file) {
+        return new File(file.getPath() + DELTA_EXTENSION);
+    }
+
+    /**
+     * Writes {@code Route} objects from a collection to a new snapshot file. The elements are written one by one
+     * through a fixed size buffer, and only the distinct names are held in memory until the end. The delta file left
+     * from the previous snapshot in the same file, if there is one, is deleted once the snapshot is written.
+     * @param collection the collection from which to gather the {@code Route} objects
+     * @param file the {@code File} object representation of a file to which write the objects in
+     * @throws IOException if an input/output exception occurred
+     */
+    public void writeToFile(Collection<Route> collection, File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChecksummedOutput output = new ChecksummedOutput(channel);
+            output.position = HEADER_SIZE;
+            channel.position(HEADER_SIZE);
+            // the records go first, collecting the distinct names along the way
+            Map<String, Integer> codes = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            int count = 0;
+            for (Route r : collection) {
+                output.ensure(RECORD_SIZE);
+                output.buffer.putInt(r.getId());
+                output.buffer.putInt(r.getDistance());
+                output.buffer.putLong(r.getCreationTime());
+                output.buffer.putLong(r.getCoordinates().getX());
+                output.buffer.putLong(r.getCoordinates().getY());
+                putLocation(output.buffer, r.getFrom());
+                putLocation(output.buffer, r.getTo());
+                output.buffer.putInt(encode(r.getName(), codes, strings));
+                output.buffer.putInt(encode(r.getFrom().getName(), codes, strings));
+                output.buffer.putInt(encode(r.getTo().getName(), codes, strings));
+                count++;
+            }
+            // then the string table
+            long stringsOffset = output.position + output.buffer.position();
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                output.ensure(Integer.BYTES);
+                output.buffer.putInt(bytes.length);
+                output.put(bytes);
+            }
+            output.flush();
+            // and finally the header, once everything it describes is known
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(RECORD_SIZE);
+            header.putInt(count);
+            header.putInt(strings.size());
+            header.putLong(HEADER_SIZE);
+            header.putLong(stringsOffset);
+            header.putLong(output.position);
+            header.putInt((int) output.checksum.getValue());
+            header.putInt(headerChecksum(header));
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        Files.deleteIfExists(deltaOf(file).toPath());
+    }
+
+    /**
+     * Appends the changes made to a collection to the delta file of a snapshot file, creating the delta file if it
+     * doesn't exist yet or belongs to another snapshot. The changes are appended right after the last complete record
+     * of the delta file, so a record left written partially by an interrupted save is overwritten rather than hiding
+     * the new ones. The changes are forced to the disk before the method returns.
+     * @param changes the changes made since the snapshot or the previous delta have been written
+     * @param file the {@code File} object representing the snapshot file the changes are made to
+     * @throws IOException if an input/output exception occurred
+     */
+    public void writeDelta(ChangeSet changes, File file) throws IOException {
+        File delta = deltaOf(file);
+        long base = identity(file);
+        long end = delta.exists() ? ChangeRecords.validLength(delta, base) : 0;
+        try (FileChannel channel = FileChannel.open(delta.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            // a delta file without a complete header, or left from another snapshot, is started anew
+            channel.truncate(end);
+            channel.position(end);
+            if (end == 0) {
+                ChangeRecords.writeHeader(channel, base);
+            }
+            CRC32C crc = new CRC32C();
+            if (changes.isCleared()) {
+                ChangeRecords.write(channel, ChangeRecords.clear(), crc);
+            }
+            for (int id : changes.getRemovedIds()) {
+                ChangeRecords.write(channel, ChangeRecords.remove(id), crc);
+            }
+            for (Route element : changes.getPutElements()) {
+                ChangeRecords.write(channel, ChangeRecords.put(element), crc);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads {@code Route} objects from a snapshot file and passes them to the consumer one by one in the order they
+     * were written. The file is memory-mapped, and its checksums are verified before the first element is passed on.
+     * If the snapshot has a delta file written for it, the changes from the delta file are merged into the elements:
+     * the replaced elements are passed on in place of the original ones, the removed ones are skipped, and the added
+     * ones are passed on last.
+     * @param file the {@code File} object representing a snapshot file
+     * @param consumer the consumer that accepts the restored {@code Route} objects
+     * @throws IOException if an input/output exception occurred, or the file isn't a valid snapshot or is damaged
+     * @throws ElementParsingInFileException if an element couldn't be restored from the file
+     */
+    public void readFromFile(File file, Consumer<Route> consumer) throws IOException, ElementParsingInFileException {
+        readFromFile(file, MappedSnapshot.open(file), consumer);
+    }
+
+    /**
+     * Reads {@code Route} objects from a snapshot file that has already been mapped and verified, in the same way as
+     * {@link #readFromFile(File, Consumer)} does.
+     * @param file the {@code File} object representing the snapshot file
+     * @param mapped the snapshot file mapped into memory
+     * @param consumer the consumer that accepts the restored {@code Route} objects
+     * @throws IOException if an input/output exception occurred, or the delta file is damaged
+     * @throws ElementParsingInFileException if an element couldn't be restored from the file
+     */
+    void readFromFile(File file, MappedSnapshot mapped, Consumer<Route> consumer) throws IOException,
+            ElementParsingInFileException {
+        File delta = deltaOf(file);
+        if (!hasDelta(file)) {
+            readSnapshot(mapped, consumer);
+            return;
+        }
+        // the changes are small compared to the snapshot, so they're collected first and applied on the fly
+        Map<Integer, Route> putElements = new LinkedHashMap<>();
+        Set<Integer> removedIds = new HashSet<>();
+        boolean[] cleared = new boolean[1];
+        ChangeRecords.read(delta, new MutationListener() {
+            @Override
+            public void elementPut(Route element) {
+                putElements.put(element.getId(), element);
+                removedIds.remove(element.getId());
+            }
+
+            @Override
+            public void elementRemoved(int id) {
+                putElements.remove(id);
+                removedIds.add(id);
+            }
+
+            @Override
+            public void collectionCleared() {
+                cleared[0] = true;
+                putElements.clear();
+                removedIds.clear();
+            }
+        });
+        if (!cleared[0]) {
+            readSnapshot(mapped, element -> {
+                if (!removedIds.contains(element.getId())) {
+                    Route replacement = putElements.remove(element.getId());
+                    consumer.accept(replacement == null ? element : replacement);
+                }
+            });
+        }
+        putElements.values().forEach(consumer);
+    }
+
+    /**
+     * Returns whether a snapshot file has a delta file written for it, as opposed to no delta file at all or a delta
+     * file left over from an earlier snapshot in the same file.
+     * @param file the snapshot file
+     * @return {@code true} if the delta file exists and its base is the snapshot; {@code false} otherwise
+     * @throws IOException if an input/output exception occurred
+     */
+    static boolean hasDelta(File file) throws IOException {
+        File delta = deltaOf(file);
+        return delta.exists() && ChangeRecords.belongsTo(delta, identity(file));
+    }
+
+    // returns the checksums from the header of a snapshot file, which tell the snapshot apart from the earlier ones
+    private static long identity(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer checksums = ByteBuffer.allocate(Long.BYTES);
+            while (checksums.hasRemaining()) {
+                if (channel.read(checksums, CHECKSUMS_OFFSET + checksums.position()) < 0) {
+                    throw new IOException("The file is too short to be a snapshot");
+                }
+            }
+            return checksums.getLong(0);
+        }
+    }
+
+    // reads the elements of the snapshot file itself
+    private void readSnapshot(MappedSnapshot mapped, Consumer<Route> consumer) throws ElementParsingInFileException {
+        // the ids are reserved at once, as the elements are created without reserving them one by one
+        int maxId = 0;
+        for (int row = 0; row < mapped.size(); row++) {
+            maxId = Math.max(maxId, mapped.id(row));
+        }
+        Route.reserveIds(maxId);
+        for (int row = 0; row < mapped.size(); row++) {
+            consumer.accept(mapped.route(row));
+        }
+    }
+
+    // writes the numeric fields of a location
+    private static void putLocation(ByteBuffer buffer, Location location) {
+        buffer.putLong(location.getX());
+        buffer.putLong(location.getY());
+        buffer.putFloat(location.getZ());
+    }
+
+    // returns the index of a string in the string table, adding it to the table if needed
+    private static int encode(String s, Map<String, Integer> codes, List<String> strings) {
+        Integer code = codes.get(s);
+        if (code == null) {
+            code = strings.size();
+            codes.put(s, code);
+            strings.add(s);
+        }
+        return code;
+    }
+
+    // returns the checksum of the header fields preceding the current position of the header buffer
+    static int headerChecksum(ByteBuffer header) {
+        CRC32C crc = new CRC32C();
+        crc.update(header.duplicate().flip());
+        return (int) crc.getValue();
+    }
+
+    // a buffered output to a file channel that keeps the checksum of everything written through it
+    private static final class ChecksummedOutput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        private final CRC32C checksum = new CRC32C();
+        private long position; // the position in the file the buffer is going to be written at
+
+        private ChecksummedOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        // makes sure the buffer has room for the given number of bytes, which must not exceed the buffer size
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        // writes an array of bytes of any length
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementConstructionException;
+import ru.bitte.lab5.exceptions.ElementParsingInFileException;
+import ru.bitte.lab5.route.Coordinates;
+import ru.bitte.lab5.route.Location;
+import ru.bitte.lab5.route.Route;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * This class holds the format of the files recording the modifications of a collection, shared by the journal segments
+ * of {@link Journal} and the delta files of {@link BinarySnapshot}. Such a file starts with a header of the "LAB5JRNL"
+ * magic and the base of the file, a number identifying what the records are applied to (e.g. the snapshot a delta file
+ * belongs to), followed by the records, and every record is stored as its length, its CRC32C checksum and the record
+ * itself. A record is either a put of a whole element, a removal of an element by its ID, or a clear of the
+ * collection.
+ * <br>A record written partially (e.g. when the program was killed in the middle of writing) fails the check and
+ * ends the reading of the file, so the records appended to a file last are the only ones that can be lost. A file that
+ * is appended to again must first be cut at the end of its last complete record (see {@link #validLength}), or
+ * else the new records would be hidden behind the partial one.
+ */
+final class ChangeRecords {
+    private static final byte[] MAGIC = "LAB5JRNL".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = MAGIC.length + Long.BYTES; // the magic and the base
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+
+    private ChangeRecords() {
+    }
+
+    /**
+     * Returns the record of putting an element into the collection.
+     * @param element the element put into the collection
+     * @return the bytes of the record
+     */
+    static byte[] put(Route element) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream record = new DataOutputStream(bytes);
+        try {
+            record.writeByte(PUT);
+            record.writeInt(element.getId());
+            record.writeLong(element.getCreationTime());
+            writeString(record, element.getName());
+            record.writeLong(element.getCoordinates().getX());
+            record.writeLong(element.getCoordinates().getY());
+            writeLocation(record, element.getFrom());
+            writeLocation(record, element.getTo());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen when writing to an array
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the record of removing an element from the collection.
+     * @param id the ID of the removed element
+     * @return the bytes of the record
+     */
+    static byte[] remove(int id) {
+        return ByteBuffer.allocate(1 + Integer.BYTES).put(REMOVE).putInt(id).array();
+    }
+
+    /**
+     * Returns the record of clearing the collection.
+     * @return the bytes of the record
+     */
+    static byte[] clear() {
+        return new byte[] {CLEAR};
+    }
+
+    /**
+     * Writes the header of a new file to the channel.
+     * @param channel the channel of the new file
+     * @param base the number identifying what the records of the file are applied to
+     * @throws IOException if an input/output exception occurred
+     */
+    static void writeHeader(FileChannel channel, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).putLong(base).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Writes a record to the channel together with its length and checksum.
+     * @param channel the channel of the file the record is appended to
+     * @param record the bytes of the record
+     * @param crc the checksum object to be reused
+     * @throws IOException if an input/output exception occurred
+     */
+    static void write(FileChannel channel, byte[] record, CRC32C crc) throws IOException {
+        crc.reset();
+        crc.update(record);
+        ByteBuffer frame = ByteBuffer.allocate(2 * Integer.BYTES + record.length);
+        frame.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Reads the complete records of a file and passes the modifications they describe to the listener in order. A file
+     * shorter than its header is taken as a file the header was written to partially, with no records.
+     * @param file the file to be read
+     * @param listener the listener that accepts the modifications
+     * @throws IOException if an input/output exception occurred, or the file isn't a file of records
+     * @throws ElementParsingInFileException if a record couldn't be read
+     */
+    static void read(File file, MutationListener listener) throws IOException, ElementParsingInFileException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                1 << 16))) {
+            long size = file.length();
+            if (size < HEADER_SIZE) {
+                return;
+            }
+            if (!readMagic(input)) {
+                throw new IOException("The file " + file.getName() + " is not a file of the collection changes");
+            }
+            input.readLong(); // the base
+            scan(input, size, (record, number) -> {
+                try {
+                    apply(new DataInputStream(new ByteArrayInputStream(record)), listener);
+                } catch (ElementConstructionException | IllegalArgumentException | IOException e) {
+                    throw new ElementParsingInFileException("Record #" + number + " of " + file.getName() + ": "
+                            + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns whether a file is a file of records with the given base.
+     * @param file the file to be checked
+     * @param base the number identifying what the records are expected to be applied to
+     * @return {@code true} if the file starts with a complete header with the base; {@code false} otherwise
+     * @throws IOException if an input/output exception occurred
+     */
+    static boolean belongsTo(File file, long base) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= HEADER_SIZE && readMagic(input) && input.readLong() == base;
+        }
+    }
+
+    /**
+     * Returns the length of the part of a file taken by its header and the complete records, i.e. the position the
+     * next record is to be appended at. A record written partially at the end of the file isn't counted, so that the
+     * records appended after it aren't lost behind it.
+     * @param file the file to be checked
+     * @param base the number identifying what the records of the file are expected to be applied to
+     * @return the length of the valid part of the file, or 0 if the file doesn't start with a complete header with the
+     * base
+     * @throws IOException if an input/output exception occurred
+     */
+    static long validLength(File file, long base) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                1 << 16))) {
+            long size = file.length();
+            if (size < HEADER_SIZE || !readMagic(input) || input.readLong() != base) {
+                return 0;
+            }
+            return scan(input, size, (record, number) -> {
+            });
+        } catch (ElementParsingInFileException e) {
+            throw new AssertionError(e); // the records aren't parsed
+        }
+    }
+
+    private static boolean readMagic(DataInputStream input) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    // passes on the complete records following the header and returns the position right after the last one
+    private static long scan(DataInputStream input, long size, RecordHandler handler) throws IOException,
+            ElementParsingInFileException {
+        CRC32C crc = new CRC32C();
+        long end = HEADER_SIZE;
+        for (int number = 1; ; number++) {
+            byte[] record;
+            try {
+                if (size - end < 2 * Integer.BYTES) {
+                    return end;
+                }
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length <= 0 || length > size - end - 2 * Integer.BYTES) {
+                    return end; // the record was written partially or its length is damaged
+                }
+                record = new byte[length];
+                input.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    return end; // the record was written partially
+                }
+            } catch (EOFException e) {
+                return end;
+            }
+            end += 2 * Integer.BYTES + record.length;
+            handler.accept(record, number);
+        }
+    }
+
+    // passes a single record to the listener
+    private static void apply(DataInputStream record, MutationListener listener) throws IOException,
+            ElementConstructionException {
+        switch (record.readByte()) {
+            case PUT -> {
+                int id = record.readInt();
+                long creationTime = record.readLong();
+                String name = readString(record);
+                Coordinates coordinates = new Coordinates(record.readLong(), record.readLong());
+                Location from = readLocation(record);
+                Location to = readLocation(record);
+                listener.elementPut(Route.restore(id, name, coordinates, creationTime, from, to));
+            }
+            case REMOVE -> listener.elementRemoved(record.readInt());
+            case CLEAR -> listener.collectionCleared();
+            default -> throw new IOException("Unknown record type");
+        }
+    }
+
+    private static void writeLocation(DataOutputStream record, Location location) throws IOException {
+        record.writeLong(location.getX());
+        record.writeLong(location.getY());
+        record.writeFloat(location.getZ());
+        writeString(record, location.getName());
+    }
+
+    private static Location readLocation(DataInputStream record) throws IOException {
+        return new Location(record.readLong(), record.readLong(), record.readFloat(), readString(record));
+    }
+
+    // writes a string of any length, unlike writeUTF
+    private static void writeString(DataOutputStream record, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        record.writeInt(bytes.length);
+        record.write(bytes);
+    }
+
+    private static String readString(DataInputStream record) throws IOException {
+        byte[] bytes = new byte[record.readInt()];
+        record.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // accepts the bytes of a complete record along with its number in the file
+    private interface RecordHandler {
+        void accept(byte[] record, int number) throws ElementParsingInFileException;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An object of this class holds the modifications of a collection made since it was last saved, as returned by
+ * {@link CollectionKeeper#getChanges()}. Only the final state of every changed element is kept: the elements that have
+ * been added or replaced, the IDs of the elements that have been removed, and whether the whole collection has been
+ * cleared before that.
+ */
+public class ChangeSet {
+    private final boolean cleared;
+    private final List<Route> putElements;
+    private final List<Integer> removedIds;
+    private final long modificationCount;
+
+    /**
+     * Constructs a {@code ChangeSet} object.
+     * @param cleared whether the collection has been cleared before the other changes
+     * @param putElements the elements that have been added or replaced
+     * @param removedIds the IDs of the elements that have been removed
+     * @param modificationCount the number of modifications of the collection the changes are up to
+     */
+    public ChangeSet(boolean cleared, List<Route> putElements, List<Integer> removedIds, long modificationCount) {
+        this.cleared = cleared;
+        this.putElements = List.copyOf(putElements);
+        this.removedIds = List.copyOf(removedIds);
+        this.modificationCount = modificationCount;
+    }
+
+    /**
+     * Returns whether the collection has been cleared before the other changes.
+     * @return {@code true} if the collection has been cleared; {@code false} otherwise
+     */
+    public boolean isCleared() {
+        return cleared;
+    }
+
+    /**
+     * Returns the elements that have been added or replaced.
+     * @return an unmodifiable {@link List} of the elements
+     */
+    public List<Route> getPutElements() {
+        return putElements;
+    }
+
+    /**
+     * Returns the IDs of the elements that have been removed.
+     * @return an unmodifiable {@link List} of the IDs
+     */
+    public List<Integer> getRemovedIds() {
+        return removedIds;
+    }
+
+    /**
+     * Returns the number of modifications of the collection the changes are up to, which is to be passed to
+     * {@link CollectionKeeper#markSaved(long)} once the changes have been saved.
+     * @return the number of modifications
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns whether there are no changes at all.
+     * @return {@code true} if nothing has changed; {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return !cleared && putElements.isEmpty() && removedIds.isEmpty();
+    }
+
+    /**
+     * Returns the total number of changes.
+     * @return the number of the changed elements, counting the clear as one
+     */
+    public int size() {
+        return (cleared ? 1 : 0) + putElements.size() + removedIds.size();
+    }
+}
@@ -1,29 +1,100 @@
 package ru.bitte.lab5;
 
+import ru.bitte.lab5.route.Coordinates;
+import ru.bitte.lab5.route.Location;
 import ru.bitte.lab5.route.Route;
 import ru.bitte.lab5.exceptions.GetByIDException;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * An object of this class holds a collection of elements and provides an interface for accessing and modifying them.
- * The collection is a {@link HashSet} containing objects of the {@link Route} class. An instance of this class can be
- * created with a collection of initial {@code Route} objects that get put into the collection first.
+ * The collection is kept in a {@link RouteStore} containing objects of the {@link Route} class by their IDs, so that
+ * the ID-based operations run in constant time. Either the objects themselves are stored on the heap
+ * ({@link HeapRouteStore}, the default), or their fields are stored in compact primitive columns
+ * ({@link ColumnarRouteStore}). Alongside the store, the keeper maintains a secondary index of the element IDs ordered
+ * by the distance values, which is updated on every modification and serves the minimum, maximum, ordered and range
+ * queries without sorting the collection. The other secondary indexes are built on the first query that needs them
+ * and kept up to date from then on: a trigram index of the element names (see {@link NameIndex}) serving the substring
+ * search, a uniform grid index of the current coordinates (see {@link GridIndex}) serving the queries by the position,
+ * and two k-d trees of the points of the starting and the destination locations (see {@link KdTree}) serving the
+ * nearest neighbour queries. An instance of this class can be created with a collection of initial {@code Route}
+ * objects that get put into the collection first, or with a store that already holds the initial objects.
+ * <br>The whole collection is read through immutable snapshots (see {@link #snapshot()}), which are handed out without
+ * copying the collection. The store shares its structure with the snapshots instead: a modification made after a
+ * snapshot has been taken only copies the small part of the store it changes, leaving the snapshot as it was.
+ * <br>The keeper is safe to use from several threads. Modifications are serialized by the write mode of a
+ * {@link StampedLock}, so each of them takes effect atomically. Reads never take the lock unless they race with a
+ * modification: they are done optimistically and only retried under the read lock if a modification got in the way.
+ * <br>Every modification can be observed by a {@link MutationListener}, e.g. to journal it (see {@link Journal}).
  */
 public class CollectionKeeper {
-    private final HashSet<Route> collection; // main collection
+    // the order of the filtered elements, the same as the order of the distance index
+    private static final Comparator<Route> ORDER = Comparator.<Route>naturalOrder().thenComparingInt(Route::getId);
+    // the distance index is only used for the ranges covering at most 1/4 of the range of all the distances
+    private static final int INDEXED_RANGE_FRACTION = 4;
+    private final RouteStore collection; // main collection, indexed by the element IDs
+    // secondary index, element IDs grouped by distance in ascending order (several elements may share a distance)
+    private final ConcurrentSkipListMap<Integer, ConcurrentSkipListSet<Integer>> distanceIndex;
+    private final NameIndex nameIndex; // secondary index, trigrams of the element names
+    private volatile boolean nameIndexBuilt; // whether the name index has been built and is kept up to date
+    private final GridIndex gridIndex; // secondary index, the current coordinates of the elements
+    private volatile boolean gridIndexBuilt; // whether the grid index has been built and is kept up to date
+    private final KdTree fromIndex; // secondary index, the points of the starting locations of the elements
+    private final KdTree toIndex; // secondary index, the points of the destinations of the elements
+    private volatile boolean locationIndexesBuilt; // whether the two k-d trees have been built and are kept up to date
+    private final StampedLock lock; // serializes the modifications and validates the optimistic reads
     private final LocalDateTime creationDate;
+    private volatile MutationListener listener; // notified about the modifications, if set
+    private volatile long modificationCount; // the number of modifications made so far
+    private volatile long savedModificationCount; // the number of modifications the last save is up to
+    // the IDs changed since the last save by the number of their last modification, null until the first save
+    private HashMap<Integer, Long> changes;
+    private long clearedAt; // the number of the last clear since the last save, or 0 if there was none
 
     /**
-     * Returns an instance of the {@code CollectionKeeper} class.
+     * Returns an instance of the {@code CollectionKeeper} class that stores the objects on the heap.
      * @param collection the initial objects to be put in the collection
      */
     public CollectionKeeper(Collection<Route> collection){
+        this(collection, new HeapRouteStore());
+    }
+
+    /**
+     * Returns an instance of the {@code CollectionKeeper} class that keeps the objects in the given store.
+     * @param collection the initial objects to be put in the collection
+     * @param store a store to keep the objects in
+     */
+    public CollectionKeeper(Collection<Route> collection, RouteStore store){
+        this(store);
+        collection.forEach(this::addElement);
+    }
+
+    /**
+     * Returns an instance of the {@code CollectionKeeper} class with the objects already kept in the given store. The
+     * distance index is built from the IDs and the distances of the elements (see
+     * {@link RouteStore#forEachDistance}), so the store doesn't have to create the objects themselves, and the name
+     * index is only built once it's needed for the first time.
+     * @param store a store with the initial objects of the collection
+     */
+    public CollectionKeeper(RouteStore store){
         this.creationDate = LocalDateTime.now();
-        this.collection = new HashSet<>(collection);
+        this.collection = Objects.requireNonNull(store);
+        this.distanceIndex = new ConcurrentSkipListMap<>();
+        this.nameIndex = new NameIndex();
+        this.gridIndex = new GridIndex();
+        this.fromIndex = new KdTree();
+        this.toIndex = new KdTree();
+        this.lock = new StampedLock();
+        store.forEachDistance((id, distance) ->
+                distanceIndex.computeIfAbsent(distance, d -> new ConcurrentSkipListSet<>()).add(id));
     }
 
     /**
@@ -31,7 +102,27 @@ public class CollectionKeeper {
      * @param element the {@code Route} to be put in the collection
      */
     public void addElement(Route element) {
-        collection.add(Objects.requireNonNull(element));
+        Objects.requireNonNull(element);
+        long stamp = lock.writeLock();
+        try {
+            put(element);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds several new elements to the collection at once, e.g. when they are loaded from a file in bulk.
+     * @param elements the {@code Route} objects to be put in the collection
+     */
+    public void addElements(Collection<Route> elements) {
+        elements.forEach(Objects::requireNonNull);
+        long stamp = lock.writeLock();
+        try {
+            elements.forEach(this::put);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -39,23 +130,149 @@ public class CollectionKeeper {
      * @param element the element to be removed from the collection
      */
     public void removeElement(Route element) {
-        collection.remove(Objects.requireNonNull(element));
+        Objects.requireNonNull(element);
+        long stamp = lock.writeLock();
+        try {
+            delete(element.getId());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
      * Removes all the elements in the collection.
      */
     public void clearCollection() {
-        collection.clear();
+        long stamp = lock.writeLock();
+        try {
+            collection.clear();
+            distanceIndex.clear();
+            nameIndex.clear();
+            gridIndex.clear();
+            fromIndex.clear();
+            toIndex.clear();
+            modificationCount++;
+            if (changes != null) {
+                changes.clear();
+                clearedAt = modificationCount;
+            }
+            if (listener != null) {
+                listener.collectionCleared();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns an immutable snapshot of the collection as it is at the moment of the call. Taking a snapshot doesn't
+     * copy the collection, and later modifications of the collection don't affect the already taken snapshots.
+     * @implNote The snapshot shares the elements with the collection, but that isn't an issue since {@code Route}
+     * objects are immutable
+     * @return an unmodifiable view of the collection elements frozen at the moment of the call
+     */
+    public Collection<Route> snapshot() {
+        // freezing the store must not interleave with a modification that has already decided not to copy its parts
+        return read(collection::snapshot);
+    }
+
+    /**
+     * Returns an immutable snapshot of the collection just like {@link #snapshot()}, and runs an action atomically
+     * with taking it, so that no modification can happen between the two.
+     * @param action the action to be run at the moment the snapshot is taken, which must not modify the collection
+     * @return an unmodifiable view of the collection elements frozen at the moment of the call
+     */
+    public Collection<Route> snapshot(Runnable action) {
+        long stamp = lock.writeLock();
+        try {
+            action.run();
+            return collection.snapshot();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of modifications of the collection made since the keeper was created. Every element put into
+     * or removed from the collection counts as a modification, and so does a clear of the whole collection.
+     * @return the number of modifications
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns the number of modifications of the collection made since it was last saved, i.e. since the number of
+     * modifications passed to the last call to {@link #markSaved(long)}.
+     * @return the number of unsaved modifications, which is 0 if the collection hasn't changed since the last save
+     */
+    public long getUnsavedModificationCount() {
+        return modificationCount - savedModificationCount;
     }
 
     /**
-     * Returns a copy of the existing collection.
-     * @implNote The returned copy is a shallow one, but that isn't an issue since {@code Route} objects are immutable
-     * @return a copy of the collection
+     * Returns the modifications of the collection made since it was last saved, i.e. since the last call to
+     * {@link #markSaved(long)}. The changes are only tracked from the first time the collection is marked as saved,
+     * so that loading the collection doesn't make every element count as changed.
+     * @return the {@link ChangeSet} of the modifications since the last save
+     * @throws IllegalStateException if the collection has never been marked as saved
      */
-    public HashSet<Route> copyCollection() {
-        return new HashSet<>(collection);
+    public ChangeSet getChanges() {
+        long stamp = lock.readLock();
+        try {
+            if (changes == null) {
+                throw new IllegalStateException("The changes aren't tracked until the collection is saved");
+            }
+            List<Route> putElements = new ArrayList<>();
+            List<Integer> removedIds = new ArrayList<>();
+            for (Integer id : changes.keySet()) {
+                Route element = collection.get(id);
+                if (element != null) {
+                    putElements.add(element);
+                } else {
+                    removedIds.add(id);
+                }
+            }
+            return new ChangeSet(clearedAt != 0, putElements, removedIds, modificationCount);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Marks the collection as saved as it was after the given number of modifications, so that only the later
+     * modifications are returned by {@link #getChanges()}. The first call starts tracking the changes.
+     * @param modificationCount the number of modifications the saved collection is up to, e.g. the one of the saved
+     * {@link ChangeSet} or the one at the moment the saved snapshot was taken
+     */
+    public void markSaved(long modificationCount) {
+        long stamp = lock.writeLock();
+        try {
+            if (changes == null) {
+                changes = new HashMap<>();
+            }
+            savedModificationCount = Math.max(savedModificationCount, modificationCount);
+            changes.values().removeIf(modification -> modification <= modificationCount);
+            if (clearedAt <= modificationCount) {
+                clearedAt = 0;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the listener to be notified about every following modification of the collection, replacing the previous
+     * one if there was any.
+     * @param listener the listener, or {@code null} to stop notifying anyone
+     */
+    public void setMutationListener(MutationListener listener) {
+        long stamp = lock.writeLock();
+        try {
+            this.listener = listener;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -83,11 +300,64 @@ public class CollectionKeeper {
     }
 
     /**
-     * Returns a {@link TreeSet} containing the elements from the collection.
-     * @return a {@link TreeSet} containing the elements from the collection
+     * Opens a cursor over the elements of the collection in the order they're stored in. The cursor goes through a
+     * snapshot of the collection taken when it's opened (see {@link #snapshot()}), so the modifications made after that
+     * don't affect it.
+     * @return an {@link ElementCursor} at the first element
+     */
+    public ElementCursor openCursor() {
+        return new SnapshotCursor(snapshot());
+    }
+
+    /**
+     * Opens a cursor over the elements of the collection in the ascending order of their distance values, the elements
+     * with equal distances being ordered by their IDs. The cursor goes through the distance index and only remembers
+     * the last element it has moved past, so the collection is neither copied nor sorted. Since the cursor follows the
+     * current state of the collection, the elements put after its position in the meantime are returned as well, and
+     * the removed ones aren't.
+     * @return an {@link ElementCursor} at the first element
+     */
+    public ElementCursor openSortedCursor() {
+        return new SortedCursor();
+    }
+
+    /**
+     * Returns a list of the elements from the collection in the ascending order of their distance values. The elements
+     * with equal distances are ordered by their IDs.
+     * @return an {@link ArrayList} containing the elements from the collection in the ascending order
+     */
+    public List<Route> copySorted() {
+        return read(() -> {
+            List<Route> sorted = new ArrayList<>(collection.size());
+            distanceIndex.values().forEach(ids -> ids.forEach(id -> sorted.add(fetch(id))));
+            return sorted;
+        });
+    }
+
+    /**
+     * Returns an element from the collection with the minimum distance value.
+     * @return the element with the minimum distance value
+     * @throws NoSuchElementException if the collection is empty
+     */
+    public Route getMinElement() {
+        return read(() -> fetch(distanceIndex.get(distanceIndex.firstKey()).first()));
+    }
+
+    /**
+     * Returns an element from the collection with the maximum distance value.
+     * @return the element with the maximum distance value
+     * @throws NoSuchElementException if the collection is empty
+     */
+    public Route getMaxElement() {
+        return read(() -> fetch(distanceIndex.get(distanceIndex.lastKey()).last()));
+    }
+
+    /**
+     * Returns all the unique distance values of the elements in the collection in the ascending order.
+     * @return a {@link List} of the unique distance values
      */
-    public TreeSet<Route> copySorted() {
-        return new TreeSet<>(collection);
+    public List<Integer> getUniqueDistances() {
+        return read(() -> new ArrayList<>(distanceIndex.keySet()));
     }
 
     /**
@@ -97,13 +367,7 @@ public class CollectionKeeper {
      * @throws GetByIDException if no element with such an ID was found in the collection
      */
     public Route getByID(int id) throws GetByIDException {
-        Route wantedElement = null;
-        for (Route route : collection) {
-            if (route.getId() == id) {
-                wantedElement = route;
-                break;
-            }
-        }
+        Route wantedElement = read(() -> collection.get(id));
         if (wantedElement == null) {
             throw new GetByIDException("No Route object with such an ID in the collection");
         } else {
@@ -117,7 +381,15 @@ public class CollectionKeeper {
      * @throws GetByIDException if no element with such an ID was found in the collection
      */
     public void removeByID(int id) throws GetByIDException {
-        removeElement(getByID(id));
+        long stamp = lock.writeLock();
+        try {
+            if (!collection.contains(id)) {
+                throw new GetByIDException("No Route object with such an ID in the collection");
+            }
+            delete(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
@@ -127,30 +399,490 @@ public class CollectionKeeper {
      * @throws GetByIDException if no element with such an ID was found in the collection
      */
     public void replaceByID(Route element) throws GetByIDException {
-        int id = element.getId();
-        Route oldElement = getByID(id);
-        removeElement(oldElement);
-        addElement(element);
+        Objects.requireNonNull(element);
+        long stamp = lock.writeLock();
+        try {
+            if (!collection.contains(element.getId())) {
+                throw new GetByIDException("No Route object with such an ID in the collection");
+            }
+            put(element);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 
     /**
-     * Returns a list of the elements from the collection that have a particular substring in the name.
+     * Returns a list of the elements from the collection that have a particular substring in the name. The substrings
+     * of at least three characters are looked up in the name index, and only the shorter ones require going through
+     * the whole collection.
      * @param filter the string that must be contained in the names of the returned objects
      * @return an {@link ArrayList} of the filtered elements
      */
     public List<Route> filterByString(String filter) {
-        Stream<Route> elements = collection.stream();
-        return elements.filter(route -> !(route.getName().contains(filter))).collect(Collectors.toList());
+        if (filter.length() < NameIndex.MIN_QUERY_LENGTH) {
+            return read(() -> collection.scanByName(filter));
+        }
+        if (!nameIndexBuilt) {
+            buildNameIndex();
+        }
+        return read(() -> {
+            List<Route> filtered = new ArrayList<>();
+            // the index only narrows down the candidates, their names still have to be checked
+            for (Integer id : nameIndex.candidates(filter)) {
+                Route candidate = collection.get(id);
+                if (candidate != null && candidate.getName().contains(filter)) {
+                    filtered.add(candidate);
+                }
+            }
+            return filtered;
+        });
+    }
+
+    /**
+     * Returns a list of the elements from the collection the current coordinates of which lie in the given rectangle,
+     * including its borders. The elements are looked up in the grid index, so the query only checks the elements near
+     * the rectangle.
+     * @param x1 the <i>X</i> coordinate of a corner of the rectangle
+     * @param y1 the <i>Y</i> coordinate of a corner of the rectangle
+     * @param x2 the <i>X</i> coordinate of the opposite corner of the rectangle
+     * @param y2 the <i>Y</i> coordinate of the opposite corner of the rectangle
+     * @return an {@link ArrayList} of the elements in the rectangle in the ascending order of their distances
+     */
+    public List<Route> filterInBox(long x1, long y1, long x2, long y2) {
+        long minX = Math.min(x1, x2);
+        long maxX = Math.max(x1, x2);
+        long minY = Math.min(y1, y2);
+        long maxY = Math.max(y1, y2);
+        return filterByPosition(minX, minY, maxX, maxY, coordinates -> coordinates.getX() >= minX
+                && coordinates.getX() <= maxX && coordinates.getY() >= minY && coordinates.getY() <= maxY);
+    }
+
+    /**
+     * Returns a list of the elements from the collection the current coordinates of which are within the given
+     * distance from a point, including the ones exactly at that distance. The elements are looked up in the grid index,
+     * so the query only checks the elements near the point.
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     * @param radius the greatest distance from the point, not negative
+     * @return an {@link ArrayList} of the elements near the point in the ascending order of their distances
+     */
+    public List<Route> filterNear(long x, long y, long radius) {
+        double r = radius;
+        return filterByPosition((double) x - r, (double) y - r, (double) x + r, (double) y + r, coordinates -> {
+            double dx = (double) coordinates.getX() - x;
+            double dy = (double) coordinates.getY() - y;
+            return dx * dx + dy * dy <= r * r;
+        });
+    }
+
+    /**
+     * Returns a list of the elements from the collection that match a query. The matching elements are looked up in
+     * the first index that the conditions of the query allow to use, in the following order: the ID of the elements,
+     * the trigram index of the names and the distance index (unless the range of the distances covers a large part of
+     * the collection). Only the elements found in the index are tested against the whole query, and if no index can be
+     * used, all the elements are tested in parallel.
+     * @param query the compiled query
+     * @return an {@link ArrayList} of the matching elements in the ascending order of their distances
+     */
+    public List<Route> where(RouteQuery query) {
+        List<Route> found;
+        Long id = query.getRequiredId();
+        String substring = query.getRequiredSubstring();
+        long minDistance = query.getMinDistance();
+        long maxDistance = query.getMaxDistance();
+        if (id != null) {
+            found = new ArrayList<>();
+            if (id >= Integer.MIN_VALUE && id <= Integer.MAX_VALUE) {
+                Route element = read(() -> collection.get((int) (long) id));
+                if (element != null && query.test(element)) {
+                    found.add(element);
+                }
+            }
+        } else if (substring != null && substring.length() >= NameIndex.MIN_QUERY_LENGTH) {
+            if (!nameIndexBuilt) {
+                buildNameIndex();
+            }
+            found = read(() -> {
+                List<Route> matching = new ArrayList<>();
+                for (Integer candidateId : nameIndex.candidates(substring)) {
+                    Route candidate = collection.get(candidateId);
+                    if (candidate != null && query.test(candidate)) {
+                        matching.add(candidate);
+                    }
+                }
+                return matching;
+            });
+        } else if (minDistance > maxDistance || minDistance > Integer.MAX_VALUE || maxDistance < Integer.MIN_VALUE) {
+            // the distances are ints, so no element can be in a range lying wholly outside of them
+            found = new ArrayList<>();
+        } else if (read(() -> isNarrowDistanceRange(minDistance, maxDistance))) {
+            int from = (int) Math.max(minDistance, Integer.MIN_VALUE);
+            int to = (int) Math.min(maxDistance, Integer.MAX_VALUE);
+            found = read(() -> {
+                List<Route> matching = new ArrayList<>();
+                distanceIndex.subMap(from, true, to, true).values().forEach(ids -> ids.forEach(candidateId -> {
+                    Route candidate = fetch(candidateId);
+                    if (query.test(candidate)) {
+                        matching.add(candidate);
+                    }
+                }));
+                return matching;
+            });
+        } else {
+            found = snapshot().parallelStream().filter(query::test).collect(Collectors.toCollection(ArrayList::new));
+        }
+        found.sort(ORDER);
+        return found;
+    }
+
+    /**
+     * Returns a list of the elements from the collection the starting locations of which are the nearest to a given
+     * point. The elements are looked up in a k-d tree of the starting locations, so the query only checks a small part
+     * of the collection.
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     * @param z the <i>Z</i> coordinate of the point
+     * @param count the greatest number of the elements to be returned, positive
+     * @return an {@link ArrayList} of the nearest elements in the ascending order of the distances from their starting
+     * locations to the point, the elements at the same distance ordered by their IDs
+     */
+    public List<Route> nearestFrom(long x, long y, float z, int count) {
+        return nearest(fromIndex, x, y, z, count);
+    }
+
+    /**
+     * Returns a list of the elements from the collection the destinations of which are the nearest to a given point.
+     * The elements are looked up in a k-d tree of the destinations, so the query only checks a small part of the
+     * collection.
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     * @param z the <i>Z</i> coordinate of the point
+     * @param count the greatest number of the elements to be returned, positive
+     * @return an {@link ArrayList} of the nearest elements in the ascending order of the distances from their
+     * destinations to the point, the elements at the same distance ordered by their IDs
+     */
+    public List<Route> nearestTo(long x, long y, float z, int count) {
+        return nearest(toIndex, x, y, z, count);
     }
 
     /**
      * Returns a list of the elements from the collection that have greater {@code distance} fields than that of the
      * provided element.
      * @param element the element the distance is compared to other elements
-     * @return an {@link ArrayList} of the greater distance elements
+     * @return an {@link ArrayList} of the greater distance elements in the ascending order of their distances
      */
     public List<Route> getElementsGreaterThan(Route element) {
-        Stream<Route> elements = collection.stream();
-        return elements.filter(route -> route.getDistance() > element.getDistance()).collect(Collectors.toList());
+        return read(() -> {
+            List<Route> greater = new ArrayList<>();
+            distanceIndex.tailMap(element.getDistance(), false).values()
+                    .forEach(ids -> ids.forEach(id -> greater.add(fetch(id))));
+            return greater;
+        });
+    }
+
+    /* runs a reading action optimistically and returns its result if no modification happened in the meantime,
+    otherwise runs it again under the read lock. the action may see the indexes halfway through a modification and fail
+    because of that, in which case it is retried the same way */
+    private <T> T read(Supplier<T> action) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = action.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e; // a genuine failure, not caused by a concurrent modification
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // returns an element that is known to be in the collection, failing if it went missing because of a modification
+    private Route fetch(int id) {
+        return Objects.requireNonNull(collection.get(id), "Element removed during the read");
+    }
+
+    // puts an element into the collection and the indexes and notifies the listener, called under the write lock
+    private void put(Route element) {
+        Route oldElement = collection.put(element);
+        if (oldElement != null) {
+            unindex(oldElement);
+        }
+        index(element);
+        changed(element.getId());
+        if (listener != null) {
+            listener.elementPut(element);
+        }
+    }
+
+    // removes an element of the given ID from the collection and the indexes and notifies the listener, must be called
+    // under the write lock
+    private void delete(int id) {
+        Route oldElement = collection.remove(id);
+        if (oldElement != null) {
+            unindex(oldElement);
+            changed(id);
+            if (listener != null) {
+                listener.elementRemoved(id);
+            }
+        }
+    }
+
+    // counts a modification of an element, remembering the element as changed if the changes are tracked
+    private void changed(int id) {
+        modificationCount++;
+        if (changes != null) {
+            changes.put(id, modificationCount);
+        }
+    }
+
+    // returns the elements in a rectangle that pass the check of their coordinates, sorted like in the distance index
+    private List<Route> filterByPosition(double minX, double minY, double maxX, double maxY,
+                                         Predicate<Coordinates> check) {
+        if (!gridIndexBuilt) {
+            buildGridIndex();
+        }
+        return read(() -> {
+            List<Route> filtered = new ArrayList<>();
+            for (Integer id : gridIndex.candidates(minX, minY, maxX, maxY)) {
+                Route candidate = collection.get(id);
+                if (candidate != null && check.test(candidate.getCoordinates())) {
+                    filtered.add(candidate);
+                }
+            }
+            filtered.sort(ORDER);
+            return filtered;
+        });
+    }
+
+    /* whether a range of the distances covers a small enough part of the range of all the distances for the distance
+    index to be worth using, assuming the distances are spread evenly */
+    private boolean isNarrowDistanceRange(long min, long max) {
+        if (distanceIndex.isEmpty() || min == Long.MIN_VALUE && max == Long.MAX_VALUE) {
+            return false;
+        }
+        long first = distanceIndex.firstKey();
+        long last = distanceIndex.lastKey();
+        long width = Math.min(max, last) - Math.max(min, first) + 1;
+        return width * INDEXED_RANGE_FRACTION <= last - first + 1;
+    }
+
+    // builds the grid index from the coordinates of all the elements, unless it has been built already
+    private void buildGridIndex() {
+        long stamp = lock.writeLock();
+        try {
+            if (!gridIndexBuilt) {
+                collection.forEachCoordinates(gridIndex::add);
+                gridIndexBuilt = true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // returns the elements the points of which in a k-d tree are the nearest to the given point
+    private List<Route> nearest(KdTree index, long x, long y, float z, int count) {
+        if (!locationIndexesBuilt) {
+            buildLocationIndexes();
+        }
+        return read(() -> {
+            int[] ids = index.nearest(x, y, z, count);
+            List<Route> nearest = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                nearest.add(fetch(id));
+            }
+            return nearest;
+        });
+    }
+
+    // builds the k-d trees from the locations of all the elements, unless they have been built already
+    private void buildLocationIndexes() {
+        long stamp = lock.writeLock();
+        try {
+            if (!locationIndexesBuilt) {
+                collection.forEachEndpoints((id, fromX, fromY, fromZ, toX, toY, toZ) -> {
+                    fromIndex.load(id, fromX, fromY, fromZ);
+                    toIndex.load(id, toX, toY, toZ);
+                });
+                fromIndex.rebuild();
+                toIndex.rebuild();
+                locationIndexesBuilt = true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // builds the name index from the names of all the elements, unless it has been built already
+    private void buildNameIndex() {
+        long stamp = lock.writeLock();
+        try {
+            if (!nameIndexBuilt) {
+                collection.forEachName(nameIndex::add);
+                nameIndexBuilt = true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // puts an element into the secondary indexes
+    private void index(Route element) {
+        distanceIndex.computeIfAbsent(element.getDistance(), d -> new ConcurrentSkipListSet<>()).add(element.getId());
+        if (nameIndexBuilt) {
+            nameIndex.add(element);
+        }
+        if (gridIndexBuilt) {
+            gridIndex.add(element);
+        }
+        if (locationIndexesBuilt) {
+            Location from = element.getFrom();
+            Location to = element.getTo();
+            fromIndex.add(element.getId(), from.getX(), from.getY(), from.getZ());
+            toIndex.add(element.getId(), to.getX(), to.getY(), to.getZ());
+        }
+    }
+
+    // removes an element from the secondary indexes, dropping the distance entry once it's empty
+    private void unindex(Route element) {
+        ConcurrentSkipListSet<Integer> sameDistance = distanceIndex.get(element.getDistance());
+        if (sameDistance != null && sameDistance.remove(element.getId()) && sameDistance.isEmpty()) {
+            distanceIndex.remove(element.getDistance());
+        }
+        if (nameIndexBuilt) {
+            nameIndex.remove(element);
+        }
+        if (gridIndexBuilt) {
+            gridIndex.remove(element);
+        }
+        if (locationIndexesBuilt) {
+            Location from = element.getFrom();
+            Location to = element.getTo();
+            fromIndex.remove(element.getId(), from.getX(), from.getY(), from.getZ());
+            toIndex.remove(element.getId(), to.getX(), to.getY(), to.getZ());
+        }
+    }
+
+    // a cursor over a snapshot of the collection
+    private static final class SnapshotCursor implements ElementCursor {
+        private final Iterator<Route> iterator;
+        private long position;
+
+        private SnapshotCursor(Collection<Route> snapshot) {
+            iterator = snapshot.iterator();
+        }
+
+        @Override
+        public void skip(long count) {
+            for (long i = 0; i < count && iterator.hasNext(); i++) {
+                iterator.next();
+                position++;
+            }
+        }
+
+        @Override
+        public List<Route> next(int count) {
+            List<Route> page = new ArrayList<>(Math.min(count, 1024));
+            while (page.size() < count && iterator.hasNext()) {
+                page.add(iterator.next());
+            }
+            position += page.size();
+            return page;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+    }
+
+    // a cursor over the distance index, which remembers the distance and the ID of the last element it has moved past
+    private final class SortedCursor implements ElementCursor {
+        private boolean started; // whether the cursor has moved past any element
+        private int lastDistance;
+        private int lastId;
+        private long position;
+
+        @Override
+        public void skip(long count) {
+            move(read(() -> walk(count, false)));
+        }
+
+        @Override
+        public List<Route> next(int count) {
+            Walk walk = read(() -> walk(count, true));
+            move(walk);
+            return walk.elements;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return read(() -> walk(0, false)).hasMore;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        private void move(Walk walk) {
+            if (walk.passed > 0) {
+                started = true;
+                lastDistance = walk.lastDistance;
+                lastId = walk.lastId;
+                position += walk.passed;
+            }
+        }
+
+        // goes through the given number of elements after the cursor without moving it, collecting them if asked to
+        private Walk walk(long count, boolean collect) {
+            Walk walk = new Walk(collect ? new ArrayList<>((int) Math.min(count, 1024)) : null);
+            NavigableMap<Integer, ConcurrentSkipListSet<Integer>> rest = started
+                    ? distanceIndex.tailMap(lastDistance, true) : distanceIndex;
+            for (Map.Entry<Integer, ConcurrentSkipListSet<Integer>> sameDistance : rest.entrySet()) {
+                int distance = sameDistance.getKey();
+                Set<Integer> ids = started && distance == lastDistance
+                        ? sameDistance.getValue().tailSet(lastId, false) : sameDistance.getValue();
+                for (int id : ids) {
+                    if (walk.passed == count) {
+                        walk.hasMore = true;
+                        return walk;
+                    }
+                    if (collect) {
+                        walk.elements.add(fetch(id));
+                    }
+                    walk.lastDistance = distance;
+                    walk.lastId = id;
+                    walk.passed++;
+                }
+            }
+            return walk;
+        }
+    }
+
+    // the outcome of going through the elements after a sorted cursor
+    private static final class Walk {
+        private final List<Route> elements; // the elements gone through, if they're collected
+        private long passed; // the number of the elements gone through
+        private int lastDistance;
+        private int lastId;
+        private boolean hasMore; // whether there are elements after the last one gone through
+
+        private Walk(List<Route> elements) {
+            this.elements = elements;
+        }
     }
 }
@@ -0,0 +1,283 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An object of the {@code CollectionSaver} class saves a collection to files on a dedicated thread, so that saving
+ * doesn't hold up the commands. A full save takes a snapshot of the collection at the moment it's requested, which
+ * takes no time regardless of the collection size, and the snapshot is then written in the background while the
+ * collection can be used and modified as usual. A save of the changes takes them (see {@link ChangeSet}) right before
+ * they're written instead, once the saves requested before it have been written and marked the collection as saved,
+ * so that the same changes are never appended twice, and it also covers the modifications made while it was waiting.
+ * <br>The saves are written one at a time. A save requested while another one is waiting to be written replaces the
+ * waiting one, since the newer save covers everything the older one does, so back-to-back saves only write the
+ * collection once more. A full save is written to a temporary file first and then moved in place, so an interrupted
+ * save never leaves a partial file behind. The outcome of every save is reported once it's written, printed to
+ * {@code System.out} right from the saving thread (see {@link Output}).
+ * <br>The collection is saved in the same way as described in {@link ru.bitte.lab5.commands.SaveCommand}: as an XML
+ * file, or as a binary snapshot if the collection was loaded from one, in which case only the changes are appended to
+ * the delta file of the last snapshot unless a full save is requested. A save to a given file picks the format by
+ * the extension of the file, and the following saves keep to that format: once a snapshot has been written, the
+ * changes are appended to its delta file, and once an XML file has been written, the collection is saved as XML.
+ */
+public class CollectionSaver implements Closeable {
+    private final CollectionKeeper collection;
+    private final Parser parser;
+    private final BinarySnapshot snapshot;
+    private final ExecutorService writer; // writes the saves one at a time
+    private boolean binary; // whether the collection is saved as a binary snapshot rather than XML, guarded by this
+    private File base; // the last written snapshot, or null if there is none to write the changes to, guarded by this
+    private Runnable waiting; // the save waiting to be written, guarded by this
+    private File waitingFile; // the file of the waiting save if it's a full one, or null otherwise, guarded by this
+    private int unfinished; // the number of the saves waiting or being written, guarded by this
+    private boolean failed; // whether the last written save failed, guarded by this
+
+    /**
+     * Constructs a {@code CollectionSaver} object.
+     * @param collection the reference to a collection keeper of elements
+     * @param parser a reference to a {@link Parser} instance used for saving to an XML file
+     * @param snapshot a reference to a {@link BinarySnapshot} instance used for saving to a snapshot file
+     * @param binary whether the collection is saved as a binary snapshot rather than an XML file until it's saved to
+     * a file of the other format
+     * @param base the snapshot file the collection was loaded from, or {@code null} if the collection wasn't loaded
+     * from a snapshot as it is
+     */
+    public CollectionSaver(CollectionKeeper collection, Parser parser, BinarySnapshot snapshot, boolean binary,
+                           File base) {
+        this.collection = collection;
+        this.parser = parser;
+        this.snapshot = snapshot;
+        this.binary = binary;
+        this.base = base;
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "collection-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Requests a save of the collection and returns without waiting for it to be written. A full save writes the
+     * collection as it is at the moment of the call, while a save of the changes writes all of them made up to the
+     * moment it's written. If there are no changes to be saved, nothing is written. A full save of a collection with
+     * a snapshot to append the changes to rewrites that snapshot in place and then deletes its delta file,
+     * consolidating the two.
+     * @param full whether the whole collection must be written even if only the changes could be
+     * @return {@code false} if there was nothing to save; {@code true} otherwise
+     */
+    public synchronized boolean save(boolean full) {
+        if (waitingFile != null) {
+            // a waiting full save is only replaced by another full one, as the changes alone may not be enough then
+            saveFull(waitingFile);
+        } else if (full && binary && base != null) {
+            saveFull(base);
+        } else if (full || !binary || (base == null && unfinished == 0)) {
+            saveFull(generateFile(binary ? BinarySnapshot.EXTENSION : Parser.EXTENSION));
+        } else if (collection.getUnsavedModificationCount() == 0) {
+            return false;
+        } else {
+            // the snapshot being written may become the one the changes are appended to, it's checked once they are
+            request(this::writeChanges, null);
+        }
+        return true;
+    }
+
+    /**
+     * Requests a save of the collection as a binary snapshot and returns without waiting for it to be written. Only
+     * the changes are saved if there is a snapshot to append them to, and otherwise the whole collection is written to
+     * a new snapshot with a generated name, which the following changes are appended to. The following saves are made
+     * as snapshots as well.
+     * @return {@code false} if there was nothing to save; {@code true} otherwise
+     */
+    public synchronized boolean saveToSnapshot() {
+        binary = true;
+        return save(false);
+    }
+
+    /**
+     * Requests a save of the whole collection as it is at the moment of the call to the given file and returns without
+     * waiting for it to be written. The file is written as a binary snapshot if it has the
+     * {@value BinarySnapshot#EXTENSION} extension, or as an XML file otherwise, and the following saves are made in
+     * the same format. Unlike the other saves, it never replaces a waiting save and is never replaced by a later one,
+     * so every file asked for is written.
+     * @param file the file to save the collection to
+     */
+    public synchronized void save(File file) {
+        binary = BinarySnapshot.isSnapshot(file);
+        long[] modificationCount = new long[1];
+        Collection<Route> elements = collection.snapshot(() -> modificationCount[0] =
+                collection.getModificationCount());
+        submit(() -> writeFull(elements, modificationCount[0], file));
+    }
+
+    /**
+     * Returns a file in the working directory with a name generated from the current time, in the form of
+     * "collection_yyyy-MM-dd_HH-mm-ss" followed by the given extension.
+     * @param extension the extension of the file, such as {@value BinarySnapshot#EXTENSION} or
+     * {@value Parser#EXTENSION}
+     * @return the {@code File} object representing the file
+     */
+    public static File generateFile(String extension) {
+        return new File("collection_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"))
+                + extension);
+    }
+
+    // requests a save of the whole collection to a file, guarded by this
+    private void saveFull(File file) {
+        long[] modificationCount = new long[1];
+        Collection<Route> elements = collection.snapshot(() -> modificationCount[0] =
+                collection.getModificationCount());
+        request(() -> writeFull(elements, modificationCount[0], file), file);
+    }
+
+    // makes a save the waiting one, replacing the one waiting before, guarded by this
+    private void request(Runnable save, File file) {
+        boolean alreadyWaiting = waiting != null;
+        waiting = save;
+        waitingFile = file;
+        if (!alreadyWaiting) {
+            submit(this::writeWaiting);
+        }
+    }
+
+    // passes a save to the saving thread, guarded by this
+    private void submit(Runnable save) {
+        unfinished++;
+        writer.execute(() -> {
+            try {
+                save.run();
+            } finally {
+                synchronized (this) {
+                    unfinished--;
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns whether a save is waiting to be written or is being written at the moment.
+     * @return {@code true} if a save is in progress; {@code false} otherwise
+     */
+    public synchronized boolean isSaving() {
+        return unfinished > 0;
+    }
+
+    /**
+     * Returns whether the last written save failed, e.g. because the disk is full, in which case the changes it was
+     * to save are still unsaved.
+     * @return {@code true} if the last save couldn't be written; {@code false} if it was written or there was none
+     */
+    public synchronized boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Waits until the requested saves are written and stops the saving thread.
+     * @throws IOException if the waiting has been interrupted
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the save");
+        }
+    }
+
+    // takes the waiting save and writes it, on the saving thread
+    private void writeWaiting() {
+        Runnable save;
+        synchronized (this) {
+            save = waiting;
+            waiting = null;
+            waitingFile = null;
+        }
+        save.run();
+    }
+
+    // writes the whole collection to a temporary file and then moves it in place
+    private void writeFull(Collection<Route> elements, long modificationCount, File file) {
+        File temporary = new File(file.getPath() + ".tmp");
+        boolean binary = BinarySnapshot.isSnapshot(file);
+        try {
+            if (binary) {
+                snapshot.writeToFile(elements, temporary);
+            } else {
+                parser.writeToFile(elements, temporary);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (binary) {
+                // the delta of the replaced snapshot no longer matches, it's only deleted once the new one is in place
+                Files.deleteIfExists(BinarySnapshot.deltaOf(file).toPath());
+            }
+            synchronized (this) {
+                // the changes following an XML file can't be appended to an earlier snapshot, it misses the saved ones
+                base = binary ? file : null;
+                failed = false;
+            }
+            collection.markSaved(modificationCount);
+            System.out.println("Successfully saved the collection to: " + file);
+        } catch (IOException e) {
+            synchronized (this) {
+                failed = true;
+            }
+            System.out.println("Couldn't save the file because:\n" + e.getMessage());
+            try {
+                Files.deleteIfExists(temporary.toPath());
+            } catch (IOException ignored) {
+                // the temporary file is left behind, but it's never read
+            }
+        }
+    }
+
+    // takes the changes and appends them to the delta file of the last snapshot, on the saving thread
+    private void writeChanges() {
+        File file;
+        synchronized (this) {
+            file = base;
+        }
+        if (file == null) {
+            // there is no snapshot to append the changes to, e.g. the one requested before them couldn't be written
+            long[] modificationCount = new long[1];
+            Collection<Route> elements = collection.snapshot(() -> modificationCount[0] =
+                    collection.getModificationCount());
+            writeFull(elements, modificationCount[0], generateFile(BinarySnapshot.EXTENSION));
+            return;
+        }
+        // the saves written before have marked their changes as saved by now, so these are only the new ones
+        ChangeSet changes = collection.getChanges();
+        if (changes.isEmpty()) {
+            System.out.println("The changes have already been saved by the previous save");
+            return;
+        }
+        try {
+            snapshot.writeDelta(changes, file);
+            synchronized (this) {
+                failed = false;
+            }
+            collection.markSaved(changes.getModificationCount());
+            System.out.printf("Successfully saved %d changes to: %s\n", changes.size(), BinarySnapshot.deltaOf(file));
+        } catch (IOException e) {
+            synchronized (this) {
+                failed = true;
+            }
+            System.out.println("Couldn't save the file because:\n" + e.getMessage());
+        }
+    }
+}
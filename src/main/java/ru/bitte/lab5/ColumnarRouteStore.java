@@ -0,0 +1,509 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementConstructionException;
+import ru.bitte.lab5.route.Coordinates;
+import ru.bitte.lab5.route.Location;
+import ru.bitte.lab5.route.Route;
+
+import java.util.*;
+
+/**
+ * A compact {@link RouteStore} that doesn't keep the {@link Route} objects themselves. Instead, every field of the
+ * elements is stored in its own primitive array (column), and a row of these columns corresponds to a single element:
+ * <ul>
+ *     <li>the IDs and distances are stored as {@code int} values;</li>
+ *     <li>the creation dates are stored as {@code long} nanoseconds since the epoch (see
+ *     {@link Route#getCreationTime()});</li>
+ *     <li>the coordinates and the locations are stored as {@code long} and {@code float} values;</li>
+ *     <li>the names of the elements and the locations are dictionary-encoded, i.e. every distinct name is stored
+ *     once and the rows hold {@code int} codes of the names.</li>
+ * </ul>
+ * The rows are found by the IDs through an open-addressing hash table of primitive {@code int} values, and the removed
+ * rows are filled with the last row, so the columns are always dense. A {@code Route} object is created from a row
+ * every time an element is requested, which makes the store several times smaller than the objects themselves and
+ * lets the scans over a single field go through flat arrays.
+ * <br>The columns and the table are split into chunks of {@value #CHUNK_SIZE} rows or slots, and a snapshot only
+ * copies the arrays of the references to the chunks, sharing the chunks themselves with the store. Every chunk
+ * remembers the version of the store it was created in, and a chunk of a version older than the last snapshot is
+ * never modified again: the first modification of it after the snapshot copies it, so a modification made after a
+ * snapshot only copies the one or two chunks it touches.
+ * @implNote The dictionary only grows, so the names that are no longer used stay in it until the store is cleared
+ */
+public class ColumnarRouteStore implements RouteStore {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS; // the number of the rows or the slots in a chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 16; // the initial size of the dictionary
+    private volatile Columns columns;
+    private volatile Object version; // the chunks created for this version are modified in place
+    private volatile String[] dictionary; // the names by their codes, only the first dictionarySize are used
+    private int dictionarySize;
+    private HashMap<String, Integer> codes; // the codes by the names
+
+    /**
+     * Constructs an empty {@code ColumnarRouteStore}.
+     */
+    public ColumnarRouteStore() {
+        version = new Object();
+        columns = new Columns(version);
+        dictionary = new String[INITIAL_CAPACITY];
+        codes = new HashMap<>();
+    }
+
+    @Override
+    public Route get(int id) {
+        Columns current = columns;
+        int row = current.find(id);
+        return row < 0 ? null : current.materialize(row, dictionary);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return columns.find(id) >= 0;
+    }
+
+    @Override
+    public Route put(Route element) {
+        Columns current = columns;
+        Object currentVersion = version;
+        int row = current.find(element.getId());
+        Route oldElement = null;
+        if (row < 0) {
+            row = current.append(element.getId(), currentVersion);
+        } else {
+            oldElement = current.materialize(row, dictionary);
+        }
+        int name = encode(element.getName());
+        int fromName = encode(element.getFrom().getName());
+        int toName = encode(element.getTo().getName());
+        RowChunk chunk = current.editableRows(row, currentVersion);
+        int i = row & CHUNK_MASK;
+        chunk.distances[i] = element.getDistance();
+        chunk.creationTimes[i] = element.getCreationTime();
+        chunk.coordinatesX[i] = element.getCoordinates().getX();
+        chunk.coordinatesY[i] = element.getCoordinates().getY();
+        chunk.fromX[i] = element.getFrom().getX();
+        chunk.fromY[i] = element.getFrom().getY();
+        chunk.fromZ[i] = element.getFrom().getZ();
+        chunk.toX[i] = element.getTo().getX();
+        chunk.toY[i] = element.getTo().getY();
+        chunk.toZ[i] = element.getTo().getZ();
+        chunk.names[i] = name;
+        chunk.fromNames[i] = fromName;
+        chunk.toNames[i] = toName;
+        return oldElement;
+    }
+
+    @Override
+    public Route remove(int id) {
+        Columns current = columns;
+        int row = current.find(id);
+        if (row < 0) {
+            return null;
+        }
+        Route oldElement = current.materialize(row, dictionary);
+        current.delete(row, version);
+        return oldElement;
+    }
+
+    @Override
+    public void clear() {
+        // the old chunks and dictionary stay with the snapshots, if there are any
+        columns = new Columns(version);
+        dictionary = new String[INITIAL_CAPACITY];
+        dictionarySize = 0;
+        codes = new HashMap<>();
+    }
+
+    @Override
+    public int size() {
+        return columns.size;
+    }
+
+    @Override
+    public Collection<Route> snapshot() {
+        Columns frozen = columns.freeze();
+        String[] frozenDictionary = dictionary;
+        version = new Object(); // a new object, so that no chunk created before could have the same version
+        int size = frozen.size;
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Route> iterator() {
+                return new Iterator<>() {
+                    private int row = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < size;
+                    }
+
+                    @Override
+                    public Route next() {
+                        if (row >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        return frozen.materialize(row++, frozenDictionary);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public List<Route> scanByName(String substring) {
+        Columns current = columns;
+        String[] currentDictionary = dictionary;
+        // check every distinct name once, and then only compare the codes in the column
+        boolean[] matches = new boolean[currentDictionary.length];
+        for (int code = 0; code < currentDictionary.length && currentDictionary[code] != null; code++) {
+            matches[code] = currentDictionary[code].contains(substring);
+        }
+        List<Route> found = new ArrayList<>();
+        for (int start = 0; start < current.size; start += CHUNK_SIZE) {
+            int[] names = current.rows[start >>> CHUNK_BITS].names;
+            int count = Math.min(CHUNK_SIZE, current.size - start);
+            for (int i = 0; i < count; i++) {
+                if (matches[names[i]]) {
+                    found.add(current.materialize(start + i, currentDictionary));
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void forEachDistance(DistanceConsumer consumer) {
+        Columns current = columns;
+        for (int start = 0; start < current.size; start += CHUNK_SIZE) {
+            RowChunk chunk = current.rows[start >>> CHUNK_BITS];
+            int count = Math.min(CHUNK_SIZE, current.size - start);
+            for (int i = 0; i < count; i++) {
+                consumer.accept(chunk.ids[i], chunk.distances[i]);
+            }
+        }
+    }
+
+    @Override
+    public void forEachName(NameConsumer consumer) {
+        Columns current = columns;
+        String[] currentDictionary = dictionary;
+        for (int start = 0; start < current.size; start += CHUNK_SIZE) {
+            RowChunk chunk = current.rows[start >>> CHUNK_BITS];
+            int count = Math.min(CHUNK_SIZE, current.size - start);
+            for (int i = 0; i < count; i++) {
+                consumer.accept(chunk.ids[i], currentDictionary[chunk.names[i]]);
+            }
+        }
+    }
+
+    @Override
+    public void forEachCoordinates(CoordinatesConsumer consumer) {
+        Columns current = columns;
+        for (int start = 0; start < current.size; start += CHUNK_SIZE) {
+            RowChunk chunk = current.rows[start >>> CHUNK_BITS];
+            int count = Math.min(CHUNK_SIZE, current.size - start);
+            for (int i = 0; i < count; i++) {
+                consumer.accept(chunk.ids[i], chunk.coordinatesX[i], chunk.coordinatesY[i]);
+            }
+        }
+    }
+
+    @Override
+    public void forEachEndpoints(EndpointsConsumer consumer) {
+        Columns current = columns;
+        for (int start = 0; start < current.size; start += CHUNK_SIZE) {
+            RowChunk chunk = current.rows[start >>> CHUNK_BITS];
+            int count = Math.min(CHUNK_SIZE, current.size - start);
+            for (int i = 0; i < count; i++) {
+                consumer.accept(chunk.ids[i], chunk.fromX[i], chunk.fromY[i], chunk.fromZ[i], chunk.toX[i],
+                        chunk.toY[i], chunk.toZ[i]);
+            }
+        }
+    }
+
+    // returns the code of a name, adding it to the dictionary if needed
+    private int encode(String name) {
+        Integer code = codes.get(name);
+        if (code == null) {
+            if (dictionarySize == dictionary.length) {
+                // a new array, so that the snapshots holding the old one see it unchanged
+                dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+            }
+            code = dictionarySize;
+            dictionary[dictionarySize++] = name;
+            codes.put(name, code);
+        }
+        return code;
+    }
+
+    /* the arrays of the references to the chunks of the columns and of the table of the rows by the ids. the live
+    arrays are only referenced by the store, and a snapshot gets copies of them */
+    private static final class Columns {
+        private static final int EMPTY = -1; // marks an empty slot of the table
+        private int size;
+        private RowChunk[] rows;
+        private SlotChunk[] slots; // open-addressing table with linear probing, a power of two chunks long
+
+        private Columns(Object version) {
+            rows = new RowChunk[0];
+            slots = new SlotChunk[] {new SlotChunk(version)};
+        }
+
+        private Columns(Columns other) {
+            size = other.size;
+            rows = other.rows.clone();
+            slots = other.slots.clone();
+        }
+
+        // returns a copy sharing the chunks, which mustn't be modified
+        private Columns freeze() {
+            return new Columns(this);
+        }
+
+        // returns the row of an id or a negative value if there's no such id
+        private int find(int id) {
+            SlotChunk[] table = slots;
+            // the mask is taken from the same table, since the table may be replaced while it's being read
+            int mask = table.length * CHUNK_SIZE - 1;
+            for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+                SlotChunk chunk = table[slot >>> CHUNK_BITS];
+                int row = chunk.rows[slot & CHUNK_MASK];
+                if (row == EMPTY || chunk.ids[slot & CHUNK_MASK] == id) {
+                    return row;
+                }
+            }
+        }
+
+        // adds a new row for an id and returns it, the rest of the row's fields are to be filled by the caller
+        private int append(int id, Object version) {
+            if ((size + 1) * 2L > slotCount()) {
+                rehash(slotCount() * 2, version);
+            }
+            if (size == rows.length * CHUNK_SIZE) {
+                rows = Arrays.copyOf(rows, rows.length + 1);
+                rows[rows.length - 1] = new RowChunk(version);
+            }
+            int row = size++;
+            editableRows(row, version).ids[row & CHUNK_MASK] = id;
+            setRow(id, row, version);
+            return row;
+        }
+
+        // removes a row by moving the last row in its place
+        private void delete(int row, Object version) {
+            int id = rows[row >>> CHUNK_BITS].ids[row & CHUNK_MASK];
+            int last = --size;
+            if (row != last) {
+                RowChunk to = editableRows(row, version);
+                RowChunk from = rows[last >>> CHUNK_BITS];
+                int i = row & CHUNK_MASK;
+                int j = last & CHUNK_MASK;
+                to.ids[i] = from.ids[j];
+                to.distances[i] = from.distances[j];
+                to.creationTimes[i] = from.creationTimes[j];
+                to.coordinatesX[i] = from.coordinatesX[j];
+                to.coordinatesY[i] = from.coordinatesY[j];
+                to.fromX[i] = from.fromX[j];
+                to.fromY[i] = from.fromY[j];
+                to.fromZ[i] = from.fromZ[j];
+                to.toX[i] = from.toX[j];
+                to.toY[i] = from.toY[j];
+                to.toZ[i] = from.toZ[j];
+                to.names[i] = from.names[j];
+                to.fromNames[i] = from.fromNames[j];
+                to.toNames[i] = from.toNames[j];
+                setRow(to.ids[i], row, version);
+            }
+            deleteSlot(id, version);
+        }
+
+        // creates a route object from a row
+        private Route materialize(int row, String[] dictionary) {
+            RowChunk chunk = rows[row >>> CHUNK_BITS];
+            int i = row & CHUNK_MASK;
+            try {
+                Coordinates coordinates = new Coordinates(chunk.coordinatesX[i], chunk.coordinatesY[i]);
+                Location from = new Location(chunk.fromX[i], chunk.fromY[i], chunk.fromZ[i],
+                        dictionary[chunk.fromNames[i]]);
+                Location to = new Location(chunk.toX[i], chunk.toY[i], chunk.toZ[i], dictionary[chunk.toNames[i]]);
+                // the ids of the stored elements are already reserved, and the distances already calculated
+                return Route.materialize(chunk.ids[i], dictionary[chunk.names[i]], coordinates,
+                        chunk.creationTimes[i], from, to, chunk.distances[i]);
+            } catch (ElementConstructionException e) {
+                // can only happen if the row was read in the middle of a modification
+                throw new IllegalStateException("Inconsistent row read from the columns", e);
+            }
+        }
+
+        // returns the chunk of a row that can be modified, copying it if it belongs to an older version
+        private RowChunk editableRows(int row, Object version) {
+            RowChunk chunk = rows[row >>> CHUNK_BITS];
+            if (chunk.version != version) {
+                chunk = new RowChunk(chunk, version);
+                rows[row >>> CHUNK_BITS] = chunk;
+            }
+            return chunk;
+        }
+
+        // returns the chunk of a slot that can be modified, copying it if it belongs to an older version
+        private SlotChunk editableSlots(int slot, Object version) {
+            SlotChunk chunk = slots[slot >>> CHUNK_BITS];
+            if (chunk.version != version) {
+                chunk = new SlotChunk(chunk, version);
+                slots[slot >>> CHUNK_BITS] = chunk;
+            }
+            return chunk;
+        }
+
+        // sets the row of an id in the table, adding the id if it isn't there
+        private void setRow(int id, int row, Object version) {
+            int mask = slotCount() - 1;
+            int slot = hash(id) & mask;
+            while (slotRow(slot) != EMPTY && slotId(slot) != id) {
+                slot = (slot + 1) & mask;
+            }
+            SlotChunk chunk = editableSlots(slot, version);
+            chunk.ids[slot & CHUNK_MASK] = id;
+            chunk.rows[slot & CHUNK_MASK] = row;
+        }
+
+        // removes an id from the table, shifting back the following entries of its probe sequence
+        private void deleteSlot(int id, Object version) {
+            int mask = slotCount() - 1;
+            int slot = hash(id) & mask;
+            while (slotId(slot) != id || slotRow(slot) == EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            int next = (slot + 1) & mask;
+            while (slotRow(next) != EMPTY) {
+                int home = hash(slotId(next)) & mask;
+                // move the entry back if its home slot isn't between the freed slot and its current position
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    SlotChunk chunk = editableSlots(slot, version);
+                    chunk.ids[slot & CHUNK_MASK] = slotId(next);
+                    chunk.rows[slot & CHUNK_MASK] = slotRow(next);
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+            editableSlots(slot, version).rows[slot & CHUNK_MASK] = EMPTY;
+        }
+
+        private int slotId(int slot) {
+            return slots[slot >>> CHUNK_BITS].ids[slot & CHUNK_MASK];
+        }
+
+        private int slotRow(int slot) {
+            return slots[slot >>> CHUNK_BITS].rows[slot & CHUNK_MASK];
+        }
+
+        // builds a new table of the given size from the ids of the rows
+        private void rehash(int newSlotCount, Object version) {
+            SlotChunk[] table = new SlotChunk[newSlotCount / CHUNK_SIZE];
+            for (int i = 0; i < table.length; i++) {
+                table[i] = new SlotChunk(version);
+            }
+            int mask = newSlotCount - 1;
+            for (int row = 0; row < size; row++) {
+                int id = rows[row >>> CHUNK_BITS].ids[row & CHUNK_MASK];
+                int slot = hash(id) & mask;
+                while (table[slot >>> CHUNK_BITS].rows[slot & CHUNK_MASK] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot >>> CHUNK_BITS].ids[slot & CHUNK_MASK] = id;
+                table[slot >>> CHUNK_BITS].rows[slot & CHUNK_MASK] = row;
+            }
+            slots = table;
+        }
+
+        // the number of the slots in the table
+        private int slotCount() {
+            return slots.length * CHUNK_SIZE;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // the values of the fields of CHUNK_SIZE consecutive rows
+    private static final class RowChunk {
+        private final Object version; // the version of the store the chunk was created in
+        private final int[] ids;
+        private final int[] distances;
+        private final long[] creationTimes;
+        private final long[] coordinatesX;
+        private final long[] coordinatesY;
+        private final long[] fromX;
+        private final long[] fromY;
+        private final float[] fromZ;
+        private final long[] toX;
+        private final long[] toY;
+        private final float[] toZ;
+        private final int[] names;
+        private final int[] fromNames;
+        private final int[] toNames;
+
+        private RowChunk(Object version) {
+            this.version = version;
+            ids = new int[CHUNK_SIZE];
+            distances = new int[CHUNK_SIZE];
+            creationTimes = new long[CHUNK_SIZE];
+            coordinatesX = new long[CHUNK_SIZE];
+            coordinatesY = new long[CHUNK_SIZE];
+            fromX = new long[CHUNK_SIZE];
+            fromY = new long[CHUNK_SIZE];
+            fromZ = new float[CHUNK_SIZE];
+            toX = new long[CHUNK_SIZE];
+            toY = new long[CHUNK_SIZE];
+            toZ = new float[CHUNK_SIZE];
+            names = new int[CHUNK_SIZE];
+            fromNames = new int[CHUNK_SIZE];
+            toNames = new int[CHUNK_SIZE];
+        }
+
+        private RowChunk(RowChunk other, Object version) {
+            this.version = version;
+            ids = other.ids.clone();
+            distances = other.distances.clone();
+            creationTimes = other.creationTimes.clone();
+            coordinatesX = other.coordinatesX.clone();
+            coordinatesY = other.coordinatesY.clone();
+            fromX = other.fromX.clone();
+            fromY = other.fromY.clone();
+            fromZ = other.fromZ.clone();
+            toX = other.toX.clone();
+            toY = other.toY.clone();
+            toZ = other.toZ.clone();
+            names = other.names.clone();
+            fromNames = other.fromNames.clone();
+            toNames = other.toNames.clone();
+        }
+    }
+
+    // CHUNK_SIZE consecutive slots of the table, rows holds EMPTY or the row of the id in ids
+    private static final class SlotChunk {
+        private final Object version; // the version of the store the chunk was created in
+        private final int[] ids;
+        private final int[] rows;
+
+        private SlotChunk(Object version) {
+            this.version = version;
+            ids = new int[CHUNK_SIZE];
+            rows = new int[CHUNK_SIZE];
+            Arrays.fill(rows, Columns.EMPTY);
+        }
+
+        private SlotChunk(SlotChunk other, Object version) {
+            this.version = version;
+            ids = other.ids.clone();
+            rows = other.rows.clone();
+        }
+    }
+}
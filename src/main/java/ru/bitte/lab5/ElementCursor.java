@@ -0,0 +1,39 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An object implementing this interface is a cursor over the elements of a collection in a certain order, which hands
+ * the elements out page by page. A cursor remembers its position, so getting the next page only takes as long as the
+ * page itself, however far the cursor has gone. The cursors are opened by {@link CollectionKeeper}.
+ * @see CollectionKeeper#openCursor()
+ * @see CollectionKeeper#openSortedCursor()
+ */
+public interface ElementCursor {
+    /**
+     * Moves the cursor forward past the given number of elements without returning them.
+     * @param count the number of the elements to be skipped
+     */
+    void skip(long count);
+
+    /**
+     * Returns the next elements and moves the cursor past them.
+     * @param count the greatest number of the elements to be returned
+     * @return a {@link List} of the next elements, which is shorter than {@code count} only at the end of the elements
+     */
+    List<Route> next(int count);
+
+    /**
+     * Returns whether there are elements after the cursor.
+     * @return {@code true} if there are more elements, otherwise {@code false}
+     */
+    boolean hasNext();
+
+    /**
+     * Returns the number of the elements the cursor has moved past, either returned or skipped.
+     * @return the position of the cursor
+     */
+    long getPosition();
+}
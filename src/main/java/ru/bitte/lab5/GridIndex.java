@@ -0,0 +1,123 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An object of this class is a uniform grid index over the current coordinates of {@link Route} objects, used by
+ * {@link CollectionKeeper} for the queries by the position. The plane is split into square cells of the same size, and
+ * the index maps each cell to the set of IDs of the elements whose coordinates lie in it. A rectangle only overlaps a
+ * few cells, so the elements inside it are found by checking the elements of those cells instead of every element in
+ * the collection. Only the cells holding any elements are stored, so the index takes no space for the empty parts of
+ * the plane.
+ * <br>A query looks up every cell overlapping the rectangle, unless there are more of them than the cells holding any
+ * elements, in which case it goes through the stored cells instead, so a query never costs more than the number of the
+ * stored cells plus the number of the elements in the overlapped ones.
+ * @implNote The cells further than about 6.8e10 from the origin are merged with the outermost cells, since the
+ * coordinates are unbounded in one direction. The index is safe to read while it's being modified, but the
+ * modifications themselves must not run concurrently with each other
+ */
+class GridIndex {
+    private static final int CELL_SIZE = 32; // the side of a cell
+    private final ConcurrentHashMap<Long, Set<Integer>> cells; // cell -> IDs of the elements in it
+
+    /**
+     * Constructs an empty {@code GridIndex}.
+     */
+    GridIndex() {
+        cells = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Puts an element's coordinates into the index.
+     * @param element the element to be indexed
+     */
+    void add(Route element) {
+        add(element.getId(), element.getCoordinates().getX(), element.getCoordinates().getY());
+    }
+
+    /**
+     * Puts a point into the index.
+     * @param id the ID of the element at the point
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     */
+    void add(int id, long x, long y) {
+        cells.computeIfAbsent(key(cell(x), cell(y)), c -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    /**
+     * Removes an element's coordinates from the index.
+     * @param element the element to be removed from the index
+     */
+    void remove(Route element) {
+        long key = key(cell(element.getCoordinates().getX()), cell(element.getCoordinates().getY()));
+        Set<Integer> ids = cells.get(key);
+        if (ids != null && ids.remove(element.getId()) && ids.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    /**
+     * Removes all the points from the index.
+     */
+    void clear() {
+        cells.clear();
+    }
+
+    /**
+     * Returns the IDs of the elements whose coordinates may lie in the given rectangle, i.e. lie in the cells
+     * overlapping it. The candidates still have to be checked against the actual coordinates.
+     * @param minX the least <i>X</i> coordinate of the rectangle
+     * @param minY the least <i>Y</i> coordinate of the rectangle
+     * @param maxX the greatest <i>X</i> coordinate of the rectangle
+     * @param maxY the greatest <i>Y</i> coordinate of the rectangle
+     * @return a {@link List} of the IDs of the candidate elements
+     */
+    List<Integer> candidates(double minX, double minY, double maxX, double maxY) {
+        int fromX = cell(minX);
+        int fromY = cell(minY);
+        int toX = cell(maxX);
+        int toY = cell(maxY);
+        List<Integer> result = new ArrayList<>();
+        if (fromX > toX || fromY > toY) {
+            return result;
+        }
+        long width = (long) toX - fromX + 1;
+        long height = (long) toY - fromY + 1;
+        int stored = cells.size();
+        // compared by division, since the number of the overlapped cells may not fit into a long
+        if (width <= stored && height <= stored / width) {
+            // the loop variables are long, so that they don't overflow at the outermost cells
+            for (long x = fromX; x <= toX; x++) {
+                for (long y = fromY; y <= toY; y++) {
+                    Set<Integer> ids = cells.get(key((int) x, (int) y));
+                    if (ids != null) {
+                        result.addAll(ids);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, Set<Integer>> cell : cells.entrySet()) {
+                int x = (int) (cell.getKey() >> 32);
+                int y = (int) (long) cell.getKey();
+                if (x >= fromX && x <= toX && y >= fromY && y <= toY) {
+                    result.addAll(cell.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    // returns the cell a coordinate falls into, the cast merges the cells beyond the int range with the outermost ones
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    // packs the two coordinates of a cell into a single key
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The default {@link RouteStore}, which keeps the {@link Route} objects themselves on the heap in an {@link IdMap}
+ * mapped by their IDs. The snapshots are frozen copies of the map that share all of its nodes, so taking a snapshot
+ * copies nothing, and a modification made after it only copies the few nodes on the way to the modified element,
+ * leaving the snapshot as it was.
+ */
+public class HeapRouteStore implements RouteStore {
+    private final IdMap<Route> elements;
+
+    /**
+     * Constructs an empty {@code HeapRouteStore}.
+     */
+    public HeapRouteStore() {
+        elements = new IdMap<>();
+    }
+
+    @Override
+    public Route get(int id) {
+        return elements.get(id);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return elements.containsKey(id);
+    }
+
+    @Override
+    public Route put(Route element) {
+        return elements.put(element.getId(), element);
+    }
+
+    @Override
+    public Route remove(int id) {
+        return elements.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        elements.clear();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public Collection<Route> snapshot() {
+        return Collections.unmodifiableCollection(elements.freeze().values());
+    }
+
+    @Override
+    public List<Route> scanByName(String substring) {
+        List<Route> found = new ArrayList<>();
+        elements.forEachValue(element -> {
+            if (element.getName().contains(substring)) {
+                found.add(element);
+            }
+        });
+        return found;
+    }
+
+    @Override
+    public void forEachDistance(DistanceConsumer consumer) {
+        elements.forEachValue(element -> consumer.accept(element.getId(), element.getDistance()));
+    }
+
+    @Override
+    public void forEachName(NameConsumer consumer) {
+        elements.forEachValue(element -> consumer.accept(element.getId(), element.getName()));
+    }
+
+    @Override
+    public void forEachCoordinates(CoordinatesConsumer consumer) {
+        elements.forEachValue(element -> consumer.accept(element.getId(), element.getCoordinates().getX(),
+                element.getCoordinates().getY()));
+    }
+
+    @Override
+    public void forEachEndpoints(EndpointsConsumer consumer) {
+        elements.forEachValue(element -> consumer.accept(element.getId(), element.getFrom().getX(),
+                element.getFrom().getY(), element.getFrom().getZ(), element.getTo().getX(), element.getTo().getY(),
+                element.getTo().getZ()));
+    }
+}
@@ -0,0 +1,427 @@
+package ru.bitte.lab5;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * A map from the {@code int} IDs of the elements to objects, used by the stores (see {@link RouteStore}) that have to
+ * hand out snapshots of their contents. The map is a hash array mapped trie: every node holds up to 32 entries and
+ * children, picked by 5 bits of the mixed ID at a time, so a lookup goes through about log<sub>32</sub>(n) nodes.
+ * <br>Freezing the map (see {@link #freeze()}) takes no time at all, since the frozen map simply shares all the nodes
+ * with the live one. Every node remembers the version of the map it was created in, and a node of an older version is
+ * never modified again: a modification copies the nodes on the way to the entry instead, which is at most a few small
+ * nodes, and only the first modification of a node after a freeze copies it. The nodes of the current version belong
+ * to the live map alone, so they are modified in place.
+ * @implNote The ID mixing function is a bijection, so two IDs never share the whole path and the trie needs no
+ * collision nodes. The reads of the live map may run concurrently with a modification, in which case they may return an
+ * inconsistent result or throw a {@link RuntimeException}, but the frozen maps are never affected by the modifications
+ * @param <V> the type of the mapped objects
+ */
+final class IdMap<V> {
+    private static final int BITS = 5; // the number of the ID bits picking the position in a node
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS; // the number of the levels of nodes
+    private final boolean frozen;
+    private volatile Object version; // the nodes created for this version are modified in place
+    private Node root;
+    private int size;
+
+    /**
+     * Constructs an empty {@code IdMap}.
+     */
+    IdMap() {
+        frozen = false;
+        version = new Object();
+        root = Node.empty(version);
+    }
+
+    private IdMap(Node root, int size) {
+        frozen = true;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the object mapped to an ID.
+     * @param id the ID
+     * @return the mapped object or {@code null} if there's no such ID in the map
+     */
+    @SuppressWarnings("unchecked")
+    V get(int id) {
+        int hash = mix(id);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int index = index(node.dataMap, bit);
+                return node.keys[index] == id ? (V) node.values[index] : null;
+            }
+            if ((node.nodeMap & bit) == 0) {
+                return null;
+            }
+            node = node.children[index(node.nodeMap, bit)];
+        }
+    }
+
+    /**
+     * Returns whether an ID is in the map.
+     * @param id the ID
+     * @return {@code true} if the ID is mapped to an object; {@code false} otherwise
+     */
+    boolean containsKey(int id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Maps an ID to an object, replacing the object mapped to it before.
+     * @param id the ID
+     * @param value the object, which must not be {@code null}
+     * @return the replaced object or {@code null} if the ID wasn't in the map
+     */
+    V put(int id, V value) {
+        checkWritable();
+        Change<V> change = new Change<>();
+        root = put(root, id, mix(id), 0, value, version, change);
+        if (change.oldValue == null) {
+            size++;
+        }
+        return change.oldValue;
+    }
+
+    /**
+     * Removes an ID from the map.
+     * @param id the ID
+     * @return the object the ID was mapped to or {@code null} if the ID wasn't in the map
+     */
+    V remove(int id) {
+        checkWritable();
+        Change<V> change = new Change<>();
+        Node newRoot = remove(root, id, mix(id), 0, version, change);
+        if (change.oldValue != null) {
+            root = newRoot;
+            size--;
+        }
+        return change.oldValue;
+    }
+
+    /**
+     * Removes all the IDs from the map. The frozen maps keep their nodes.
+     */
+    void clear() {
+        checkWritable();
+        root = Node.empty(version);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of the IDs in the map.
+     * @return the number of the IDs
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns an immutable copy of the map as it is at the moment of the call, sharing all the nodes with this map.
+     * The nodes are then copied by the following modifications of this map as needed.
+     * @return the frozen {@code IdMap}, which must not be modified
+     */
+    IdMap<V> freeze() {
+        IdMap<V> frozenMap = new IdMap<>(root, size);
+        if (!frozen) {
+            version = new Object(); // a new object, so that no node created before could have the same version
+        }
+        return frozenMap;
+    }
+
+    /**
+     * Passes every mapped object to the consumer.
+     * @param consumer the consumer of the objects
+     */
+    void forEachValue(Consumer<? super V> consumer) {
+        forEachValue(root, consumer);
+    }
+
+    /**
+     * Returns the mapped objects of a frozen map as a collection.
+     * @return an unmodifiable {@link Collection} of the mapped objects in no particular order
+     */
+    Collection<V> values() {
+        Node frozenRoot = root;
+        int frozenSize = size;
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator(frozenRoot);
+            }
+
+            @Override
+            public int size() {
+                return frozenSize;
+            }
+        };
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("A frozen map can't be modified");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEachValue(Node node, Consumer<? super V> consumer) {
+        for (Object value : node.values) {
+            consumer.accept((V) value);
+        }
+        for (Node child : node.children) {
+            forEachValue(child, consumer);
+        }
+    }
+
+    // puts an entry into the subtrie of a node and returns the node that replaces it
+    private static <V> Node put(Node node, int id, int hash, int shift, Object value, Object version,
+                                Change<V> change) {
+        int bit = bit(hash, shift);
+        if ((node.dataMap & bit) != 0) {
+            int index = index(node.dataMap, bit);
+            Node editable = node.editable(version);
+            if (node.keys[index] == id) {
+                change.replaced(editable.values[index]);
+                editable.values[index] = value;
+            } else {
+                // the two entries falling into the same position move down into a new child
+                Node child = pair(node.keys[index], node.values[index], id, value, shift + BITS, version);
+                editable.entryToChild(bit, index, child);
+            }
+            return editable;
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int index = index(node.nodeMap, bit);
+            Node child = node.children[index];
+            Node newChild = put(child, id, hash, shift + BITS, value, version, change);
+            if (newChild == child) {
+                return node;
+            }
+            Node editable = node.editable(version);
+            editable.children[index] = newChild;
+            return editable;
+        }
+        Node editable = node.editable(version);
+        editable.insertEntry(bit, id, value);
+        return editable;
+    }
+
+    // removes an entry from the subtrie of a node and returns the node that replaces it
+    private static <V> Node remove(Node node, int id, int hash, int shift, Object version, Change<V> change) {
+        int bit = bit(hash, shift);
+        if ((node.dataMap & bit) != 0) {
+            int index = index(node.dataMap, bit);
+            if (node.keys[index] != id) {
+                return node;
+            }
+            change.replaced(node.values[index]);
+            Node editable = node.editable(version);
+            editable.removeEntry(bit, index);
+            return editable;
+        }
+        if ((node.nodeMap & bit) != 0) {
+            int index = index(node.nodeMap, bit);
+            Node child = node.children[index];
+            Node newChild = remove(child, id, hash, shift + BITS, version, change);
+            if (change.oldValue == null) {
+                return node;
+            }
+            Node editable = node.editable(version);
+            if (newChild.nodeMap == 0 && newChild.keys.length == 1) {
+                // a child left with a single entry is replaced by the entry, so that the trie stays compact
+                editable.childToEntry(bit, index, newChild.keys[0], newChild.values[0]);
+            } else {
+                editable.children[index] = newChild;
+            }
+            return editable;
+        }
+        return node;
+    }
+
+    // creates a node holding two entries, splitting it further while their positions are the same
+    private static Node pair(int firstId, Object firstValue, int secondId, Object secondValue, int shift,
+                             Object version) {
+        int firstBit = bit(mix(firstId), shift);
+        int secondBit = bit(mix(secondId), shift);
+        Node node = Node.empty(version);
+        if (firstBit == secondBit) {
+            node.nodeMap = firstBit;
+            node.children = new Node[] {pair(firstId, firstValue, secondId, secondValue, shift + BITS, version)};
+        } else {
+            node.insertEntry(firstBit, firstId, firstValue);
+            node.insertEntry(secondBit, secondId, secondValue);
+        }
+        return node;
+    }
+
+    // spreads the bits of an id, so that the consecutive ids don't all fall into the same subtrie
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    // the index of a position in the arrays of the positions of a bitmap
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    // the object replaced or removed by a modification
+    private static final class Change<V> {
+        private V oldValue;
+
+        @SuppressWarnings("unchecked")
+        private void replaced(Object value) {
+            oldValue = (V) value;
+        }
+    }
+
+    private static final class Node {
+        private static final int[] NO_KEYS = new int[0];
+        private static final Object[] NO_VALUES = new Object[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private final Object version; // the version of the map the node was created in
+        private int dataMap; // the positions holding entries
+        private int nodeMap; // the positions holding children
+        private int[] keys; // the ids of the entries in the order of their positions
+        private Object[] values;
+        private Node[] children; // the children in the order of their positions
+
+        private Node(Object version, int dataMap, int nodeMap, int[] keys, Object[] values, Node[] children) {
+            this.version = version;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.values = values;
+            this.children = children;
+        }
+
+        private static Node empty(Object version) {
+            return new Node(version, 0, 0, NO_KEYS, NO_VALUES, NO_CHILDREN);
+        }
+
+        // returns this node if it belongs to the version, or its copy belonging to the version otherwise
+        private Node editable(Object currentVersion) {
+            if (version == currentVersion) {
+                return this;
+            }
+            return new Node(currentVersion, dataMap, nodeMap, keys.clone(), values.clone(), children.clone());
+        }
+
+        private void insertEntry(int bit, int id, Object value) {
+            int index = index(dataMap, bit);
+            int[] newKeys = new int[keys.length + 1];
+            Object[] newValues = new Object[values.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(values, 0, newValues, 0, index);
+            newKeys[index] = id;
+            newValues[index] = value;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(values, index, newValues, index + 1, values.length - index);
+            keys = newKeys;
+            values = newValues;
+            dataMap |= bit;
+        }
+
+        private void removeEntry(int bit, int index) {
+            int[] newKeys = new int[keys.length - 1];
+            Object[] newValues = new Object[values.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(values, 0, newValues, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+            System.arraycopy(values, index + 1, newValues, index, newValues.length - index);
+            keys = newKeys;
+            values = newValues;
+            dataMap &= ~bit;
+        }
+
+        private void insertChild(int bit, Node child) {
+            int index = index(nodeMap, bit);
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChildren[index] = child;
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            children = newChildren;
+            nodeMap |= bit;
+        }
+
+        private void removeChild(int bit, int index) {
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+            children = newChildren;
+            nodeMap &= ~bit;
+        }
+
+        private void entryToChild(int bit, int index, Node child) {
+            removeEntry(bit, index);
+            insertChild(bit, child);
+        }
+
+        private void childToEntry(int bit, int index, int id, Object value) {
+            removeChild(bit, index);
+            insertEntry(bit, id, value);
+        }
+    }
+
+    // goes through the trie depth first, the entries of a node before its children
+    private final class ValueIterator implements Iterator<V> {
+        private final Node[] nodes = new Node[MAX_DEPTH + 1];
+        private final int[] entries = new int[MAX_DEPTH + 1]; // the next entry of the nodes on the path
+        private final int[] children = new int[MAX_DEPTH + 1]; // the next child of the nodes on the path
+        private int depth;
+        private Object nextValue;
+
+        private ValueIterator(Node root) {
+            nodes[0] = root;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextValue != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (nextValue == null) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) nextValue;
+            advance();
+            return value;
+        }
+
+        private void advance() {
+            while (depth >= 0) {
+                Node node = nodes[depth];
+                if (entries[depth] < node.values.length) {
+                    nextValue = node.values[entries[depth]++];
+                    return;
+                }
+                if (children[depth] < node.children.length) {
+                    Node child = node.children[children[depth]++];
+                    depth++;
+                    nodes[depth] = child;
+                    entries[depth] = 0;
+                    children[depth] = 0;
+                } else {
+                    depth--;
+                }
+            }
+            nextValue = null;
+        }
+    }
+}
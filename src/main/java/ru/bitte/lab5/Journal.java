@@ -0,0 +1,344 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementParsingInFileException;
+import ru.bitte.lab5.exceptions.GetByIDException;
+import ru.bitte.lab5.route.Route;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * An object of the {@code Journal} class keeps a collection durable between the runs of the program without saving
+ * the whole of it after every change. Every modification of the collection is appended to a journal file as a compact
+ * record, and the state of the collection is restored by loading the last checkpoint and replaying the journal
+ * written after it.
+ * <br>The journal is split into numbered segments, and a checkpoint is a {@link BinarySnapshot} of the collection
+ * at the start of the segment with the same number. For a base file {@code routes}, the files are named
+ * {@code routes.N.bin} for the checkpoints and {@code routes.N.log} for the segments. The collection is restored from
+ * the checkpoint with the greatest number, followed by the segments starting with the same number.
+ * <br>The records are written on a dedicated thread. The modifications only put their records into a buffer, and
+ * {@link #sync()} waits until all the buffered records are written and forced to the disk, so all the modifications
+ * made by a single command cost a single write. Once a segment grows large enough, a new checkpoint is written in the
+ * background, after which the older checkpoints and segments are deleted. A checkpoint that couldn't be written is
+ * reported to {@code System.out} right from the background thread (see {@link Output}).
+ * <br>The segments are written in the format described in {@link ChangeRecords}, with their numbers as the bases, so a
+ * record written partially ends the replay of its segment.
+ */
+public class Journal implements MutationListener, Closeable {
+    private static final long COMPACTION_THRESHOLD = 16L << 20; // the segment size that triggers a checkpoint
+    private static final byte[] NEXT_SEGMENT = new byte[0]; // marks the switch to the next segment in the buffer
+    private final File directory;
+    private final String baseName;
+    private final BinarySnapshot snapshot;
+    private final ExecutorService checkpointer; // writes the checkpoints in the background
+    private final List<byte[]> pending; // the records not yet handed to the writer, guarded by this
+    private long appended; // the number of records put into the buffer
+    private long durable; // the number of records written and forced to the disk
+    private IOException failure; // the error that stopped the writer, if any
+    private boolean closed;
+    private boolean compacting;
+    private int segment; // the number of the segment the records are currently appended to
+    private CollectionKeeper keeper;
+    private Thread writer;
+
+    /**
+     * Constructs a {@code Journal} object for the given base file. Nothing is read or written until the collection
+     * is recovered or the journal is started.
+     * @param base the base file the names of the checkpoints and segments are derived from
+     * @param snapshot a reference to a {@link BinarySnapshot} instance used for writing and reading the checkpoints
+     */
+    public Journal(File base, BinarySnapshot snapshot) {
+        File absolute = base.getAbsoluteFile();
+        this.directory = absolute.getParentFile();
+        this.baseName = absolute.getName();
+        this.snapshot = snapshot;
+        this.checkpointer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "journal-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pending = new ArrayList<>();
+        this.segment = -1;
+    }
+
+    /**
+     * Returns whether a checkpoint has been written, i.e. whether the collection can be restored from the journal.
+     * @return {@code true} if there is a checkpoint; {@code false} otherwise
+     */
+    public boolean hasCheckpoint() {
+        return !numbers(".bin").isEmpty();
+    }
+
+    /**
+     * Restores the collection from the last checkpoint and the journal segments following it, if there is a
+     * checkpoint. The elements are put into the given keeper, which must be empty.
+     * @param keeper the keeper to restore the collection into
+     * @return {@code true} if the collection has been restored; {@code false} if there is no checkpoint yet
+     * @throws IOException if an input/output exception occurred, or the checkpoint is damaged
+     * @throws ElementParsingInFileException if an element couldn't be restored from the checkpoint or the journal
+     */
+    public boolean recover(CollectionKeeper keeper) throws IOException, ElementParsingInFileException {
+        SortedSet<Integer> checkpoints = numbers(".bin");
+        if (checkpoints.isEmpty()) {
+            return false;
+        }
+        int checkpoint = checkpoints.last();
+        snapshot.readFromFile(file(checkpoint, ".bin"), keeper::addElement);
+        segment = checkpoint;
+        for (int number : numbers(".log").tailSet(checkpoint)) {
+            replay(file(number, ".log"), keeper);
+            segment = number;
+        }
+        return true;
+    }
+
+    /**
+     * Starts journaling the modifications of the collection kept by the given keeper. A new segment is started for the
+     * following modifications. If the collection hasn't been recovered from the journal, its initial checkpoint is
+     * written first, and otherwise a new checkpoint is written in the background.
+     * @param keeper the keeper of the collection to be journaled
+     * @throws IOException if an input/output exception occurred
+     */
+    public void start(CollectionKeeper keeper) throws IOException {
+        this.keeper = keeper;
+        boolean recovered = segment >= 0;
+        segment++;
+        if (!recovered) {
+            writeCheckpoint(keeper.snapshot(), segment);
+        }
+        int first = segment;
+        FileChannel channel = openSegment(first);
+        writer = new Thread(() -> write(channel, first), "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        keeper.setMutationListener(this);
+        if (recovered) {
+            compact();
+        }
+    }
+
+    /**
+     * Waits until all the modifications journaled so far are written to the disk.
+     * @throws IOException if the journal couldn't be written
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        while (durable < target && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing the journal");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes the remaining modifications to the disk and stops journaling. A checkpoint being written in the background
+     * is finished first.
+     * @throws IOException if the journal couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (keeper != null) {
+            keeper.setMutationListener(null);
+        }
+        synchronized (this) {
+            checkpointer.shutdown();
+        }
+        try {
+            checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            sync();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the journal");
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void elementPut(Route element) {
+        append(ChangeRecords.put(element));
+    }
+
+    @Override
+    public void elementRemoved(int id) {
+        append(ChangeRecords.remove(id));
+    }
+
+    @Override
+    public void collectionCleared() {
+        append(ChangeRecords.clear());
+    }
+
+    // puts a record into the buffer for the writer
+    private synchronized void append(byte[] record) {
+        pending.add(record);
+        appended++;
+        notifyAll();
+    }
+
+    // the loop of the writer thread, writing the buffered records to the current segment
+    private void write(FileChannel channel, int number) {
+        CRC32C crc = new CRC32C();
+        try {
+            while (true) {
+                List<byte[]> batch;
+                synchronized (this) {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (pending.isEmpty()) {
+                        break;
+                    }
+                    batch = new ArrayList<>(pending);
+                    pending.clear();
+                }
+                int written = 0;
+                for (byte[] record : batch) {
+                    if (record == NEXT_SEGMENT) {
+                        channel.force(false);
+                        channel.close();
+                        channel = openSegment(++number);
+                        continue;
+                    }
+                    ChangeRecords.write(channel, record, crc);
+                    written++;
+                }
+                channel.force(false);
+                synchronized (this) {
+                    durable += written;
+                    notifyAll();
+                }
+                if (channel.size() >= COMPACTION_THRESHOLD) {
+                    compact();
+                }
+            }
+            channel.close();
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // starts writing a new checkpoint in the background unless one is being written already
+    private synchronized void compact() {
+        if (compacting || checkpointer.isShutdown()) {
+            return;
+        }
+        compacting = true;
+        checkpointer.execute(() -> {
+            try {
+                // the segment is switched at the exact moment the snapshot is taken
+                int[] number = new int[1];
+                Collection<Route> state = keeper.snapshot(() -> number[0] = nextSegment());
+                writeCheckpoint(state, number[0]);
+                // the checkpoint covers everything before its segment, so the older files aren't needed anymore
+                for (int old : numbers(".bin").headSet(number[0])) {
+                    Files.deleteIfExists(file(old, ".bin").toPath());
+                }
+                for (int old : numbers(".log").headSet(number[0])) {
+                    Files.deleteIfExists(file(old, ".log").toPath());
+                }
+            } catch (IOException e) {
+                System.out.println("Couldn't write a journal checkpoint because:\n" + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    // moves the following records to a new segment, returning its number
+    private synchronized int nextSegment() {
+        pending.add(NEXT_SEGMENT);
+        notifyAll();
+        return ++segment;
+    }
+
+    // writes a checkpoint to a temporary file and then moves it in place, so that a partial checkpoint is never used
+    private void writeCheckpoint(Collection<Route> state, int number) throws IOException {
+        File temporary = file(number, ".bin.tmp");
+        snapshot.writeToFile(state, temporary);
+        Files.move(temporary.toPath(), file(number, ".bin").toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // creates a new segment file and writes its header
+    private FileChannel openSegment(int number) throws IOException {
+        FileChannel channel = FileChannel.open(file(number, ".log").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ChangeRecords.writeHeader(channel, number);
+        channel.force(true);
+        return channel;
+    }
+
+    // applies the complete records of a segment to the collection
+    private static void replay(File file, CollectionKeeper keeper) throws IOException, ElementParsingInFileException {
+        ChangeRecords.read(file, new MutationListener() {
+            @Override
+            public void elementPut(Route element) {
+                keeper.addElement(element);
+            }
+
+            @Override
+            public void elementRemoved(int id) {
+                try {
+                    keeper.removeByID(id);
+                } catch (GetByIDException e) {
+                    // already removed, the removal of the same element may be recorded twice
+                }
+            }
+
+            @Override
+            public void collectionCleared() {
+                keeper.clearCollection();
+            }
+        });
+    }
+
+    // returns the numbers of the existing files with the given extension in the ascending order
+    private SortedSet<Integer> numbers(String extension) {
+        Pattern pattern = Pattern.compile(Pattern.quote(baseName) + "\\.(\\d+)" + Pattern.quote(extension));
+        SortedSet<Integer> numbers = new TreeSet<>();
+        String[] names = directory.list();
+        for (String name : names == null ? new String[0] : names) {
+            Matcher matcher = pattern.matcher(name);
+            if (matcher.matches()) {
+                numbers.add(Integer.parseInt(matcher.group(1)));
+            }
+        }
+        return numbers;
+    }
+
+    private File file(int number, String extension) {
+        return new File(directory, baseName + "." + number + extension);
+    }
+}
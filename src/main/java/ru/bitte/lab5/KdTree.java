@@ -0,0 +1,576 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An object of this class is a k-d tree over points in a 3-d space tagged with the IDs of {@link Route} objects, used
+ * by {@link CollectionKeeper} for finding the elements the starting or the destination locations of which are the
+ * nearest to a given point. The distinct points are kept in arrays ordered so that the tree needs no nodes: the middle
+ * point of any part of the arrays splits the rest of the part into the points not greater and not less than it by the
+ * coordinate the points of the part are spread along the most. Each point holds the sorted IDs of all the elements at
+ * it, so that many elements sharing a location (e.g. a common destination) take a single place in the tree. A search
+ * keeps track of the distance from the searched point to the box of every part it goes into, and only goes into the
+ * parts that may hold points nearer than the ones found so far, so it checks a small number of points in a tree of any
+ * size, even for a point far away from all of them.
+ * <br>A balanced tree isn't restructured by the modifications, so the points are kept in a few trees of doubling
+ * sizes instead, like the digits of a binary number: the tree of level <i>i</i> holds at most {@value #PENDING_LIMIT}
+ * &times; 2<sup><i>i</i></sup> IDs, and there is at most one tree per level. The points added recently are kept in a
+ * short list that every search goes through, and once the list is full, its points are built into a tree together
+ * with the trees of the lowest levels, just as adding one to a binary number carries over its lowest digits. Every
+ * point is thus rebuilt only a logarithmic number of times however many points are added, and a search goes through a
+ * logarithmic number of trees. The removed IDs are only marked as removed, and a tree with too many of them is built
+ * anew on its own.
+ * @implNote A search running concurrently with a modification may fail or give a wrong result, so such searches have to
+ * be validated and repeated, as the reads of {@link CollectionKeeper} are. The modifications must not run concurrently
+ * with each other
+ */
+class KdTree {
+    private static final int PENDING_LIMIT = 256; // the number of the added points waiting to be built into a tree
+    private Tree[] levels; // the trees by their levels, null at the empty levels
+    private Entries pending; // the points added since the trees were built
+
+    /**
+     * Constructs an empty {@code KdTree}.
+     */
+    KdTree() {
+        clear();
+    }
+
+    /**
+     * Puts a point into the tree, building the recently added points into the trees of the levels if there are enough
+     * of them.
+     * @param id the ID of the element at the point
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     * @param z the <i>Z</i> coordinate of the point
+     */
+    void add(int id, long x, long y, float z) {
+        load(id, x, y, z);
+        if (pending.count >= PENDING_LIMIT) {
+            // the list is copied rather than added to, as it may be being searched
+            Entries carry = new Entries(pending.count);
+            carry.addAll(pending);
+            Tree[] updated = levels.clone();
+            int level = 0;
+            // the full levels are merged upwards until there is an empty one that can take all their points
+            while (level < updated.length && updated[level] != null) {
+                updated[level].collect(carry);
+                updated[level] = null;
+                level++;
+            }
+            place(updated, level, new Tree(carry));
+            pending = new Entries(16);
+        }
+    }
+
+    /**
+     * Puts a point into the tree without rebuilding it, which is used for putting many points at once. The points put
+     * this way must be followed by a call to {@link #rebuild()}, otherwise the searches go through all of them.
+     * @param id the ID of the element at the point
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     * @param z the <i>Z</i> coordinate of the point
+     */
+    void load(int id, long x, long y, float z) {
+        pending.add(id, x, y, z);
+    }
+
+    /**
+     * Removes a point from the tree, rebuilding the tree if too many of its points have been removed. The point must
+     * have the same coordinates it was put with.
+     * @param id the ID of the element at the point
+     * @param x the <i>X</i> coordinate of the point
+     * @param y the <i>Y</i> coordinate of the point
+     * @param z the <i>Z</i> coordinate of the point
+     */
+    void remove(int id, long x, long y, float z) {
+        double[] point = {x, y, z};
+        for (int level = 0; level < levels.length; level++) {
+            Tree current = levels[level];
+            int index = current == null ? -1 : current.find(0, current.pointCount, id, point);
+            if (index >= 0) {
+                current.removed.set(index);
+                current.removedCount++;
+                if (current.removedCount > current.size / 2) {
+                    Entries entries = new Entries(current.size - current.removedCount);
+                    current.collect(entries);
+                    Tree[] updated = levels.clone();
+                    updated[level] = entries.count == 0 ? null : new Tree(entries);
+                    levels = updated;
+                }
+                return;
+            }
+        }
+        for (int i = 0; i < pending.count; i++) {
+            if (pending.ids[i] == id) {
+                pending.removeAt(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes all the points from the tree.
+     */
+    void clear() {
+        levels = new Tree[0];
+        pending = new Entries(16);
+    }
+
+    /**
+     * Builds all the points the tree holds into a single tree, putting the recently added points into it and dropping
+     * the removed ones.
+     */
+    void rebuild() {
+        Tree[] current = levels;
+        Entries entries = new Entries(pending.count);
+        for (Tree tree : current) {
+            if (tree != null) {
+                tree.collect(entries);
+            }
+        }
+        entries.addAll(pending);
+        place(new Tree[0], 0, new Tree(entries));
+        pending = new Entries(16);
+    }
+
+    // puts a tree at the lowest level not below the given one that is empty and fits it, and publishes the levels
+    private void place(Tree[] updated, int level, Tree tree) {
+        while ((long) PENDING_LIMIT << level < tree.size) {
+            level++;
+        }
+        if (level >= updated.length) {
+            updated = Arrays.copyOf(updated, level + 1);
+        }
+        // the merged levels are all empty, so the level is either empty or holds a tree that fits a smaller level
+        if (updated[level] != null) {
+            Entries entries = new Entries(tree.size + updated[level].size);
+            tree.collect(entries);
+            updated[level].collect(entries);
+            updated[level] = null;
+            place(updated, level + 1, new Tree(entries));
+            return;
+        }
+        updated[level] = tree;
+        levels = updated;
+    }
+
+    /**
+     * Finds the points nearest to a given point. The points at the same distance are ordered by their IDs.
+     * @param x the <i>X</i> coordinate of the given point
+     * @param y the <i>Y</i> coordinate of the given point
+     * @param z the <i>Z</i> coordinate of the given point
+     * @param count the greatest number of the points to be found, positive
+     * @return an array of the IDs of the found points in the ascending order of their distances to the given point
+     */
+    int[] nearest(double x, double y, double z, int count) {
+        Tree[] current = levels;
+        Entries added = pending;
+        int size = added.count;
+        for (Tree tree : current) {
+            if (tree != null) {
+                size += tree.size - tree.removedCount;
+            }
+        }
+        Search search = new Search(new double[] {x, y, z}, Math.min(count, size));
+        // the larger trees first, so that the nearer points found in them let the search skip more of the smaller ones
+        for (int level = current.length - 1; level >= 0; level--) {
+            if (current[level] != null) {
+                current[level].search(search, 0, current[level].pointCount, new double[3], 0);
+            }
+        }
+        for (int i = 0; i < added.count; i++) {
+            search.offer(distance(search.point, added.coordinates, i), added.ids[i]);
+        }
+        return search.result();
+    }
+
+    // returns the squared distance between a point and a point in the coordinate arrays
+    private static double distance(double[] point, double[][] coordinates, int index) {
+        double dx = coordinates[0][index] - point[0];
+        double dy = coordinates[1][index] - point[1];
+        double dz = coordinates[2][index] - point[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // the balanced tree of the distinct points along with the IDs at them
+    private static final class Tree {
+        private final double[][] coordinates; // the X, Y and Z coordinates of the distinct points, in the tree order
+        private final byte[] axes; // the axes the points split their parts by, in the tree order
+        private final int[] starts; // the first places of the IDs of the points in the ID array
+        private final int[] ends; // the places following the last IDs of the points in the ID array
+        private final int[] ids; // the IDs at every point in the ascending order, point after point
+        private final BitSet removed; // the places of the removed IDs
+        private final int pointCount;
+        private final int size; // the number of the IDs, including the removed ones
+        private int removedCount;
+
+        // builds the tree from the given entries, reordering them
+        private Tree(Entries entries) {
+            size = entries.count;
+            ids = new int[size];
+            removed = new BitSet(size);
+            // the entries are sorted by the points and then the IDs, so the same points form runs of sorted IDs
+            int[] order = new int[size];
+            Arrays.setAll(order, i -> i);
+            entries.sort(order, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || entries.compare(order[i - 1], order[i], false) != 0) {
+                    distinct++;
+                }
+            }
+            coordinates = new double[][] {new double[distinct], new double[distinct], new double[distinct]};
+            axes = new byte[distinct];
+            starts = new int[distinct];
+            ends = new int[distinct];
+            int point = -1;
+            for (int i = 0; i < size; i++) {
+                int entry = order[i];
+                if (i == 0 || entries.compare(order[i - 1], entry, false) != 0) {
+                    point++;
+                    for (int axis = 0; axis < 3; axis++) {
+                        coordinates[axis][point] = entries.coordinates[axis][entry];
+                    }
+                    starts[point] = i;
+                }
+                ids[i] = entries.ids[entry];
+                ends[point] = i + 1;
+            }
+            pointCount = distinct;
+            build(0, pointCount);
+        }
+
+        /* looks for nearer points in a part of the tree. the offsets are the distances from the searched point to the
+        box of the part by every axis (zero where the point is within the box), and the bound is the squared distance
+        to the box, the sum of their squares */
+        private void search(Search search, int from, int to, double[] offsets, double bound) {
+            if (from >= to || search.capacity == 0) {
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            int axis = axes[middle];
+            double distance = distance(search.point, coordinates, middle);
+            // the IDs are sorted, so once an ID doesn't fit, neither do the following ones
+            for (int i = starts[middle]; i < ends[middle] && search.accepts(distance, ids[i]); i++) {
+                if (!removed.get(i)) {
+                    search.offer(distance, ids[i]);
+                }
+            }
+            double difference = search.point[axis] - coordinates[axis][middle];
+            // the near side first, so that the far side can be skipped more often
+            if (difference < 0) {
+                search(search, from, middle, offsets, bound);
+            } else {
+                search(search, middle + 1, to, offsets, bound);
+            }
+            // the box of the far side is only as far by the axis as the split
+            double offset = offsets[axis];
+            double farBound = bound - offset * offset + difference * difference;
+            if (search.reaches(farBound)) {
+                offsets[axis] = difference;
+                if (difference < 0) {
+                    search(search, middle + 1, to, offsets, farBound);
+                } else {
+                    search(search, from, middle, offsets, farBound);
+                }
+                offsets[axis] = offset;
+            }
+        }
+
+        // adds the points of the tree with the IDs at them to the entries, leaving out the removed IDs
+        private void collect(Entries entries) {
+            for (int point = 0; point < pointCount; point++) {
+                for (int i = starts[point]; i < ends[point]; i++) {
+                    if (!removed.get(i)) {
+                        entries.add(ids[i], coordinates[0][point], coordinates[1][point], coordinates[2][point]);
+                    }
+                }
+            }
+        }
+
+        // returns the place of an ID at a point in a part of the tree, or a negative value if it isn't there
+        private int find(int from, int to, int id, double[] point) {
+            if (from >= to) {
+                return -1;
+            }
+            int middle = (from + to) >>> 1;
+            int axis = axes[middle];
+            if (coordinates[0][middle] == point[0] && coordinates[1][middle] == point[1]
+                    && coordinates[2][middle] == point[2]) {
+                int place = Arrays.binarySearch(ids, starts[middle], ends[middle], id);
+                if (place >= 0 && !removed.get(place)) {
+                    return place;
+                }
+            }
+            double value = point[axis];
+            double split = coordinates[axis][middle];
+            // the points equal to the split by the axis may be on either side
+            int found = value <= split ? find(from, middle, id, point) : -1;
+            if (found < 0 && value >= split) {
+                found = find(middle + 1, to, id, point);
+            }
+            return found;
+        }
+
+        // orders a part of the points as a tree
+        private void build(int from, int to) {
+            while (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                int axis = widestAxis(from, to);
+                select(from, to, middle, coordinates[axis]);
+                axes[middle] = (byte) axis;
+                build(from, middle);
+                // the greater half is built in the loop, so that the recursion only goes as deep as the tree
+                from = middle + 1;
+            }
+        }
+
+        // returns the axis the points of a part are spread along the most
+        private int widestAxis(int from, int to) {
+            int widest = 0;
+            double widestSpread = -1;
+            for (int axis = 0; axis < 3; axis++) {
+                double[] values = coordinates[axis];
+                double min = values[from];
+                double max = values[from];
+                for (int i = from + 1; i < to; i++) {
+                    min = Math.min(min, values[i]);
+                    max = Math.max(max, values[i]);
+                }
+                if (max - min > widestSpread) {
+                    widest = axis;
+                    widestSpread = max - min;
+                }
+            }
+            return widest;
+        }
+
+        /* puts the point that would be at the given index if the part were sorted by the values, with the points not
+        greater than it before it and the points not less than it after it */
+        private void select(int from, int to, int index, double[] values) {
+            while (to - from > 1) {
+                double pivot = median(values[from], values[(from + to) >>> 1], values[to - 1]);
+                // the part is split into the points less than, equal to and greater than the pivot
+                int less = from;
+                int greater = to;
+                int i = from;
+                while (i < greater) {
+                    if (values[i] < pivot) {
+                        swap(less++, i++);
+                    } else if (values[i] > pivot) {
+                        swap(i, --greater);
+                    } else {
+                        i++;
+                    }
+                }
+                if (index < less) {
+                    to = less;
+                } else if (index >= greater) {
+                    from = greater;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void swap(int i, int j) {
+            for (double[] values : coordinates) {
+                double value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+            int start = starts[i];
+            starts[i] = starts[j];
+            starts[j] = start;
+            int end = ends[i];
+            ends[i] = ends[j];
+            ends[j] = end;
+        }
+    }
+
+    // points with the IDs at them, one ID per point, stored in separate arrays
+    private static final class Entries {
+        private int[] ids;
+        private final double[][] coordinates; // the X, Y and Z coordinates
+        private int count;
+
+        private Entries(int capacity) {
+            ids = new int[capacity];
+            coordinates = new double[][] {new double[capacity], new double[capacity], new double[capacity]};
+        }
+
+        private void add(int id, double x, double y, double z) {
+            if (count == ids.length) {
+                int capacity = Math.max(16, count * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                for (int axis = 0; axis < 3; axis++) {
+                    coordinates[axis] = Arrays.copyOf(coordinates[axis], capacity);
+                }
+            }
+            ids[count] = id;
+            coordinates[0][count] = x;
+            coordinates[1][count] = y;
+            coordinates[2][count] = z;
+            count++;
+        }
+
+        private void addAll(Entries entries) {
+            for (int i = 0; i < entries.count; i++) {
+                add(entries.ids[i], entries.coordinates[0][i], entries.coordinates[1][i], entries.coordinates[2][i]);
+            }
+        }
+
+        // replaces an entry with the last one
+        private void removeAt(int index) {
+            count--;
+            ids[index] = ids[count];
+            for (int axis = 0; axis < 3; axis++) {
+                coordinates[axis][index] = coordinates[axis][count];
+            }
+        }
+
+        // compares two entries by the points and then, if asked to, by the IDs
+        private int compare(int i, int j, boolean byId) {
+            for (double[] values : coordinates) {
+                int result = Double.compare(values[i], values[j]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return byId ? Integer.compare(ids[i], ids[j]) : 0;
+        }
+
+        // sorts a part of an array of the entry indexes by the entries they point to
+        private void sort(int[] order, int from, int to) {
+            while (to - from > 16) {
+                int pivot = order[(from + to) >>> 1];
+                // the part is split into the entries less than, equal to and greater than the pivot
+                int less = from;
+                int greater = to;
+                int i = from;
+                while (i < greater) {
+                    int result = compare(order[i], pivot, true);
+                    if (result < 0) {
+                        swap(order, less++, i++);
+                    } else if (result > 0) {
+                        swap(order, i, --greater);
+                    } else {
+                        i++;
+                    }
+                }
+                // the smaller part is sorted recursively, so that the recursion doesn't go deep
+                if (less - from < to - greater) {
+                    sort(order, from, less);
+                    from = greater;
+                } else {
+                    sort(order, greater, to);
+                    to = less;
+                }
+            }
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compare(order[j - 1], order[j], true) > 0; j--) {
+                    swap(order, j - 1, j);
+                }
+            }
+        }
+
+        private static void swap(int[] array, int i, int j) {
+            int value = array[i];
+            array[i] = array[j];
+            array[j] = value;
+        }
+    }
+
+    // the state of a search: the nearest points found so far, kept in a max-heap by the distance and then the ID
+    private static final class Search {
+        private final double[] point;
+        private final int capacity;
+        private final double[] distances; // the squared distances
+        private final int[] ids;
+        private int size;
+
+        private Search(double[] point, int capacity) {
+            this.point = point;
+            this.capacity = Math.max(capacity, 0);
+            distances = new double[this.capacity];
+            ids = new int[this.capacity];
+        }
+
+        // whether a point at the given squared distance from the searched one may still be taken
+        private boolean reaches(double bound) {
+            return size < capacity || bound <= distances[0];
+        }
+
+        // whether a point would be taken if offered
+        private boolean accepts(double distance, int id) {
+            return size < capacity || capacity > 0 && isBefore(distance, id, 0);
+        }
+
+        // takes a point if it's nearer than the farthest one found so far, or if fewer points have been found
+        private void offer(double distance, int id) {
+            if (size < capacity) {
+                int i = size++;
+                // sifts the point up from the last place
+                while (i > 0 && isAfter(distance, id, (i - 1) / 2)) {
+                    distances[i] = distances[(i - 1) / 2];
+                    ids[i] = ids[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                distances[i] = distance;
+                ids[i] = id;
+            } else if (capacity > 0 && isBefore(distance, id, 0)) {
+                siftDown(distance, id);
+            }
+        }
+
+        // returns the IDs in the ascending order, emptying the heap
+        private int[] result() {
+            int[] result = new int[size];
+            while (size > 0) {
+                result[size - 1] = ids[0];
+                size--;
+                if (size > 0) {
+                    siftDown(distances[size], ids[size]);
+                }
+            }
+            return result;
+        }
+
+        // puts a point at the top of the heap and moves it down to its place
+        private void siftDown(double distance, int id) {
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && !isAfter(distances[child], ids[child], child + 1)) {
+                    child++;
+                }
+                if (!isBefore(distance, id, child)) {
+                    break;
+                }
+                distances[i] = distances[child];
+                ids[i] = ids[child];
+                i = child;
+            }
+            distances[i] = distance;
+            ids[i] = id;
+        }
+
+        // whether a point goes after the point at an index of the heap
+        private boolean isAfter(double distance, int id, int index) {
+            return distance > distances[index] || distance == distances[index] && id > ids[index];
+        }
+
+        // whether a point goes before the point at an index of the heap
+        private boolean isBefore(double distance, int id, int index) {
+            return distance < distances[index] || distance == distances[index] && id < ids[index];
+        }
+    }
+
+    private static double median(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
@@ -1,10 +1,8 @@
 package ru.bitte.lab5;
 
-import org.xml.sax.SAXException;
 import ru.bitte.lab5.exceptions.ElementParsingInFileException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 
@@ -15,20 +13,26 @@ public class Main {
     /**
      * The starting point of the program.
      * This method creates a new terminal with elements read from a file and starts it. The name of the file is supplied
-     * from an environment variable called "COLLECTION".
+     * from an environment variable called "COLLECTION", and the rest of the settings are read from the other
+     * environment variables (see {@link Settings}).
      * @param args command line arguments
      */
     public static void main(String[] args) {
         String envVarName = "COLLECTION";
         if (System.getenv().containsKey(envVarName) && !System.getenv().get(envVarName).equals("")) {
             String fileName = System.getenv().get(envVarName);
+            Settings settings;
             try {
-                Terminal terminal = new Terminal(new File(fileName));
+                settings = new Settings(System.getenv());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Incorrect settings: " + e.getMessage());
+                return;
+            }
+            try {
+                Terminal terminal = new Terminal(new File(fileName), settings);
                 terminal.start();
-            } catch (IOException | SAXException e) {
+            } catch (IOException | XMLStreamException e) {
                 System.out.println("Error reading from a file: " + e.getMessage());
-            } catch (ParserConfigurationException | TransformerConfigurationException e) {
-                System.out.println("Configuration error: " + e.getMessage());
             } catch (ElementParsingInFileException e) {
                 System.out.println("Problem parsing objects from the file: " + e.getMessage());
             }
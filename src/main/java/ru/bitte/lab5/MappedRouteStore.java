@@ -0,0 +1,386 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementParsingInFileException;
+import ru.bitte.lab5.route.Route;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A {@link RouteStore} that reads the elements from a binary snapshot (see {@link BinarySnapshot}) mapped into memory,
+ * creating a {@link Route} object only when the element is requested. Opening the store only verifies the snapshot
+ * and builds a table of the records by the IDs, so a collection of any size is ready to be used right away, and the
+ * elements that are never requested never take up the heap.
+ * <br>The snapshot file itself is never modified. The modifications are kept on top of it instead: the elements put
+ * into the store are held as objects in an {@link IdMap}, and the records of the removed or replaced elements are
+ * marked as hidden in a bit set split into chunks. The snapshots of the store share both with the store, just like in
+ * {@link HeapRouteStore}, so a modification made after a snapshot only copies the few nodes of the map and the one
+ * chunk of the bit set it touches.
+ * <br>The recently requested elements of the snapshot are cached, so that the same element requested repeatedly is
+ * only created once. The scans over the IDs, distances, names, coordinates and locations of the elements read the
+ * mapped records directly without creating the objects.
+ * @implNote The snapshot file must not be written to while the store is in use. Replacing it with a new file moved in
+ * its place, as a full save does (see {@link CollectionSaver}), leaves the mapped contents as they were
+ */
+public class MappedRouteStore implements RouteStore {
+    private static final int CACHE_SIZE = 1 << 16; // the maximum number of the cached elements
+    private static final int EMPTY = -1; // marks an empty slot of the table
+    private final MappedSnapshot base;
+    private final int[] slots; // open-addressing table with linear probing, holds EMPTY or the rows of the ids
+    private final Map<Integer, Route> cache; // the recently created elements of the snapshot by their rows
+    private volatile Overlay overlay;
+
+    /**
+     * Constructs a {@code MappedRouteStore} with the elements of a snapshot file. If the snapshot has a delta file, the
+     * changes it holds are applied to the store.
+     * @param file the {@code File} object representing a snapshot file
+     * @throws IOException if an input/output exception occurred, or the snapshot file is damaged
+     * @throws ElementParsingInFileException if an element couldn't be restored from the delta file
+     */
+    public MappedRouteStore(File file) throws IOException, ElementParsingInFileException {
+        this(file, MappedSnapshot.open(file));
+    }
+
+    /**
+     * Constructs a {@code MappedRouteStore} with the elements of a snapshot file that has already been mapped and
+     * verified. If the snapshot has a delta file, the changes it holds are applied to the store.
+     * @param file the {@code File} object representing the snapshot file
+     * @param base the snapshot file mapped into memory
+     * @throws IOException if an input/output exception occurred
+     * @throws ElementParsingInFileException if an element couldn't be restored from the delta file
+     */
+    MappedRouteStore(File file, MappedSnapshot base) throws IOException, ElementParsingInFileException {
+        this.base = base;
+        int size = base.size();
+        slots = new int[Integer.highestOneBit(Math.max(size + size / 2, 1)) << 1];
+        Arrays.fill(slots, EMPTY);
+        HiddenRows hidden = new HiddenRows(size, false);
+        int hiddenCount = 0;
+        int maxId = 0;
+        int mask = slots.length - 1;
+        for (int row = 0; row < size; row++) {
+            int id = base.id(row);
+            int slot = hash(id) & mask;
+            while (slots[slot] != EMPTY && base.id(slots[slot]) != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] != EMPTY) {
+                // the same id was written twice, the later record replaces the earlier one
+                hidden.set(slots[slot]);
+                hiddenCount++;
+            }
+            slots[slot] = row;
+            maxId = Math.max(maxId, id);
+        }
+        Route.reserveIds(maxId); // the new elements mustn't take the ids of the records not created yet
+        overlay = new Overlay(new IdMap<>(), hidden, size - hiddenCount);
+        cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Route> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+        File delta = BinarySnapshot.deltaOf(file);
+        if (BinarySnapshot.hasDelta(file)) {
+            ChangeRecords.read(delta, new MutationListener() {
+                @Override
+                public void elementPut(Route element) {
+                    put(element);
+                }
+
+                @Override
+                public void elementRemoved(int id) {
+                    remove(id);
+                }
+
+                @Override
+                public void collectionCleared() {
+                    clear();
+                }
+            });
+        }
+    }
+
+    @Override
+    public Route get(int id) {
+        Overlay current = overlay;
+        Route element = current.elements.get(id);
+        if (element != null) {
+            return element;
+        }
+        int row = find(id);
+        return row < 0 || current.hidden.get(row) ? null : cached(row);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        Overlay current = overlay;
+        if (current.elements.containsKey(id)) {
+            return true;
+        }
+        int row = find(id);
+        return row >= 0 && !current.hidden.get(row);
+    }
+
+    @Override
+    public Route put(Route element) {
+        Overlay current = overlay;
+        Route oldElement = current.elements.put(element.getId(), element);
+        if (oldElement == null) {
+            int row = find(element.getId());
+            if (row >= 0 && !current.hidden.get(row)) {
+                oldElement = cached(row);
+                current.hidden.set(row);
+            } else {
+                current.size++;
+            }
+        }
+        return oldElement;
+    }
+
+    @Override
+    public Route remove(int id) {
+        if (!contains(id)) {
+            return null;
+        }
+        Overlay current = overlay;
+        Route oldElement = current.elements.remove(id);
+        if (oldElement == null) {
+            int row = find(id);
+            oldElement = cached(row);
+            current.hidden.set(row);
+        }
+        current.size--;
+        return oldElement;
+    }
+
+    @Override
+    public void clear() {
+        // the old overlay stays with the snapshots, if there are any
+        overlay = new Overlay(new IdMap<>(), new HiddenRows(base.size(), true), 0);
+    }
+
+    @Override
+    public int size() {
+        return overlay.size;
+    }
+
+    @Override
+    public Collection<Route> snapshot() {
+        Overlay frozen = overlay.freeze();
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Route> iterator() {
+                Iterator<Route> elements = frozen.elements.values().iterator();
+                return new Iterator<>() {
+                    private int row = frozen.hidden.nextClearBit(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < base.size() || elements.hasNext();
+                    }
+
+                    @Override
+                    public Route next() {
+                        if (row >= base.size()) {
+                            return elements.next();
+                        }
+                        // the whole snapshot is usually read once, so its elements aren't cached
+                        Route element = materialize(row);
+                        row = frozen.hidden.nextClearBit(row + 1);
+                        return element;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return frozen.size;
+            }
+        };
+    }
+
+    @Override
+    public List<Route> scanByName(String substring) {
+        Overlay current = overlay;
+        // check every distinct name of the snapshot once, and then only compare the codes in the records
+        String[] strings = base.strings();
+        boolean[] matches = new boolean[strings.length];
+        for (int code = 0; code < strings.length; code++) {
+            matches[code] = strings[code].contains(substring);
+        }
+        List<Route> found = new ArrayList<>();
+        for (int row = current.hidden.nextClearBit(0); row < base.size(); row = current.hidden.nextClearBit(row + 1)) {
+            if (matches[base.nameCode(row)]) {
+                found.add(cached(row));
+            }
+        }
+        current.elements.forEachValue(element -> {
+            if (element.getName().contains(substring)) {
+                found.add(element);
+            }
+        });
+        return found;
+    }
+
+    @Override
+    public void forEachDistance(DistanceConsumer consumer) {
+        Overlay current = overlay;
+        for (int row = current.hidden.nextClearBit(0); row < base.size(); row = current.hidden.nextClearBit(row + 1)) {
+            consumer.accept(base.id(row), base.distance(row));
+        }
+        current.elements.forEachValue(element -> consumer.accept(element.getId(), element.getDistance()));
+    }
+
+    @Override
+    public void forEachName(NameConsumer consumer) {
+        Overlay current = overlay;
+        for (int row = current.hidden.nextClearBit(0); row < base.size(); row = current.hidden.nextClearBit(row + 1)) {
+            consumer.accept(base.id(row), base.name(row));
+        }
+        current.elements.forEachValue(element -> consumer.accept(element.getId(), element.getName()));
+    }
+
+    @Override
+    public void forEachCoordinates(CoordinatesConsumer consumer) {
+        Overlay current = overlay;
+        for (int row = current.hidden.nextClearBit(0); row < base.size(); row = current.hidden.nextClearBit(row + 1)) {
+            consumer.accept(base.id(row), base.coordinatesX(row), base.coordinatesY(row));
+        }
+        current.elements.forEachValue(element -> consumer.accept(element.getId(),
+                element.getCoordinates().getX(), element.getCoordinates().getY()));
+    }
+
+    @Override
+    public void forEachEndpoints(EndpointsConsumer consumer) {
+        Overlay current = overlay;
+        for (int row = current.hidden.nextClearBit(0); row < base.size(); row = current.hidden.nextClearBit(row + 1)) {
+            base.endpoints(row, consumer);
+        }
+        current.elements.forEachValue(element -> consumer.accept(element.getId(), element.getFrom().getX(),
+                element.getFrom().getY(), element.getFrom().getZ(), element.getTo().getX(), element.getTo().getY(),
+                element.getTo().getZ()));
+    }
+
+    // returns the row of an id in the snapshot or a negative value if there's no such id
+    private int find(int id) {
+        int mask = slots.length - 1;
+        for (int slot = hash(id) & mask; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (base.id(slots[slot]) == id) {
+                return slots[slot];
+            }
+        }
+        return EMPTY;
+    }
+
+    // returns the element of a row, creating it only if it isn't cached
+    private Route cached(int row) {
+        Route element = cache.get(row);
+        if (element == null) {
+            element = materialize(row);
+            cache.put(row, element);
+        }
+        return element;
+    }
+
+    // creates a route object from a row
+    private Route materialize(int row) {
+        try {
+            return base.route(row);
+        } catch (ElementParsingInFileException e) {
+            // the checksum has matched, so the record was written this way
+            throw new IllegalStateException("Invalid record in the snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // the modifications made on top of the snapshot
+    private static final class Overlay {
+        private final IdMap<Route> elements; // the elements put into the store
+        private final HiddenRows hidden; // the rows of the snapshot that were removed or replaced
+        private int size; // the number of elements in the store
+
+        private Overlay(IdMap<Route> elements, HiddenRows hidden, int size) {
+            this.elements = elements;
+            this.hidden = hidden;
+            this.size = size;
+        }
+
+        // returns an immutable copy sharing the elements and the chunks of the hidden rows
+        private Overlay freeze() {
+            return new Overlay(elements.freeze(), hidden.freeze(), size);
+        }
+    }
+
+    /* the hidden rows as a bit set split into chunks. every chunk remembers the version of the set it was created in,
+    and the first modification of a chunk after a freeze copies it, so the frozen sets are never affected */
+    private static final class HiddenRows {
+        private static final int CHUNK_BITS = 16; // the number of the rows in a chunk is 1 << CHUNK_BITS
+        private static final int WORDS_PER_CHUNK = (1 << CHUNK_BITS) / Long.SIZE;
+        private final long[][] chunks;
+        private final Object[] versions; // the versions of the chunks, or null if the set is frozen
+        private volatile Object version; // the chunks created for this version are modified in place
+
+        private HiddenRows(int rows, boolean hidden) {
+            int count = (rows >>> CHUNK_BITS) + 1;
+            chunks = new long[count][WORDS_PER_CHUNK];
+            versions = new Object[count];
+            version = new Object();
+            Arrays.fill(versions, version);
+            if (hidden) {
+                for (int row = 0; row < rows; row += Long.SIZE) {
+                    // the bits past the last row are set too, they are never read
+                    chunks[row >>> CHUNK_BITS][(row >>> 6) % WORDS_PER_CHUNK] = -1L;
+                }
+            }
+        }
+
+        private HiddenRows(long[][] chunks) {
+            this.chunks = chunks;
+            versions = null;
+        }
+
+        private boolean get(int row) {
+            return (chunks[row >>> CHUNK_BITS][(row >>> 6) % WORDS_PER_CHUNK] & (1L << row)) != 0;
+        }
+
+        // marks a row as hidden
+        private void set(int row) {
+            int index = row >>> CHUNK_BITS;
+            if (versions[index] != version) {
+                chunks[index] = chunks[index].clone();
+                versions[index] = version;
+            }
+            chunks[index][(row >>> 6) % WORDS_PER_CHUNK] |= 1L << row;
+        }
+
+        // returns the first row starting from the given one that isn't hidden
+        private int nextClearBit(int row) {
+            int word = row >>> 6;
+            int words = chunks.length * WORDS_PER_CHUNK;
+            if (word >= words) {
+                return row;
+            }
+            long bits = ~chunks[word / WORDS_PER_CHUNK][word % WORDS_PER_CHUNK] & (-1L << row);
+            while (bits == 0) {
+                if (++word == words) {
+                    return words * Long.SIZE;
+                }
+                bits = ~chunks[word / WORDS_PER_CHUNK][word % WORDS_PER_CHUNK];
+            }
+            return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+        }
+
+        // returns an immutable copy sharing the chunks
+        private HiddenRows freeze() {
+            HiddenRows frozen = new HiddenRows(chunks.clone());
+            version = new Object(); // a new object, so that no chunk created before could have the same version
+            return frozen;
+        }
+    }
+}
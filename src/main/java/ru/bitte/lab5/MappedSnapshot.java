@@ -0,0 +1,314 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementConstructionException;
+import ru.bitte.lab5.exceptions.ElementParsingInFileException;
+import ru.bitte.lab5.route.Coordinates;
+import ru.bitte.lab5.route.Distances;
+import ru.bitte.lab5.route.Location;
+import ru.bitte.lab5.route.Route;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * An object of this class is a snapshot file written by {@link BinarySnapshot}, mapped into memory with its header and
+ * checksums verified. The records can be read in any order by their row numbers, either field by field or as whole
+ * {@link Route} objects, and reading a field costs a single access to the mapped memory. The mapping stays valid after
+ * the file has been opened, so the object can be used for as long as needed without holding the file open.
+ * @implNote The reading methods may be called concurrently, as they never change the state of the mapped buffers
+ */
+final class MappedSnapshot {
+    private static final int MAX_WINDOW = 1 << 30; // the maximum size of a single mapped part of a file
+    // the positions of the fields in a record
+    private static final int ID = 0;
+    private static final int DISTANCE = 4;
+    private static final int CREATION_TIME = 8;
+    private static final int COORDINATES = 16;
+    private static final int FROM = 32;
+    private static final int TO = 52;
+    private static final int NAME = 72;
+    private static final int FROM_NAME = 76;
+    private static final int TO_NAME = 80;
+    private static final int RECORDS_PER_WINDOW = MAX_WINDOW / BinarySnapshot.RECORD_SIZE;
+    private static final int BATCH = 1024; // the number of records the distances are verified for at once
+    private final int size;
+    private final String[] strings;
+    private final ByteBuffer[] windows; // the records mapped in parts of RECORDS_PER_WINDOW records each
+
+    private MappedSnapshot(int size, String[] strings, ByteBuffer[] windows) {
+        this.size = size;
+        this.strings = strings;
+        this.windows = windows;
+    }
+
+    /**
+     * Maps a snapshot file into memory, verifying its header and checksums.
+     * @param file the {@code File} object representing a snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if an input/output exception occurred, or the file isn't a valid snapshot or is damaged, or
+     * the distance stored in a record doesn't match its points
+     */
+    static MappedSnapshot open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < BinarySnapshot.HEADER_SIZE) {
+                throw new IOException("The file is too short to be a snapshot");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BinarySnapshot.HEADER_SIZE);
+            byte[] magic = new byte[BinarySnapshot.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, BinarySnapshot.MAGIC)) {
+                throw new IOException("The file is not a collection snapshot");
+            }
+            int version = header.getInt();
+            int recordSize = header.getInt();
+            int count = header.getInt();
+            int stringCount = header.getInt();
+            long recordsOffset = header.getLong();
+            long stringsOffset = header.getLong();
+            long end = header.getLong();
+            int checksum = header.getInt();
+            int expectedHeaderChecksum = BinarySnapshot.headerChecksum(header);
+            if (header.getInt() != expectedHeaderChecksum) {
+                throw new IOException("The snapshot header is damaged");
+            }
+            if (version != BinarySnapshot.VERSION || recordSize != BinarySnapshot.RECORD_SIZE) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            if (count < 0 || stringCount < 0 || recordsOffset != BinarySnapshot.HEADER_SIZE
+                    || stringsOffset != recordsOffset + (long) count * recordSize || end < stringsOffset
+                    || end > channel.size()) {
+                throw new IOException("The snapshot header is inconsistent with the file");
+            }
+            if (checksum(channel, recordsOffset, end) != checksum) {
+                throw new IOException("The snapshot is damaged, the checksum doesn't match");
+            }
+            // the names are shared by the records, so they're all decoded up front
+            String[] strings = new String[stringCount];
+            StringInput input = new StringInput(channel, stringsOffset, end);
+            for (int i = 0; i < stringCount; i++) {
+                int length = input.ensure(Integer.BYTES).getInt();
+                byte[] bytes = new byte[length];
+                input.ensure(length).get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            ByteBuffer[] windows = new ByteBuffer[(count + RECORDS_PER_WINDOW - 1) / RECORDS_PER_WINDOW];
+            for (int i = 0; i < windows.length; i++) {
+                long first = (long) i * RECORDS_PER_WINDOW;
+                long records = Math.min(RECORDS_PER_WINDOW, count - first);
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + first * recordSize,
+                        records * recordSize);
+            }
+            MappedSnapshot snapshot = new MappedSnapshot(count, strings, windows);
+            snapshot.verifyDistances();
+            return snapshot;
+        }
+    }
+
+    /**
+     * Returns the number of records in the snapshot.
+     * @return the number of records
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the ID of the element in a record.
+     * @param row the number of the record
+     * @return the ID of the element
+     */
+    int id(int row) {
+        return window(row).getInt(position(row) + ID);
+    }
+
+    /**
+     * Returns the distance of the element in a record.
+     * @param row the number of the record
+     * @return the distance of the element
+     */
+    int distance(int row) {
+        return window(row).getInt(position(row) + DISTANCE);
+    }
+
+    /**
+     * Returns the <i>X</i> coordinate of the current coordinates of the element in a record.
+     * @param row the number of the record
+     * @return the <i>X</i> coordinate of the element
+     */
+    long coordinatesX(int row) {
+        return window(row).getLong(position(row) + COORDINATES);
+    }
+
+    /**
+     * Returns the <i>Y</i> coordinate of the current coordinates of the element in a record.
+     * @param row the number of the record
+     * @return the <i>Y</i> coordinate of the element
+     */
+    long coordinatesY(int row) {
+        return window(row).getLong(position(row) + COORDINATES + 8);
+    }
+
+    /**
+     * Passes the ID and the points of the starting and the destination locations of the element in a record to the
+     * consumer.
+     * @param row the number of the record
+     * @param consumer the consumer that accepts the ID and the points
+     */
+    void endpoints(int row, RouteStore.EndpointsConsumer consumer) {
+        ByteBuffer window = window(row);
+        int position = position(row);
+        int from = position + FROM;
+        int to = position + TO;
+        consumer.accept(window.getInt(position + ID), window.getLong(from), window.getLong(from + 8),
+                window.getFloat(from + 16), window.getLong(to), window.getLong(to + 8), window.getFloat(to + 16));
+    }
+
+    /**
+     * Returns the name of the element in a record.
+     * @param row the number of the record
+     * @return the name of the element
+     */
+    String name(int row) {
+        return strings[window(row).getInt(position(row) + NAME)];
+    }
+
+    /**
+     * Returns the number of the name of the element in a record in the string table.
+     * @param row the number of the record
+     * @return the index of the name in {@link #strings()}
+     */
+    int nameCode(int row) {
+        return window(row).getInt(position(row) + NAME);
+    }
+
+    /**
+     * Returns the string table of the snapshot.
+     * @return the distinct names by their numbers, which must not be modified
+     */
+    String[] strings() {
+        return strings;
+    }
+
+    /**
+     * Restores the whole element in a record. The ID of the element isn't reserved (see {@link Route#reserveIds(int)}),
+     * so the caller must have reserved the IDs of the snapshot before, and the distance is the stored one, which has
+     * been verified when the snapshot was opened.
+     * @param row the number of the record
+     * @return the restored {@code Route} object
+     * @throws ElementParsingInFileException if the element couldn't be restored
+     */
+    Route route(int row) throws ElementParsingInFileException {
+        ByteBuffer window = window(row);
+        int position = position(row);
+        try {
+            Coordinates coordinates = new Coordinates(window.getLong(position + COORDINATES),
+                    window.getLong(position + COORDINATES + 8));
+            Location from = location(window, position + FROM, window.getInt(position + FROM_NAME));
+            Location to = location(window, position + TO, window.getInt(position + TO_NAME));
+            return Route.materialize(window.getInt(position + ID), strings[window.getInt(position + NAME)],
+                    coordinates, window.getLong(position + CREATION_TIME), from, to,
+                    window.getInt(position + DISTANCE));
+        } catch (ElementConstructionException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ElementParsingInFileException("Route #" + (row + 1) + ": " + e.getMessage());
+        }
+    }
+
+    /* checks the stored distances against the points of the records, so that the distances can be used without
+    creating the elements (the distance of an element is always calculated from its points when it's created) */
+    private void verifyDistances() throws IOException {
+        long[] fromX = new long[BATCH];
+        long[] fromY = new long[BATCH];
+        float[] fromZ = new float[BATCH];
+        long[] toX = new long[BATCH];
+        long[] toY = new long[BATCH];
+        float[] toZ = new float[BATCH];
+        int[] distances = new int[BATCH];
+        for (int first = 0; first < size; first += BATCH) {
+            int count = Math.min(BATCH, size - first);
+            for (int i = 0; i < count; i++) {
+                ByteBuffer window = window(first + i);
+                int position = position(first + i);
+                fromX[i] = window.getLong(position + FROM);
+                fromY[i] = window.getLong(position + FROM + 8);
+                fromZ[i] = window.getFloat(position + FROM + 16);
+                toX[i] = window.getLong(position + TO);
+                toY[i] = window.getLong(position + TO + 8);
+                toZ[i] = window.getFloat(position + TO + 16);
+            }
+            Distances.distances(fromX, fromY, fromZ, toX, toY, toZ, distances, count);
+            for (int i = 0; i < count; i++) {
+                if (distances[i] <= 1 || distances[i] != distance(first + i)) {
+                    throw new IOException("Route #" + (first + i + 1) + ": the distance doesn't match the points");
+                }
+            }
+        }
+    }
+
+    private Location location(ByteBuffer window, int position, int name) {
+        return Location.of(window.getLong(position), window.getLong(position + 8), window.getFloat(position + 16),
+                strings[name]);
+    }
+
+    private ByteBuffer window(int row) {
+        return windows[row / RECORDS_PER_WINDOW];
+    }
+
+    private static int position(int row) {
+        return row % RECORDS_PER_WINDOW * BinarySnapshot.RECORD_SIZE;
+    }
+
+    /**
+     * Returns the CRC32C checksum of a part of a file, mapping it into memory part by part.
+     * @param channel the channel of the file
+     * @param from the position of the first byte of the part
+     * @param to the position following the last byte of the part
+     * @return the checksum of the part
+     * @throws IOException if an input/output exception occurred
+     */
+    static int checksum(FileChannel channel, long from, long to) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = from; position < to; position += MAX_WINDOW) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, to - position)));
+        }
+        return (int) crc.getValue();
+    }
+
+    // a sequential input from a part of a file, mapped in windows of at most MAX_WINDOW bytes
+    private static final class StringInput {
+        private final FileChannel channel;
+        private final long end;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private StringInput(FileChannel channel, long start, long end) throws IOException {
+            this.channel = channel;
+            this.end = end;
+            map(start);
+        }
+
+        // returns the current window, remapping it first if fewer than the given number of bytes are left in it
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = windowStart + window.position();
+                if (bytes < 0 || end - position < bytes) {
+                    throw new EOFException("Unexpected end of the snapshot");
+                }
+                map(position);
+            }
+            return window;
+        }
+
+        private void map(long position) throws IOException {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_WINDOW, end - position));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+/**
+ * An object implementing this interface is notified by {@link CollectionKeeper} about every modification of the
+ * collection. The methods are called while the keeper holds its write lock, in the same order as the modifications
+ * take effect, so they must return quickly and must not access the keeper themselves.
+ */
+public interface MutationListener {
+    /**
+     * Called when an element has been put into the collection, either as a new one or replacing an element with the
+     * same ID.
+     * @param element the element that has been put into the collection
+     */
+    void elementPut(Route element);
+
+    /**
+     * Called when an element has been removed from the collection.
+     * @param id the ID of the removed element
+     */
+    void elementRemoved(int id);
+
+    /**
+     * Called when all the elements have been removed from the collection.
+     */
+    void collectionCleared();
+}
@@ -0,0 +1,113 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An object of this class is an inverted trigram index over the names of {@link Route} objects, used by
+ * {@link CollectionKeeper} for substring search. Every three consecutive characters of a name form a trigram, and the
+ * index maps each trigram to the set of IDs of the elements whose names contain it. A name containing a substring
+ * necessarily contains all the trigrams of that substring, so intersecting their sets gives a small set of candidates
+ * that only need to be verified instead of checking every element in the collection.
+ * @implNote The index is safe to read while it's being modified, but the modifications themselves must not run
+ * concurrently with each other
+ */
+class NameIndex {
+    /**
+     * The minimum length of a substring the index can look up. Shorter substrings have no trigrams and require a full
+     * scan of the collection.
+     */
+    static final int MIN_QUERY_LENGTH = 3;
+    private final ConcurrentHashMap<Long, Set<Integer>> postings; // trigram -> IDs of the elements containing it
+
+    /**
+     * Constructs an empty {@code NameIndex}.
+     */
+    NameIndex() {
+        postings = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Puts an element's name into the index.
+     * @param element the element to be indexed
+     */
+    void add(Route element) {
+        add(element.getId(), element.getName());
+    }
+
+    /**
+     * Puts a name into the index.
+     * @param id the ID of the element with the name
+     * @param name the name to be indexed
+     */
+    void add(int id, String name) {
+        for (long trigram : trigrams(name)) {
+            postings.computeIfAbsent(trigram, t -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+    }
+
+    /**
+     * Removes an element's name from the index.
+     * @param element the element to be removed from the index
+     */
+    void remove(Route element) {
+        for (long trigram : trigrams(element.getName())) {
+            Set<Integer> ids = postings.get(trigram);
+            if (ids != null && ids.remove(element.getId()) && ids.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Removes all the names from the index.
+     */
+    void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Returns the IDs of the elements whose names may contain the given substring, i.e. contain all of its trigrams.
+     * The candidates still have to be checked against the actual names.
+     * @param substring the substring to be looked up, at least {@link #MIN_QUERY_LENGTH} characters long
+     * @return a {@link List} of the IDs of the candidate elements
+     */
+    List<Integer> candidates(String substring) {
+        if (substring.length() < MIN_QUERY_LENGTH) {
+            throw new IllegalArgumentException("The substring is too short to be looked up in the index");
+        }
+        // get the sets of all the trigrams, any missing one means that nothing matches
+        List<Set<Integer>> sets = new ArrayList<>();
+        for (long trigram : trigrams(substring)) {
+            Set<Integer> ids = postings.get(trigram);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            sets.add(ids);
+        }
+        // walk the smallest set and keep the IDs present in all the others
+        sets.sort(Comparator.comparingInt(Set::size));
+        List<Integer> result = new ArrayList<>();
+        for (Integer id : sets.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < sets.size() && inAll; i++) {
+                inAll = sets.get(i).contains(id);
+            }
+            if (inAll) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    // returns the distinct trigrams of a string, each packed into a long as three 16-bit characters
+    private static Set<Long> trigrams(String s) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + MIN_QUERY_LENGTH <= s.length(); i++) {
+            trigrams.add(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+        }
+        return trigrams;
+    }
+}
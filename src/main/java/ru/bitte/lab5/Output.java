@@ -0,0 +1,274 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+import ru.bitte.lab5.route.RouteFormatter;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Formatter;
+
+/**
+ * An object of this class is the destination the commands write their output to (see
+ * {@link ru.bitte.lab5.commands.Command#run(Output)}). The written text is collected in a large buffer that is reused
+ * for the whole life of the object, and is only passed on to the target when the buffer fills up or the output is
+ * flushed, so that outputting a lot of elements takes a few large writes instead of a synchronized and flushed call
+ * to the console per element.
+ * <br>The target is either any {@link Appendable}, such as {@link System#out} or a {@link StringBuilder} capturing
+ * the output, or a {@link WritableByteChannel}, such as a {@link java.nio.channels.FileChannel}, to which the text is
+ * written encoded with the given charset. Whatever is written stays in the buffer until the output is flushed, so the
+ * output must be flushed before anything else is written to the same target, and before waiting for the user's input.
+ * <br>Only the commands write through the output, on the thread reading the user's input. The reports of the work done
+ * in the background, i.e. the saves written by {@link CollectionSaver} and the checkpoints written by {@link Journal},
+ * are printed to {@code System.out} directly from their own threads on purpose: they come at any moment, even while
+ * the program is waiting for the input, so they would otherwise stay unseen until the next command, and the output
+ * isn't thread-safe anyway.
+ * <br>The elements are written with a {@link RouteFormatter}, so outputting them creates next to no objects.
+ * @implNote The object isn't thread-safe. The exceptions thrown by the target are rethrown as
+ * {@link UncheckedIOException}
+ */
+public final class Output implements Appendable, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16; // the number of characters collected before they're written
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private final char[] buffer;
+    private int length; // the number of the characters in the buffer
+    private final Target target;
+    private final Formatter formatter; // formats right into the buffer
+    private final RouteFormatter routeFormatter;
+    private final StringBuilder line; // the representation of an element, reused for every element
+
+    /**
+     * Constructs an {@code Output} writing to an {@link Appendable}. If the appendable is also {@link Flushable}, it's
+     * flushed every time the output is flushed.
+     * @param appendable the target of the output, e.g. {@code System.out}
+     */
+    public Output(Appendable appendable) {
+        this(new AppendableTarget(appendable));
+    }
+
+    /**
+     * Constructs an {@code Output} writing to a channel.
+     * @param channel the target of the output, e.g. a {@code FileChannel}
+     * @param charset the charset the text is encoded with
+     */
+    public Output(WritableByteChannel channel, Charset charset) {
+        this(new ChannelTarget(channel, charset));
+    }
+
+    private Output(Target target) {
+        this.target = target;
+        buffer = new char[BUFFER_SIZE];
+        formatter = new Formatter(this);
+        routeFormatter = new RouteFormatter();
+        line = new StringBuilder();
+    }
+
+    /**
+     * Writes a string.
+     * @param s the string to be written
+     */
+    public void print(String s) {
+        append(s);
+    }
+
+    /**
+     * Writes a string followed by a line separator.
+     * @param s the string to be written
+     */
+    public void println(String s) {
+        append(s);
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the string representation of an object followed by a line separator.
+     * @param object the object to be written
+     */
+    public void println(Object object) {
+        println(String.valueOf(object));
+    }
+
+    /**
+     * Writes the string representation of an element followed by a line separator, the same as
+     * {@code println(Object)} does, but without creating the string.
+     * @param element the element to be written
+     * @see Route#toString()
+     */
+    public void println(Route element) {
+        line.setLength(0);
+        append(routeFormatter.appendString(line, element));
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the formatted representation of an element followed by a line separator.
+     * @param element the element to be written
+     * @see Route#format()
+     */
+    public void printlnFormatted(Route element) {
+        line.setLength(0);
+        append(routeFormatter.appendFormatted(line, element));
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes a line separator.
+     */
+    public void println() {
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes a formatted string, in the same way as {@link java.io.PrintStream#printf(String, Object...)} does.
+     * @param format the format string
+     * @param args the arguments referenced by the format specifiers
+     */
+    public void printf(String format, Object... args) {
+        formatter.format(format, args);
+    }
+
+    @Override
+    public Output append(CharSequence csq) {
+        CharSequence sequence = csq == null ? "null" : csq;
+        return append(sequence, 0, sequence.length());
+    }
+
+    @Override
+    public Output append(CharSequence csq, int start, int end) {
+        if (csq == null) {
+            return append("null", start, end);
+        }
+        while (start < end) {
+            if (length == buffer.length) {
+                drain(false);
+            }
+            int count = Math.min(end - start, buffer.length - length);
+            if (csq instanceof String) {
+                ((String) csq).getChars(start, start + count, buffer, length);
+            } else if (csq instanceof StringBuilder) {
+                ((StringBuilder) csq).getChars(start, start + count, buffer, length);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[length + i] = csq.charAt(start + i);
+                }
+            }
+            length += count;
+            start += count;
+        }
+        return this;
+    }
+
+    @Override
+    public Output append(char c) {
+        if (length == buffer.length) {
+            drain(false);
+        }
+        buffer[length++] = c;
+        return this;
+    }
+
+    /**
+     * Writes everything collected in the buffer to the target and flushes the target.
+     */
+    @Override
+    public void flush() {
+        drain(true);
+        try {
+            target.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // writes the buffer to the target, keeping a trailing high surrogate until its pair comes unless flushing
+    private void drain(boolean flushing) {
+        int count = !flushing && length > 0 && Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+        if (count == 0) {
+            return;
+        }
+        try {
+            target.write(buffer, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (count < length) {
+            buffer[0] = buffer[count];
+        }
+        length -= count;
+    }
+
+    // the destination the buffered characters are written to
+    private interface Target {
+        void write(char[] chars, int count) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static final class AppendableTarget implements Target {
+        private final Appendable appendable;
+
+        private AppendableTarget(Appendable appendable) {
+            this.appendable = appendable;
+        }
+
+        @Override
+        public void write(char[] chars, int count) throws IOException {
+            appendable.append(CharBuffer.wrap(chars, 0, count));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (appendable instanceof Flushable) {
+                ((Flushable) appendable).flush();
+            }
+        }
+    }
+
+    private static final class ChannelTarget implements Target {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer bytes; // reused for every write
+
+        private ChannelTarget(WritableByteChannel channel, Charset charset) {
+            this.channel = channel;
+            // the unmappable characters are replaced, like in PrintStream
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(char[] chars, int count) throws IOException {
+            CharBuffer in = CharBuffer.wrap(chars, 0, count);
+            // the buffer is only drained between complete characters, so every write is the end of the input
+            encoder.reset();
+            while (encoder.encode(in, bytes, true).isOverflow()) {
+                writeBytes();
+            }
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            writeBytes();
+        }
+
+        @Override
+        public void flush() {
+            // the channel is written to directly, so there's nothing left to flush
+        }
+
+        private void writeBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An object of the {@code ParseCache} class keeps the elements parsed from an XML collection file in a cache file next
+ * to it, so that the following runs of the program read the elements from the cache without parsing and validating
+ * the XML file again. The cache of a file {@code routes.xml} is named {@code routes.xml}{@value #EXTENSION}.
+ * <br>The cache is a {@link BinarySnapshot} of the parsed elements followed by the fingerprint of the XML file it was
+ * built from: the size of the file, the time of its last modification and the CRC32C checksum of its contents. The
+ * cache is only used if the fingerprint matches the XML file as it is now and the snapshot itself is intact, and
+ * otherwise the XML file is parsed as usual and the cache is written again. Computing the checksum takes a single pass
+ * over the file, which is many times faster than parsing it.
+ * <br>A cache is written to a temporary file first and then moved in place, so an interrupted write never leaves a
+ * partial cache behind.
+ * @implNote Since the IDs and the creation dates of the elements aren't read from an XML file, the elements read from
+ * the cache keep the ones assigned when the cache was written
+ */
+public class ParseCache {
+    /**
+     * The extension added to the name of an XML file to get the name of its cache, including the dot.
+     */
+    public static final String EXTENSION = ".cache";
+    private static final byte[] MAGIC = "LAB5CKEY".getBytes(StandardCharsets.US_ASCII);
+    // the magic, the size and the modification time of the file, and the checksum of its contents
+    private static final int FINGERPRINT_SIZE = MAGIC.length + Long.BYTES + Long.BYTES + Integer.BYTES;
+    private final File source;
+    private final File cache;
+    private final BinarySnapshot snapshot;
+    private ByteBuffer fingerprint; // the fingerprint of the source file, computed once
+
+    /**
+     * Constructs a {@code ParseCache} object for the given XML file. Nothing is read or written until the cache is
+     * checked or written.
+     * @param source the XML file the elements are parsed from
+     * @param snapshot a reference to a {@link BinarySnapshot} instance used for writing and reading the cache
+     */
+    public ParseCache(File source, BinarySnapshot snapshot) {
+        this.source = source;
+        this.cache = new File(source.getPath() + EXTENSION);
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Returns the cache file, which may not exist.
+     * @return the {@code File} object representing the cache file
+     */
+    public File getFile() {
+        return cache;
+    }
+
+    /**
+     * Opens the cache if it can be used instead of parsing the XML file, i.e. if it has been built from the XML file
+     * as it is now and it isn't damaged. The returned snapshot has been verified, so it's read from as it is rather
+     * than opened and verified again.
+     * @return the cache mapped into memory, or {@code null} if it can't be used
+     * @throws IOException if an input/output exception occurred while reading the XML file
+     */
+    MappedSnapshot open() throws IOException {
+        ByteBuffer expected = fingerprint();
+        try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < BinarySnapshot.HEADER_SIZE + FINGERPRINT_SIZE) {
+                return null;
+            }
+            ByteBuffer actual = ByteBuffer.allocate(FINGERPRINT_SIZE);
+            while (actual.hasRemaining()) {
+                if (channel.read(actual, channel.size() - FINGERPRINT_SIZE + actual.position()) < 0) {
+                    return null;
+                }
+            }
+            if (!Arrays.equals(actual.array(), expected.array())) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null; // there is no cache yet or it can't be read, either way it's built anew
+        }
+        try {
+            return MappedSnapshot.open(cache); // verifies the checksums of the snapshot
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the elements parsed from the XML file to the cache, replacing the previous cache. The fingerprint is the
+     * one computed by {@link #open()} if it has been called, so a change made to the XML file while it was being
+     * parsed makes the cache invalid.
+     * @param elements the elements parsed from the XML file
+     * @throws IOException if an input/output exception occurred
+     */
+    public void write(Collection<Route> elements) throws IOException {
+        ByteBuffer trailer = fingerprint().duplicate();
+        File temporary = new File(cache.getPath() + ".tmp");
+        try {
+            snapshot.writeToFile(elements, temporary);
+            try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                while (trailer.hasRemaining()) {
+                    channel.write(trailer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    // computes the fingerprint of the source file, or returns the one computed before
+    private ByteBuffer fingerprint() throws IOException {
+        if (fingerprint == null) {
+            try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                long modified = Files.getLastModifiedTime(source.toPath()).toMillis();
+                fingerprint = ByteBuffer.allocate(FINGERPRINT_SIZE).put(MAGIC).putLong(size).putLong(modified)
+                        .putInt(MappedSnapshot.checksum(channel, 0, size));
+                fingerprint.flip();
+            }
+        }
+        return fingerprint;
+    }
+}
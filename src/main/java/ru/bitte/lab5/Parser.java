@@ -1,20 +1,30 @@
 package ru.bitte.lab5;
 
-import org.w3c.dom.*;
-import org.xml.sax.SAXException;
 import ru.bitte.lab5.exceptions.*;
 import ru.bitte.lab5.route.*;
 
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.*;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 /**
  * An object of the {@code Parser} class can be used to read objects of the {@link Route} class from an XML file
- * and return them in a list, and to write {@code Route} objects from a collection to an XML file.
+ * and return them in a list or pass them on one by one, and to write {@code Route} objects from a collection to an XML
+ * file. The files are read as a stream, so the memory used for reading doesn't depend on the file size.
  * <br>The objects in a read-from XML file must adhere to the following format:
  * <pre>
  * {@code
@@ -45,261 +55,593 @@ import java.util.*;
  * </pre>
  */
 public class Parser {
-    private final DocumentBuilder documentBuilder;
-    private final Transformer transformer;
+    /**
+     * The extension of the XML files the collection is saved to, including the dot.
+     */
+    public static final String EXTENSION = ".xml";
+    private static final String INDENT = "    ";
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final long MIN_CHUNK_SIZE = 1 << 20; // the minimum size of a chunk in parallel reading, in bytes
+    private static final int BATCH_SIZE = 1 << 16; // the number of routes passed on at once by the batch reader
+    private static final byte[] ROUTE_TAG = "<route".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_START = "<chunk>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHUNK_END = "</chunk>".getBytes(StandardCharsets.US_ASCII);
+    private final XMLInputFactory inputFactory;
 
     /**
      * Returns an instance of the parser.
-     * @throws ParserConfigurationException if the XML parser configuration exception was thrown
-     * @throws TransformerConfigurationException if the XML transformer configuration exception was thrown
      */
-    public Parser() throws ParserConfigurationException, TransformerConfigurationException {
-        // initializes a document builder and a transformer for handling xml files
-        documentBuilder = DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder();
-        transformer = TransformerFactory.newDefaultInstance().newTransformer();
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty(OutputKeys.STANDALONE, "yes");
-        transformer.setOutputProperty("{https://xml.apache.org/xslt}indent-amount", "4");
+    public Parser() {
+        // initializes a stream reader factory for reading xml files
+        inputFactory = XMLInputFactory.newDefaultFactory();
     }
 
-
     /**
      * Reads {@code Route} objects from an XML file and returns them in a list.
      * @param file the {@code File} object representing an XML file containing objects
      * @return an {@link ArrayList} containing parsed {@code Route} objects
      * @throws IOException if an input/output exception occurred
-     * @throws SAXException if a SAX exception occurred
+     * @throws XMLStreamException if the file isn't a well-formed XML document
      * @throws ElementParsingInFileException if an element couldn't be properly parsed from a file, including logical
      * and formatting errors (see a particular exception message for more)
      */
-    public ArrayList<Route> readFromFile(File file) throws IOException, SAXException,
+    public ArrayList<Route> readFromFile(File file) throws IOException, XMLStreamException,
             ElementParsingInFileException {
-        // very ad hoc shitty parser
+        ArrayList<Route> generatedRoutes = new ArrayList<>();
+        readFromFile(file, generatedRoutes::add);
+        return generatedRoutes;
+    }
+
+    /**
+     * Reads {@code Route} objects from an XML file and passes them to the consumer one by one as soon as each of them
+     * is read. The file is read as a stream, so only a single route element is held in memory at a time regardless of
+     * the file size.
+     * @param file the {@code File} object representing an XML file containing objects
+     * @param consumer the consumer that accepts the parsed {@code Route} objects in the order they appear in the file
+     * @throws IOException if an input/output exception occurred
+     * @throws XMLStreamException if the file isn't a well-formed XML document
+     * @throws ElementParsingInFileException if an element couldn't be properly parsed from a file, including logical
+     * and formatting errors (see a particular exception message for more)
+     */
+    public void readFromFile(File file, Consumer<Route> consumer) throws IOException, XMLStreamException,
+            ElementParsingInFileException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(input);
+            try {
+                readRoutes(reader, consumer);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Reads {@code Route} objects from an XML file in parallel and passes them to the consumer in batches, in the order
+     * they appear in the file. The file is split into chunks at the {@code <route>} tags, and the chunks are parsed and
+     * validated on the {@link ForkJoinPool#commonPool() common pool}. The chunks are only passed to the consumer once
+     * all of them have been parsed, every chunk as a whole, so it can be added to a collection at once, and nothing is
+     * passed on if any of them fails. If an element in the file can't be parsed, the exception names the number of the
+     * offending route element. If the file can't be split into chunks (e.g. it's not encoded in UTF-8 or the
+     * {@code <route>} tags appear inside comments), it is read by the single-threaded reader instead.
+     * @param file the {@code File} object representing an XML file containing objects
+     * @param consumer the consumer that accepts the lists of the parsed {@code Route} objects
+     * @throws IOException if an input/output exception occurred
+     * @throws XMLStreamException if the file isn't a well-formed XML document
+     * @throws ElementParsingInFileException if an element couldn't be properly parsed from a file, including logical
+     * and formatting errors (see a particular exception message for more)
+     * @see #readFromFile(File, Consumer)
+     */
+    public void readFromFileInParallel(File file, Consumer<List<Route>> consumer) throws IOException,
+            XMLStreamException, ElementParsingInFileException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] routeStarts = findRouteStarts(channel);
+            long end = findRootEnd(channel);
+            if (routeStarts.length == 0 || end < routeStarts[routeStarts.length - 1]) {
+                readInBatches(file, consumer);
+                return;
+            }
+            // the prolog and the root tags are parsed on their own to make sure the document around the routes is fine
+            byte[] head = readBytes(channel, 0, routeStarts[0]);
+            byte[] tail = readBytes(channel, end, channel.size() - end);
+            String prolog = new String(head, StandardCharsets.UTF_8).toLowerCase();
+            if (prolog.contains("encoding") && !prolog.contains("utf-8")) {
+                readInBatches(file, consumer);
+                return;
+            }
+            try {
+                readRoutes(inputFactory.createXMLStreamReader(new SequenceInputStream(new ByteArrayInputStream(head),
+                        new ByteArrayInputStream(tail)), "UTF-8"), route -> {
+                    throw new AssertionError("no routes expected outside the chunks");
+                });
+            } catch (XMLStreamException | ElementParsingInFileException e) {
+                // the file couldn't be split properly, the single-threaded reader will find the actual problem
+                readInBatches(file, consumer);
+                return;
+            }
+            // group the routes into chunks of roughly the same size and parse them
+            long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                    (end - routeStarts[0]) / (ForkJoinPool.getCommonPoolParallelism() * 4L));
+            List<ForkJoinTask<List<Route>>> chunks = new ArrayList<>();
+            int first = 0;
+            while (first < routeStarts.length) {
+                int last = first + 1;
+                while (last < routeStarts.length && routeStarts[last] - routeStarts[first] < chunkSize) {
+                    last++;
+                }
+                long from = routeStarts[first];
+                long to = last < routeStarts.length ? routeStarts[last] : end;
+                int firstRoute = first;
+                chunks.add(ForkJoinPool.commonPool().submit(() -> parseChunk(channel, from, to, firstRoute)));
+                first = last;
+            }
+            // every chunk is parsed before any of them is passed on, so that a failure leaves the consumer untouched
+            List<List<Route>> parsed = new ArrayList<>(chunks.size());
+            try {
+                for (ForkJoinTask<List<Route>> chunk : chunks) {
+                    parsed.add(chunk.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading the file");
+            } catch (ExecutionException e) {
+                chunks.forEach(chunk -> chunk.cancel(true));
+                Throwable cause = e.getCause();
+                // the pool wraps the checked exceptions of the tasks into plain runtime exceptions
+                while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof ElementParsingInFileException) {
+                    throw (ElementParsingInFileException) cause;
+                } else if (cause instanceof XMLStreamException) {
+                    // the file couldn't be split properly (e.g. a route tag inside a comment), and since nothing has
+                    // been passed on yet, the single-threaded reader can read it from the start
+                    readInBatches(file, consumer);
+                    return;
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else {
+                    throw new IllegalStateException(cause);
+                }
+            }
+            parsed.forEach(consumer);
+        }
+    }
+
+    // parses the routes between two positions of a file as a separate document
+    private List<Route> parseChunk(FileChannel channel, long from, long to, int firstRoute) throws IOException,
+            XMLStreamException, ElementParsingInFileException {
+        InputStream chunk = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(CHUNK_START), new ByteArrayInputStream(readBytes(channel, from, to - from)),
+                new ByteArrayInputStream(CHUNK_END))));
+        List<Route> routes = new ArrayList<>();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(chunk, "UTF-8");
         try {
-            ArrayList<Route> generatedRoutes = new ArrayList<>();
-            // parse a file and make sure nothing other than route is present
-            Document doc = documentBuilder.parse(file);
-            Element root = doc.getDocumentElement();
-            for (Node node : clearUpNodes(root.getChildNodes())) {
-                if (!node.getNodeName().equals("route")) {
-                    throw new ElementParsingInFileException("Unexpected element name - " + node.getNodeName());
+            readRoutes(reader, routes::add);
+        } catch (ElementParsingInFileException e) {
+            throw new ElementParsingInFileException("Route #" + (firstRoute + routes.size() + 1) + ": "
+                    + e.getMessage());
+        } finally {
+            reader.close();
+        }
+        return routes;
+    }
+
+    // reads a file by the single-threaded reader, passing on the routes in batches
+    private void readInBatches(File file, Consumer<List<Route>> consumer) throws IOException, XMLStreamException,
+            ElementParsingInFileException {
+        List<Route> batch = new ArrayList<>();
+        readFromFile(file, route -> {
+            batch.add(route);
+            if (batch.size() == BATCH_SIZE) {
+                consumer.accept(new ArrayList<>(batch));
+                batch.clear();
+            }
+        });
+        consumer.accept(batch);
+    }
+
+    // returns the positions of all the route start tags in a file
+    private long[] findRouteStarts(FileChannel channel) throws IOException {
+        long[] starts = new long[1024];
+        int count = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        long position = 0;
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            // the last few bytes are checked again with the next read, unless it's the end of the file
+            int limit = position + read >= size ? read : read - ROUTE_TAG.length;
+            for (int i = 0; i < limit; i++) {
+                if (buffer.get(i) == '<' && isRouteTag(buffer, i, read)) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = position + i;
                 }
             }
-            NodeList routes = root.getElementsByTagName("route");
-            // process a route element
-            for (int i = 0; i < routes.getLength(); i++) {
-                NodeList rawNodes = routes.item(i).getChildNodes(); // get the route's nodes
-                ArrayList<Node> routeNodes = clearUpNodes(rawNodes); // clear the node list from text nodes
-                // clear up the route nodes from the ignored tags
-                ArrayList<String> ignoredTags = new ArrayList<>(Arrays.asList("id", "creationDate", "distance"));
-                routeNodes.removeIf(node -> ignoredTags.contains(node.getNodeName()));
-                // define the list of allowed tags
-                ArrayList<String> allowedTags = new ArrayList<>(Arrays.asList("coordinates", "from", "name", "to"));
-                ArrayList<String> tagNames = getTagNames(routeNodes); // get the supplied tag names
-            /* if the number of supplied tag names is less than or greater than the number of allowed ones,
-             an exception is thrown */
-                Collections.sort(tagNames); // allows the elements be in different order (since allowed tags are sorted)
-                if (allowedTags.size() > tagNames.size()) {
-                    throw new ElementParsingInFileException("Missing tag names detected in route");
-                } else if (!allowedTags.equals(tagNames)) {
-                    throw new ElementParsingInFileException("Duplicate or illegal tag names detected in route");
+            position += Math.max(limit, 1);
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    // checks whether a route start tag begins at an index of a buffer
+    private static boolean isRouteTag(ByteBuffer buffer, int index, int limit) {
+        if (index + ROUTE_TAG.length >= limit) {
+            return false;
+        }
+        for (int i = 1; i < ROUTE_TAG.length; i++) {
+            if (buffer.get(index + i) != ROUTE_TAG[i]) {
+                return false;
+            }
+        }
+        byte next = buffer.get(index + ROUTE_TAG.length);
+        return next == '>' || next == '/' || Character.isWhitespace(next);
+    }
+
+    // returns the position of the last closing tag in a file, i.e. the end of the root element
+    private static long findRootEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (long end = size; end > 0; end -= buffer.capacity() - 1) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear().limit((int) (end - start));
+            channel.read(buffer, start);
+            for (int i = buffer.position() - 2; i >= 0; i--) {
+                if (buffer.get(i) == '<' && buffer.get(i + 1) == '/') {
+                    return start + i;
                 }
-                // get the fields
-                String name = null;
-                Coordinates coords = null;
-                Location from = null, to = null;
-                // allowed tag for coordinates and location objects
-                ArrayList<String> allowedCoordTags = new ArrayList<>(Arrays.asList("x", "y"));
-                ArrayList<String> allowedLocTags = new ArrayList<>(Arrays.asList("name", "x", "y", "z"));
-                // read the inside nodes of route in a loop
-                for (Node node : routeNodes) {
-                    switch (node.getNodeName()) {
-                        case "name" -> name = node.getTextContent().strip();
-                        case "coordinates" -> {
-                            // clear up nodes and confirm them
-                            ArrayList<Node> coordNodes = clearUpNodes(node.getChildNodes());
-                            ArrayList<String> coordTags = getTagNames(coordNodes);
-                            Collections.sort(coordTags); // allows the elements be in different order
-                            if (allowedCoordTags.size() > coordTags.size()) {
-                                throw new ElementParsingInFileException("Missing tag names detected in coordinates");
-                            } else if (!coordTags.equals(allowedCoordTags)) {
-                                throw new ElementParsingInFileException("Duplicate or illegal names detected in coordinates");
-                            }
-                            long x = 0, y = 0;
-                            // extract them
-                            for (Node coordNode : coordNodes) {
-                                if (coordNode.getNodeName().equalsIgnoreCase("x")) {
-                                    x = Long.parseLong(coordNodes.get(0).getTextContent());
-                                } else if (coordNode.getNodeName().equalsIgnoreCase("y")) {
-                                    y = Long.parseLong(coordNodes.get(1).getTextContent());
-                                }
-                            }
-                            // create a coordinates object and pass on a construction exception
-                            try {
-                                coords = new Coordinates(x, y);
-                            } catch (ElementConstructionException e) {
-                                throw new ElementParsingInFileException(e.getMessage());
-                            }
-                        }
-                        case "from", "to" -> { // aka location
-                            // clear up nodes and confirm them
-                            ArrayList<Node> locNodes = clearUpNodes(node.getChildNodes());
-                            ArrayList<String> locTags = getTagNames(locNodes);
-                            Collections.sort(locTags); // allows the elements be in different order
-                            if (allowedLocTags.size() > locTags.size()) {
-                                throw new ElementParsingInFileException("Missing tag names detected in location");
-                            } else if (!locTags.equals(allowedLocTags)) {
-                                throw new ElementParsingInFileException("Duplicate or illegal tag names detected in location");
-                            }
-                            // extract them
-                            long x = 0, y = 0;
-                            float z = 0;
-                            String locName = null;
-                            for (Node locNode : locNodes) {
-                                if (locNode.getNodeName().equalsIgnoreCase("x")) {
-                                    x = Long.parseLong(locNodes.get(0).getTextContent());
-                                } else if (locNode.getNodeName().equalsIgnoreCase("y")) {
-                                    y = Long.parseLong(locNodes.get(1).getTextContent());
-                                } else if (locNode.getNodeName().equalsIgnoreCase("z")) {
-                                    z = Float.parseFloat(locNode.getTextContent());
-                                } else if (locNode.getNodeName().equals("name")) {
-                                    locName = locNode.getTextContent().strip();
-                                }
-                            }
-                            // assign the new location object to either "from" or "to" field depending on the tag name
-                            if (node.getNodeName().equals("from")) {
-                                assert !(locName == null);
-                                from = new Location(x, y, z, locName);
-                            } else if (node.getNodeName().equals("to")) {
-                                assert !(locName == null);
-                                to = new Location(x, y, z, locName);
-                            }
+            }
+        }
+        return -1;
+    }
+
+    // reads a part of a file into an array
+    private static byte[] readBytes(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 16) {
+            throw new IOException("A single part of the file is too large to be read");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the file");
+            }
+        }
+        return buffer.array();
+    }
+
+    // reads the route elements following the root element and passes them on
+    private void readRoutes(XMLStreamReader reader, Consumer<Route> consumer) throws XMLStreamException,
+            ElementParsingInFileException {
+        try {
+            reader.nextTag(); // skip the prolog and get to the root element
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        // make sure nothing other than route is present
+                        if (!reader.getLocalName().equals("route")) {
+                            throw new ElementParsingInFileException("Unexpected element name - "
+                                    + reader.getLocalName());
                         }
-                        case "id", "creationDate", "distance" -> {
-                            // skip these
+                        consumer.accept(parseRoute(readNode(reader)));
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE -> {
+                        if (!reader.getText().strip().equals("")) {
+                            throw new ElementParsingInFileException("Unknown text fields in the route element detected");
                         }
-                        default -> throw new ElementParsingInFileException("Unexpected value: " + node.getNodeName());
                     }
-                }
-                // add a new element and pass on a ElementConstructionException to a ElementParsingInFileException
-                try {
-                    Route newRoute = new Route(name, coords, from, to);
-                    generatedRoutes.add(newRoute);
-                } catch (ElementConstructionException e) {
-                    throw new ElementParsingInFileException(e.getMessage());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        return; // the end of the root element
+                    }
+                    default -> {
+                        // skip comments and processing instructions
+                    }
                 }
             }
-            assert generatedRoutes.size() == routes.getLength();
-            return generatedRoutes;
         } catch (NumberFormatException e) { // I know this is bad but at least it's passed on to another exception
             throw new ElementParsingInFileException("Error while parsing the coordinates/location number types " +
                     "(see documentation on required data types).");
         }
     }
 
+    // reads the element the reader is at, together with its contents, up to its end tag
+    private ParsedNode readNode(XMLStreamReader reader) throws XMLStreamException {
+        ParsedNode node = new ParsedNode(reader.getLocalName());
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    ParsedNode child = readNode(reader);
+                    node.children.add(child);
+                    node.textContent.append(child.textContent);
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.SPACE -> {
+                    node.textContent.append(reader.getText());
+                    node.strayText |= !reader.getText().strip().equals("");
+                }
+                case XMLStreamConstants.CDATA -> node.textContent.append(reader.getText());
+                case XMLStreamConstants.END_ELEMENT -> {
+                    return node;
+                }
+                default -> {
+                    // skip comments and processing instructions
+                }
+            }
+        }
+    }
+
+    // creates a route object from a read route element, validating it along the way
+    private Route parseRoute(ParsedNode routeNode) throws ElementParsingInFileException {
+        ArrayList<ParsedNode> routeNodes = clearUpNodes(routeNode); // get the route's nodes
+        // clear up the route nodes from the ignored tags
+        ArrayList<String> ignoredTags = new ArrayList<>(Arrays.asList("id", "creationDate", "distance"));
+        routeNodes.removeIf(node -> ignoredTags.contains(node.name));
+        // define the list of allowed tags
+        ArrayList<String> allowedTags = new ArrayList<>(Arrays.asList("coordinates", "from", "name", "to"));
+        ArrayList<String> tagNames = getTagNames(routeNodes); // get the supplied tag names
+        /* if the number of supplied tag names is less than or greater than the number of allowed ones,
+         an exception is thrown */
+        Collections.sort(tagNames); // allows the elements be in different order (since allowed tags are sorted)
+        if (allowedTags.size() > tagNames.size()) {
+            throw new ElementParsingInFileException("Missing tag names detected in route");
+        } else if (!allowedTags.equals(tagNames)) {
+            throw new ElementParsingInFileException("Duplicate or illegal tag names detected in route");
+        }
+        // get the fields
+        String name = null;
+        Coordinates coords = null;
+        Location from = null, to = null;
+        // allowed tag for coordinates and location objects
+        ArrayList<String> allowedCoordTags = new ArrayList<>(Arrays.asList("x", "y"));
+        ArrayList<String> allowedLocTags = new ArrayList<>(Arrays.asList("name", "x", "y", "z"));
+        // read the inside nodes of route in a loop
+        for (ParsedNode node : routeNodes) {
+            switch (node.name) {
+                case "name" -> name = Interner.NAMES.intern(node.getTextContent().strip());
+                case "coordinates" -> {
+                    // clear up nodes and confirm them
+                    ArrayList<ParsedNode> coordNodes = clearUpNodes(node);
+                    ArrayList<String> coordTags = getTagNames(coordNodes);
+                    Collections.sort(coordTags); // allows the elements be in different order
+                    if (allowedCoordTags.size() > coordTags.size()) {
+                        throw new ElementParsingInFileException("Missing tag names detected in coordinates");
+                    } else if (!coordTags.equals(allowedCoordTags)) {
+                        throw new ElementParsingInFileException("Duplicate or illegal names detected in coordinates");
+                    }
+                    long x = 0, y = 0;
+                    // extract them
+                    for (ParsedNode coordNode : coordNodes) {
+                        if (coordNode.name.equalsIgnoreCase("x")) {
+                            x = Long.parseLong(coordNode.getTextContent());
+                        } else if (coordNode.name.equalsIgnoreCase("y")) {
+                            y = Long.parseLong(coordNode.getTextContent());
+                        }
+                    }
+                    // create a coordinates object and pass on a construction exception
+                    try {
+                        coords = Coordinates.of(x, y);
+                    } catch (ElementConstructionException e) {
+                        throw new ElementParsingInFileException(e.getMessage());
+                    }
+                }
+                case "from", "to" -> { // aka location
+                    // clear up nodes and confirm them
+                    ArrayList<ParsedNode> locNodes = clearUpNodes(node);
+                    ArrayList<String> locTags = getTagNames(locNodes);
+                    Collections.sort(locTags); // allows the elements be in different order
+                    if (allowedLocTags.size() > locTags.size()) {
+                        throw new ElementParsingInFileException("Missing tag names detected in location");
+                    } else if (!locTags.equals(allowedLocTags)) {
+                        throw new ElementParsingInFileException("Duplicate or illegal tag names detected in location");
+                    }
+                    // extract them
+                    long x = 0, y = 0;
+                    float z = 0;
+                    String locName = null;
+                    for (ParsedNode locNode : locNodes) {
+                        if (locNode.name.equalsIgnoreCase("x")) {
+                            x = Long.parseLong(locNode.getTextContent());
+                        } else if (locNode.name.equalsIgnoreCase("y")) {
+                            y = Long.parseLong(locNode.getTextContent());
+                        } else if (locNode.name.equalsIgnoreCase("z")) {
+                            z = Float.parseFloat(locNode.getTextContent());
+                        } else if (locNode.name.equals("name")) {
+                            locName = locNode.getTextContent().strip();
+                        }
+                    }
+                    // assign the new location object to either "from" or "to" field depending on the tag name
+                    if (node.name.equals("from")) {
+                        assert !(locName == null);
+                        from = Location.of(x, y, z, locName);
+                    } else if (node.name.equals("to")) {
+                        assert !(locName == null);
+                        to = Location.of(x, y, z, locName);
+                    }
+                }
+                default -> throw new ElementParsingInFileException("Unexpected value: " + node.name);
+            }
+        }
+        // create a new element and pass on a ElementConstructionException to a ElementParsingInFileException
+        try {
+            return new Route(name, coords, from, to);
+        } catch (ElementConstructionException e) {
+            throw new ElementParsingInFileException(e.getMessage());
+        }
+    }
+
     /**
-     * Writes {@code Route} objects from a collection to a new XML file in the above defined format.
+     * Writes {@code Route} objects from a collection to a new XML file in the above defined format. The elements are
+     * written to the file as a stream one by one, so nothing but a fixed size buffer is held in memory regardless of
+     * the collection size.
      * @param collection the collection from which to gather the {@code Route} objects
      * @param file the {@code File} object representation of a file to which write the objects in
-     * @throws TransformerException if an XML transformer exception occurred
+     * @throws IOException if an input/output exception occurred
      */
-    public void writeToFile(Collection<Route> collection, File file) throws TransformerException {
-        // create a new document tree with the element "collection" as the root
-        Document document = documentBuilder.newDocument();
-        Element root = document.createElement("collection");
-        document.appendChild(root);
-        for (Route r : collection) {
-            // create a new route element to be filled with other elements
-            Element route = document.createElement("route");
-            // set id
-            Element id = document.createElement("id");
-            id.setTextContent(String.valueOf(r.getId()));
-            // set name
-            Element name = document.createElement("name");
-            name.setTextContent(r.getName());
-            route.appendChild(name);
-            // set coordinates
-            Element xCoords = document.createElement("x");
-            xCoords.setTextContent(String.valueOf(r.getCoordinates().getX()));
-            Element yCoords = document.createElement("y");
-            yCoords.setTextContent(String.valueOf(r.getCoordinates().getY()));
-            Element coords = document.createElement("coordinates");
-            coords.appendChild(xCoords);
-            coords.appendChild(yCoords);
-            route.appendChild(coords);
-            // set creation date
-            Element creationDate = document.createElement("creationDate");
-            creationDate.setTextContent(r.getFormattedDate());
-            route.appendChild(creationDate);
-            Element xFrom = document.createElement("x");
-            xFrom.setTextContent(String.valueOf(r.getFrom().getX()));
-            Element yFrom = document.createElement("y");
-            yFrom.setTextContent(String.valueOf(r.getFrom().getY()));
-            Element zFrom = document.createElement("z");
-            zFrom.setTextContent(String.valueOf(r.getFrom().getZ()));
-            Element nameFrom = document.createElement("name");
-            nameFrom.setTextContent(r.getFrom().getName());
-            Element from = document.createElement("from");
-            from.appendChild(xFrom);
-            from.appendChild(yFrom);
-            from.appendChild(zFrom);
-            from.appendChild(nameFrom);
-            route.appendChild(from);
-            // set to
-            Element xTo = document.createElement("x");
-            xTo.setTextContent(String.valueOf(r.getTo().getX()));
-            Element yTo = document.createElement("y");
-            yTo.setTextContent(String.valueOf(r.getTo().getY()));
-            Element zTo = document.createElement("z");
-            zTo.setTextContent(String.valueOf(r.getTo().getZ()));
-            Element nameTo = document.createElement("name");
-            nameTo.setTextContent(r.getTo().getName());
-            Element to = document.createElement("to");
-            to.appendChild(xTo);
-            to.appendChild(yTo);
-            to.appendChild(zTo);
-            to.appendChild(nameTo);
-            route.appendChild(to);
-            // set distance
-            Element distance = document.createElement("distance");
-            distance.setTextContent(String.valueOf(r.getDistance()));
-            route.appendChild(distance);
-            // append a new route element
-            root.appendChild(route);
+    public void writeToFile(Collection<Route> collection, File file) throws IOException {
+        try (Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            XMLWriter writer = new XMLWriter(output);
+            output.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+            output.write(LINE_SEPARATOR);
+            if (collection.isEmpty()) {
+                output.write("<collection/>");
+                output.write(LINE_SEPARATOR);
+                return;
+            }
+            writer.open(0, "collection");
+            for (Route r : collection) {
+                writer.open(1, "route");
+                writer.text(2, "name", r.getName());
+                // set coordinates
+                writer.open(2, "coordinates");
+                writer.number(3, "x", r.getCoordinates().getX());
+                writer.number(3, "y", r.getCoordinates().getY());
+                writer.close(2, "coordinates");
+                // set creation date
+                writer.date(2, "creationDate", r.getCreationDate());
+                // set from and to
+                writer.location(2, "from", r.getFrom());
+                writer.location(2, "to", r.getTo());
+                // set distance
+                writer.number(2, "distance", r.getDistance());
+                writer.close(1, "route");
+            }
+            writer.close(0, "collection");
         }
-        // transform an xml tree to an xml file
-        DOMSource source = new DOMSource(root);
-        StreamResult result = new StreamResult(file);
-        transformer.transform(source, result);
     }
 
-    // cleans up a node's elements from unwanted text nodes and makes sure they're empty
-    private ArrayList<Node> clearUpNodes(NodeList nodes) throws ElementParsingInFileException {
-        // get text nodes and element nodes in separate lists
-        ArrayList<Node> textNodes = new ArrayList<>();
-        ArrayList<Node> elementNodes = new ArrayList<>();
-        for (int j = 0; j < nodes.getLength(); j++) {
-            if (nodes.item(j).getNodeType() == Node.TEXT_NODE) {
-                textNodes.add(nodes.item(j));
-            } else if (nodes.item(j).getNodeType() == Node.ELEMENT_NODE) {
-                elementNodes.add(nodes.item(j));
-            }
-        }
-        // make sure the text nodes are empty
-        for (Node node : textNodes) {
-            if (!(node.getTextContent().strip().equals(""))) {
-                throw new ElementParsingInFileException("Unknown text fields in the route element detected");
-            }
+    // returns the element nodes of a node, making sure the text between them is empty
+    private ArrayList<ParsedNode> clearUpNodes(ParsedNode node) throws ElementParsingInFileException {
+        if (node.strayText) {
+            throw new ElementParsingInFileException("Unknown text fields in the route element detected");
         }
-        return elementNodes;
+        return new ArrayList<>(node.children);
     }
 
     // returns tag names of a nodes list
-    private ArrayList<String> getTagNames(ArrayList<Node> nodes) {
+    private ArrayList<String> getTagNames(ArrayList<ParsedNode> nodes) {
         ArrayList<String> tagNames = new ArrayList<>();
-        for (Node node : nodes) {
-            tagNames.add(node.getNodeName().strip().toLowerCase());
+        for (ParsedNode node : nodes) {
+            tagNames.add(node.name.strip().toLowerCase());
         }
         return tagNames;
     }
+
+    // an element read from a file, only ever holds a single route element and its contents
+    private static final class ParsedNode {
+        private final String name;
+        private final List<ParsedNode> children = new ArrayList<>();
+        private final StringBuilder textContent = new StringBuilder(); // the text of the node and all its descendants
+        private boolean strayText; // whether there is non-whitespace text directly between the child elements
+
+        private ParsedNode(String name) {
+            this.name = name;
+        }
+
+        private String getTextContent() {
+            return textContent.toString();
+        }
+    }
+
+    // writes indented xml tags into a writer, reusing the same buffers for the numbers and dates along the way
+    private static final class XMLWriter {
+        private final Writer output;
+        private final char[] digits = new char[20]; // enough for any long value
+        private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM);
+
+        private XMLWriter(Writer output) {
+            this.output = output;
+        }
+
+        // writes an opening tag on its own line
+        private void open(int depth, String tag) throws IOException {
+            indent(depth);
+            output.write('<');
+            output.write(tag);
+            output.write('>');
+            output.write(LINE_SEPARATOR);
+        }
+
+        // writes a closing tag on its own line
+        private void close(int depth, String tag) throws IOException {
+            indent(depth);
+            output.write("</");
+            output.write(tag);
+            output.write('>');
+            output.write(LINE_SEPARATOR);
+        }
+
+        // writes an element containing text
+        private void text(int depth, String tag, String text) throws IOException {
+            startLeaf(depth, tag);
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '&' -> output.write("&amp;");
+                    case '<' -> output.write("&lt;");
+                    case '>' -> output.write("&gt;");
+                    case '\r' -> output.write("&#13;");
+                    default -> output.write(c);
+                }
+            }
+            endLeaf(tag);
+        }
+
+        // writes an element containing a number without creating a string of it
+        private void number(int depth, String tag, long number) throws IOException {
+            startLeaf(depth, tag);
+            int position = digits.length;
+            long rest = number;
+            do {
+                digits[--position] = (char) ('0' + Math.abs(rest % 10));
+                rest /= 10;
+            } while (rest != 0);
+            if (number < 0) {
+                digits[--position] = '-';
+            }
+            output.write(digits, position, digits.length - position);
+            endLeaf(tag);
+        }
+
+        // writes an element containing a date in the same format as Route.getFormattedDate()
+        private void date(int depth, String tag, LocalDateTime date) throws IOException {
+            startLeaf(depth, tag);
+            dateFormatter.formatTo(date, output);
+            endLeaf(tag);
+        }
+
+        // writes a location element with its coordinates and name
+        private void location(int depth, String tag, Location location) throws IOException {
+            open(depth, tag);
+            number(depth + 1, "x", location.getX());
+            number(depth + 1, "y", location.getY());
+            startLeaf(depth + 1, "z");
+            output.write(Float.toString(location.getZ()));
+            endLeaf("z");
+            text(depth + 1, "name", location.getName());
+            close(depth, tag);
+        }
+
+        private void startLeaf(int depth, String tag) throws IOException {
+            indent(depth);
+            output.write('<');
+            output.write(tag);
+            output.write('>');
+        }
+
+        private void endLeaf(String tag) throws IOException {
+            output.write("</");
+            output.write(tag);
+            output.write('>');
+            output.write(LINE_SEPARATOR);
+        }
+
+        private void indent(int depth) throws IOException {
+            for (int i = 0; i < depth; i++) {
+                output.write(INDENT);
+            }
+        }
+    }
 }
@@ -0,0 +1,628 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.QueryParsingException;
+import ru.bitte.lab5.route.Route;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An object of this class is a compiled query over the fields of {@link Route} objects, used for selecting the elements
+ * of a collection by {@link CollectionKeeper#where(RouteQuery)}. A query is written as an expression made of
+ * comparisons of the fields with values, which can be combined with {@code and}, {@code or}, {@code not} and
+ * parentheses, e.g. {@code distance > 50 and from.name = "depot"}.
+ * <br>The fields are {@code id}, {@code name}, {@code creationDate}, {@code distance}, {@code coordinates.x},
+ * {@code coordinates.y}, {@code from.x}, {@code from.y}, {@code from.z}, {@code from.name}, {@code to.x}, {@code to.y},
+ * {@code to.z} and {@code to.name}. The numeric fields are compared with numbers (the <i>Z</i> coordinates with the
+ * numbers rounded to {@code float}, as they're stored), and the names and the creation date are compared with strings
+ * in double quotes, the date being written as {@code "2024-01-31"} or {@code "2024-01-31T12:00"}. The comparison
+ * operators are {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >}, {@code >=}, and {@code contains} for the
+ * names.
+ * <br>The expression is compiled once into a tree of predicates, which tests the elements without looking at the
+ * expression again. The compilation also collects the conditions that every matching element has to meet (a certain
+ * ID, a range of the distances or a substring of the name), so that the matching elements can be looked up in the
+ * indexes of the collection instead of testing every element.
+ */
+public final class RouteQuery {
+    private final String expression;
+    private final Node root;
+    private Long requiredId; // the ID every matching element has, if there's such an ID
+    private long minDistance = Long.MIN_VALUE; // the least distance of a matching element
+    private long maxDistance = Long.MAX_VALUE; // the greatest distance of a matching element
+    private String requiredSubstring; // a substring of the name of every matching element, if there's such a string
+
+    private RouteQuery(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+        // only the conditions joined by "and" at the top level have to be met by every matching element
+        List<Node> conditions = root instanceof And ? ((And) root).operands : List.of(root);
+        conditions.forEach(this::collect);
+    }
+
+    /**
+     * Compiles a query expression.
+     * @param expression the expression of the query
+     * @return the compiled {@code RouteQuery} object
+     * @throws QueryParsingException if the expression is invalid
+     */
+    public static RouteQuery compile(String expression) throws QueryParsingException {
+        Parser parser = new Parser(tokenize(expression));
+        Node root = parser.parseOr();
+        Token token = parser.peek();
+        if (token.kind != TokenKind.END) {
+            throw unexpected(token);
+        }
+        return new RouteQuery(expression, root);
+    }
+
+    /**
+     * Tests whether an element matches the query.
+     * @param element the element to be tested
+     * @return {@code true} if the element matches the query, otherwise {@code false}
+     */
+    public boolean test(Route element) {
+        return root.test(element);
+    }
+
+    /**
+     * Returns the ID that every element matching the query has.
+     * @return the ID, or {@code null} if the query doesn't require a certain ID
+     */
+    Long getRequiredId() {
+        return requiredId;
+    }
+
+    /**
+     * Returns the least distance of an element matching the query.
+     * @return the least distance, or {@link Long#MIN_VALUE} if the query doesn't limit it
+     */
+    long getMinDistance() {
+        return minDistance;
+    }
+
+    /**
+     * Returns the greatest distance of an element matching the query.
+     * @return the greatest distance, or {@link Long#MAX_VALUE} if the query doesn't limit it
+     */
+    long getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Returns a string that the name of every element matching the query contains.
+     * @return the longest such string found in the query, or {@code null} if the query doesn't require one
+     */
+    String getRequiredSubstring() {
+        return requiredSubstring;
+    }
+
+    /**
+     * Returns the expression of the query.
+     * @return the expression the query was compiled from
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    // remembers what a condition that every matching element meets says about the indexed fields
+    private void collect(Node condition) {
+        if (condition instanceof IntegerComparison) {
+            IntegerComparison comparison = (IntegerComparison) condition;
+            long value = comparison.value;
+            if (comparison.field == Field.ID && comparison.operator == Operator.EQUAL) {
+                requiredId = value;
+            } else if (comparison.field == Field.DISTANCE) {
+                switch (comparison.operator) {
+                    case EQUAL:
+                        minDistance = Math.max(minDistance, value);
+                        maxDistance = Math.min(maxDistance, value);
+                        break;
+                    case GREATER:
+                        // nothing is greater than the greatest value, which is marked by an empty range
+                        minDistance = value == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(minDistance, value + 1);
+                        maxDistance = value == Long.MAX_VALUE ? Long.MIN_VALUE : maxDistance;
+                        break;
+                    case GREATER_OR_EQUAL:
+                        minDistance = Math.max(minDistance, value);
+                        break;
+                    case LESS:
+                        maxDistance = value == Long.MIN_VALUE ? Long.MIN_VALUE : Math.min(maxDistance, value - 1);
+                        minDistance = value == Long.MIN_VALUE ? Long.MAX_VALUE : minDistance;
+                        break;
+                    case LESS_OR_EQUAL:
+                        maxDistance = Math.min(maxDistance, value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } else if (condition instanceof TextComparison) {
+            TextComparison comparison = (TextComparison) condition;
+            boolean containsValue = comparison.operator == Operator.EQUAL || comparison.operator == Operator.CONTAINS;
+            if (comparison.field == Field.NAME && containsValue
+                    && (requiredSubstring == null || comparison.value.length() > requiredSubstring.length())) {
+                requiredSubstring = comparison.value;
+            }
+        }
+    }
+
+    // splits an expression into tokens
+    private static List<Token> tokenize(String expression) throws QueryParsingException {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? TokenKind.LEFT : TokenKind.RIGHT, String.valueOf(c), start));
+                i++;
+            } else if (c == '"') {
+                // a string in double quotes, in which a backslash escapes the following character
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (i < expression.length() && expression.charAt(i) != '"') {
+                    if (expression.charAt(i) == '\\' && i + 1 < expression.length()) {
+                        i++;
+                    }
+                    value.append(expression.charAt(i++));
+                }
+                if (i == expression.length()) {
+                    throw new QueryParsingException("Unclosed string at position " + (start + 1));
+                }
+                i++;
+                tokens.add(new Token(TokenKind.STRING, value.toString(), start));
+            } else if (c == '=' || c == '!' || c == '<' || c == '>') {
+                i++;
+                if (i < expression.length() && expression.charAt(i) == '=') {
+                    i++;
+                }
+                String operator = expression.substring(start, i);
+                if (operator.equals("!")) {
+                    throw new QueryParsingException("Unexpected \"!\" at position " + (start + 1));
+                }
+                tokens.add(new Token(TokenKind.OPERATOR, operator.equals("==") ? "=" : operator, start));
+            } else if (Character.isDigit(c) || c == '-' || c == '.') {
+                i++;
+                while (i < expression.length() && (Character.isLetterOrDigit(expression.charAt(i))
+                        || expression.charAt(i) == '.' || expression.charAt(i) == '-' && isExponent(expression, i))) {
+                    i++;
+                }
+                tokens.add(new Token(TokenKind.NUMBER, expression.substring(start, i), start));
+            } else if (Character.isLetter(c) || c == '_') {
+                i++;
+                while (i < expression.length() && (Character.isLetterOrDigit(expression.charAt(i))
+                        || expression.charAt(i) == '_' || expression.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(new Token(TokenKind.WORD, expression.substring(start, i), start));
+            } else {
+                throw new QueryParsingException("Unexpected \"" + c + "\" at position " + (start + 1));
+            }
+        }
+        tokens.add(new Token(TokenKind.END, "", expression.length()));
+        return tokens;
+    }
+
+    // whether a minus at an index is the sign of the exponent of a number
+    private static boolean isExponent(String expression, int index) {
+        char previous = Character.toLowerCase(expression.charAt(index - 1));
+        return previous == 'e';
+    }
+
+    private static QueryParsingException unexpected(Token token) {
+        if (token.kind == TokenKind.END) {
+            return new QueryParsingException("Unexpected end of the expression");
+        }
+        return new QueryParsingException("Unexpected \"" + token.text + "\" at position " + (token.position + 1));
+    }
+
+    // the parser of the expressions, going down from the operators of the lowest precedence
+    private static final class Parser {
+        private final List<Token> tokens;
+        private int next; // the index of the next token
+
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        private Token peek() {
+            return tokens.get(next);
+        }
+
+        // takes the next token if it's the given keyword
+        private boolean accept(String keyword) {
+            Token token = peek();
+            if (token.kind == TokenKind.WORD && token.text.equalsIgnoreCase(keyword)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        private Node parseOr() throws QueryParsingException {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (accept("or")) {
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private Node parseAnd() throws QueryParsingException {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseNot());
+            while (accept("and")) {
+                operands.add(parseNot());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        private Node parseNot() throws QueryParsingException {
+            if (accept("not")) {
+                return new Not(parseNot());
+            }
+            if (peek().kind == TokenKind.LEFT) {
+                next++;
+                Node node = parseOr();
+                if (peek().kind != TokenKind.RIGHT) {
+                    throw unexpected(peek());
+                }
+                next++;
+                return node;
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() throws QueryParsingException {
+            Token fieldToken = tokens.get(next++);
+            if (fieldToken.kind != TokenKind.WORD) {
+                throw unexpected(fieldToken);
+            }
+            Field field = Field.byName(fieldToken.text);
+            if (field == null) {
+                throw new QueryParsingException("Unknown field \"" + fieldToken.text + "\" at position " +
+                        (fieldToken.position + 1));
+            }
+            Token operatorToken = tokens.get(next++);
+            Operator operator = operatorToken.kind == TokenKind.OPERATOR || operatorToken.kind == TokenKind.WORD
+                    ? Operator.bySymbol(operatorToken.text.toLowerCase()) : null;
+            if (operator == null) {
+                throw unexpected(operatorToken);
+            }
+            Token valueToken = tokens.get(next++);
+            if (valueToken.kind != TokenKind.NUMBER && valueToken.kind != TokenKind.STRING) {
+                throw unexpected(valueToken);
+            }
+            return comparison(field, operator, valueToken);
+        }
+
+        // creates the comparison of a field with a value, checking that they can be compared
+        private static Node comparison(Field field, Operator operator, Token value) throws QueryParsingException {
+            String position = " at position " + (value.position + 1);
+            String mustBe = "The field \"" + field.fieldName + "\" must be compared with a ";
+            if (operator == Operator.CONTAINS && field.type != FieldType.TEXT) {
+                throw new QueryParsingException("The operator \"contains\" only applies to the names" + position);
+            }
+            switch (field.type) {
+                case TEXT:
+                    if (value.kind != TokenKind.STRING) {
+                        throw new QueryParsingException(mustBe + "string in double quotes" + position);
+                    }
+                    return new TextComparison(field, operator, value.text);
+                case DATE:
+                    if (value.kind != TokenKind.STRING) {
+                        throw new QueryParsingException(mustBe + "date in double quotes" + position);
+                    }
+                    return new DateComparison(operator, parseDate(value.text, position));
+                default:
+                    if (value.kind != TokenKind.NUMBER) {
+                        throw new QueryParsingException(mustBe + "number" + position);
+                    }
+                    // the integer fields are compared with the integers exactly
+                    if (field.type == FieldType.INTEGER) {
+                        try {
+                            return new IntegerComparison(field, operator, Long.parseLong(value.text));
+                        } catch (NumberFormatException ignored) {
+                            // not an integer, compared as a fractional number below
+                        }
+                    }
+                    try {
+                        double number = Double.parseDouble(value.text);
+                        if (field.type == FieldType.FRACTIONAL) {
+                            // the coordinates are floats, so e.g. 5.43 has to mean the float closest to it
+                            number = (float) number;
+                        }
+                        if (!Double.isNaN(number)) {
+                            return new NumberComparison(field, operator, number);
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // reported below
+                    }
+                    throw new QueryParsingException("Invalid number \"" + value.text + "\"" + position);
+            }
+        }
+
+        private static LocalDateTime parseDate(String text, String position) throws QueryParsingException {
+            try {
+                return text.contains("T") ? LocalDateTime.parse(text) : LocalDate.parse(text).atStartOfDay();
+            } catch (DateTimeParseException e) {
+                throw new QueryParsingException("Invalid date \"" + text + "\"" + position + ", the date must be " +
+                        "written like \"2024-01-31\" or \"2024-01-31T12:00\"");
+            }
+        }
+    }
+
+    private enum TokenKind {
+        WORD, NUMBER, STRING, OPERATOR, LEFT, RIGHT, END
+    }
+
+    private static final class Token {
+        private final TokenKind kind;
+        private final String text;
+        private final int position; // the index of the first character in the expression
+
+        private Token(TokenKind kind, String text, int position) {
+            this.kind = kind;
+            this.text = text;
+            this.position = position;
+        }
+    }
+
+    private enum FieldType {
+        INTEGER, FRACTIONAL, TEXT, DATE
+    }
+
+    // the fields of the elements that can be used in a query
+    private enum Field {
+        ID("id", FieldType.INTEGER),
+        NAME("name", FieldType.TEXT),
+        CREATION_DATE("creationDate", FieldType.DATE),
+        DISTANCE("distance", FieldType.INTEGER),
+        COORDINATES_X("coordinates.x", FieldType.INTEGER),
+        COORDINATES_Y("coordinates.y", FieldType.INTEGER),
+        FROM_X("from.x", FieldType.INTEGER),
+        FROM_Y("from.y", FieldType.INTEGER),
+        FROM_Z("from.z", FieldType.FRACTIONAL),
+        FROM_NAME("from.name", FieldType.TEXT),
+        TO_X("to.x", FieldType.INTEGER),
+        TO_Y("to.y", FieldType.INTEGER),
+        TO_Z("to.z", FieldType.FRACTIONAL),
+        TO_NAME("to.name", FieldType.TEXT);
+
+        private final String fieldName; // the name of the field in the queries
+        private final FieldType type;
+
+        Field(String fieldName, FieldType type) {
+            this.fieldName = fieldName;
+            this.type = type;
+        }
+
+        private static Field byName(String name) {
+            for (Field field : values()) {
+                if (field.fieldName.equals(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        private long integerValue(Route element) {
+            switch (this) {
+                case ID:
+                    return element.getId();
+                case DISTANCE:
+                    return element.getDistance();
+                case COORDINATES_X:
+                    return element.getCoordinates().getX();
+                case COORDINATES_Y:
+                    return element.getCoordinates().getY();
+                case FROM_X:
+                    return element.getFrom().getX();
+                case FROM_Y:
+                    return element.getFrom().getY();
+                case TO_X:
+                    return element.getTo().getX();
+                case TO_Y:
+                    return element.getTo().getY();
+                default:
+                    throw new IllegalStateException("Not an integer field: " + fieldName);
+            }
+        }
+
+        private double numberValue(Route element) {
+            switch (this) {
+                case FROM_Z:
+                    return element.getFrom().getZ();
+                case TO_Z:
+                    return element.getTo().getZ();
+                default:
+                    return integerValue(element);
+            }
+        }
+
+        private String textValue(Route element) {
+            switch (this) {
+                case NAME:
+                    return element.getName();
+                case FROM_NAME:
+                    return element.getFrom().getName();
+                case TO_NAME:
+                    return element.getTo().getName();
+                default:
+                    throw new IllegalStateException("Not a text field: " + fieldName);
+            }
+        }
+    }
+
+    private enum Operator {
+        EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">="),
+        CONTAINS("contains");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        private static Operator bySymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+
+        // whether the result of comparing a field with a value satisfies the operator
+        private boolean test(int comparison) {
+            switch (this) {
+                case EQUAL:
+                    return comparison == 0;
+                case NOT_EQUAL:
+                    return comparison != 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                case GREATER_OR_EQUAL:
+                    return comparison >= 0;
+                default:
+                    throw new IllegalStateException("Not a comparison: " + symbol);
+            }
+        }
+    }
+
+    // a node of the compiled expression
+    private abstract static class Node {
+        abstract boolean test(Route element);
+    }
+
+    private static final class And extends Node {
+        private final List<Node> operands;
+
+        private And(List<Node> operands) {
+            this.operands = List.copyOf(operands);
+        }
+
+        @Override
+        boolean test(Route element) {
+            for (Node operand : operands) {
+                if (!operand.test(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends Node {
+        private final List<Node> operands;
+
+        private Or(List<Node> operands) {
+            this.operands = List.copyOf(operands);
+        }
+
+        @Override
+        boolean test(Route element) {
+            for (Node operand : operands) {
+                if (operand.test(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        private Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        boolean test(Route element) {
+            return !operand.test(element);
+        }
+    }
+
+    private static final class IntegerComparison extends Node {
+        private final Field field;
+        private final Operator operator;
+        private final long value;
+
+        private IntegerComparison(Field field, Operator operator, long value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Route element) {
+            return operator.test(Long.compare(field.integerValue(element), value));
+        }
+    }
+
+    private static final class NumberComparison extends Node {
+        private final Field field;
+        private final Operator operator;
+        private final double value;
+
+        private NumberComparison(Field field, Operator operator, double value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Route element) {
+            double fieldValue = field.numberValue(element);
+            // not Double.compare, so that the zeros of both signs are equal
+            return operator.test(fieldValue < value ? -1 : fieldValue > value ? 1 : 0);
+        }
+    }
+
+    private static final class TextComparison extends Node {
+        private final Field field;
+        private final Operator operator;
+        private final String value;
+
+        private TextComparison(Field field, Operator operator, String value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Route element) {
+            String fieldValue = field.textValue(element);
+            if (operator == Operator.CONTAINS) {
+                return fieldValue.contains(value);
+            }
+            return operator.test(fieldValue.compareTo(value));
+        }
+    }
+
+    private static final class DateComparison extends Node {
+        private final Operator operator;
+        private final LocalDateTime value;
+
+        private DateComparison(Operator operator, LocalDateTime value) {
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean test(Route element) {
+            return operator.test(element.getCreationDate().compareTo(value));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.route.Route;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@code RouteStore} is the primary storage of the {@link Route} objects maintained by a {@link CollectionKeeper},
+ * holding them by their unique IDs. The keeper builds its secondary indexes on top of the store and takes care of
+ * the synchronization, so an implementation of this interface has to meet the following requirements:
+ * <ul>
+ *     <li>the modifying methods are never called concurrently with each other;</li>
+ *     <li>the reading methods may be called concurrently with a modification, and in that case they are allowed to
+ *     return an inconsistent result or throw a {@link RuntimeException}, but must not corrupt the store (the keeper
+ *     discards such results and repeats the read);</li>
+ *     <li>the snapshots are immutable and are never affected by later modifications.</li>
+ * </ul>
+ * @see HeapRouteStore
+ * @see ColumnarRouteStore
+ * @see MappedRouteStore
+ */
+public interface RouteStore {
+    /**
+     * Returns the element with the given ID.
+     * @param id the ID of the wanted element
+     * @return the element with the given ID or {@code null} if there's no such element in the store
+     */
+    Route get(int id);
+
+    /**
+     * Returns whether the store holds an element with the given ID.
+     * @param id the ID of the wanted element
+     * @return {@code true} if there's an element with such an ID in the store; {@code false} otherwise
+     */
+    boolean contains(int id);
+
+    /**
+     * Puts an element into the store, replacing the element with the same ID if there is one.
+     * @param element the element to be put in the store
+     * @return the replaced element or {@code null} if there was no element with such an ID
+     */
+    Route put(Route element);
+
+    /**
+     * Removes the element with the given ID from the store.
+     * @param id the ID of the element to be removed
+     * @return the removed element or {@code null} if there was no element with such an ID
+     */
+    Route remove(int id);
+
+    /**
+     * Removes all the elements from the store.
+     */
+    void clear();
+
+    /**
+     * Returns the number of elements in the store.
+     * @return the number of elements in the store
+     */
+    int size();
+
+    /**
+     * Returns an immutable snapshot of the elements in the store as they are at the moment of the call.
+     * @return an unmodifiable {@link Collection} of the elements that isn't affected by later modifications
+     */
+    Collection<Route> snapshot();
+
+    /**
+     * Returns the elements the names of which contain the given substring by going through the whole store.
+     * @param substring the string that must be contained in the names of the returned elements
+     * @return a {@link List} of the matching elements
+     */
+    List<Route> scanByName(String substring);
+
+    /**
+     * Passes the ID and the distance of every element in the store to the consumer. The default implementation goes
+     * through a snapshot, and the stores that don't keep the {@code Route} objects themselves may do it without
+     * creating them.
+     * @param consumer the consumer that accepts the IDs and the distances
+     */
+    default void forEachDistance(DistanceConsumer consumer) {
+        snapshot().forEach(element -> consumer.accept(element.getId(), element.getDistance()));
+    }
+
+    /**
+     * Passes the ID and the name of every element in the store to the consumer. The default implementation goes
+     * through a snapshot, and the stores that don't keep the {@code Route} objects themselves may do it without
+     * creating them.
+     * @param consumer the consumer that accepts the IDs and the names
+     */
+    default void forEachName(NameConsumer consumer) {
+        snapshot().forEach(element -> consumer.accept(element.getId(), element.getName()));
+    }
+
+    /**
+     * Passes the ID and the current coordinates of every element in the store to the consumer. The default
+     * implementation goes through a snapshot, and the stores that don't keep the {@code Route} objects themselves may
+     * do it without creating them.
+     * @param consumer the consumer that accepts the IDs and the coordinates
+     */
+    default void forEachCoordinates(CoordinatesConsumer consumer) {
+        snapshot().forEach(element -> consumer.accept(element.getId(), element.getCoordinates().getX(),
+                element.getCoordinates().getY()));
+    }
+
+    /**
+     * Passes the ID and the points of the starting and the destination locations of every element in the store to the
+     * consumer. The default implementation goes through a snapshot, and the stores that don't keep the {@code Route}
+     * objects themselves may do it without creating them.
+     * @param consumer the consumer that accepts the IDs and the points
+     */
+    default void forEachEndpoints(EndpointsConsumer consumer) {
+        snapshot().forEach(element -> consumer.accept(element.getId(), element.getFrom().getX(),
+                element.getFrom().getY(), element.getFrom().getZ(), element.getTo().getX(), element.getTo().getY(),
+                element.getTo().getZ()));
+    }
+
+    /**
+     * A consumer of the IDs and the distances of the elements, see {@link #forEachDistance(DistanceConsumer)}.
+     */
+    @FunctionalInterface
+    interface DistanceConsumer {
+        /**
+         * Accepts the ID and the distance of an element.
+         * @param id the ID of the element
+         * @param distance the distance of the element
+         */
+        void accept(int id, int distance);
+    }
+
+    /**
+     * A consumer of the IDs and the names of the elements, see {@link #forEachName(NameConsumer)}.
+     */
+    @FunctionalInterface
+    interface NameConsumer {
+        /**
+         * Accepts the ID and the name of an element.
+         * @param id the ID of the element
+         * @param name the name of the element
+         */
+        void accept(int id, String name);
+    }
+
+    /**
+     * A consumer of the IDs and the current coordinates of the elements, see
+     * {@link #forEachCoordinates(CoordinatesConsumer)}.
+     */
+    @FunctionalInterface
+    interface CoordinatesConsumer {
+        /**
+         * Accepts the ID and the current coordinates of an element.
+         * @param id the ID of the element
+         * @param x the <i>X</i> coordinate of the element
+         * @param y the <i>Y</i> coordinate of the element
+         */
+        void accept(int id, long x, long y);
+    }
+
+    /**
+     * A consumer of the IDs and the points of the locations of the elements, see
+     * {@link #forEachEndpoints(EndpointsConsumer)}.
+     */
+    @FunctionalInterface
+    interface EndpointsConsumer {
+        /**
+         * Accepts the ID and the points of the starting and the destination locations of an element.
+         * @param id the ID of the element
+         * @param fromX the <i>X</i> coordinate of the starting location
+         * @param fromY the <i>Y</i> coordinate of the starting location
+         * @param fromZ the <i>Z</i> coordinate of the starting location
+         * @param toX the <i>X</i> coordinate of the destination
+         * @param toY the <i>Y</i> coordinate of the destination
+         * @param toZ the <i>Z</i> coordinate of the destination
+         */
+        void accept(int id, long fromX, long fromY, float fromZ, long toX, long toY, float toZ);
+    }
+}
@@ -0,0 +1,178 @@
+package ru.bitte.lab5;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An object of this class holds the settings of the program, which are read from the environment variables in the same
+ * way as the name of the collection file. The supported variables are described in the table below, and all of them
+ * are optional.
+ * <br>
+ * <table border="1">
+ *     <caption>Settings</caption>
+ *   <tr>
+ *     <td> COLLECTION_STORAGE </td>
+ *     <td> "heap" (the default) to keep the elements as objects, or "columnar" to keep them in compact primitive
+ *     columns (see {@link ColumnarRouteStore}) </td>
+ *   </tr>
+ *   <tr>
+ *     <td> COLLECTION_LOADING </td>
+ *     <td> "sequential" to read the collection file on a single thread, "parallel" to split it into chunks read on
+ *     all the available cores (see {@link Parser#readFromFileInParallel}), "auto" (the default) to read the files
+ *     of at least 64 MB in parallel, or "lazy" to map a snapshot file into memory and create the elements only when
+ *     they're requested (see {@link MappedRouteStore}), in which case the parse cache of an XML file is mapped in the
+ *     same way, or the file is read as in the "auto" mode if it isn't cached </td>
+ *   </tr>
+ *   <tr>
+ *     <td> COLLECTION_CACHE </td>
+ *     <td> "on" (the default) to keep the elements parsed from an XML file in a cache next to it and read them from
+ *     the cache while the file stays the same (see {@link ParseCache}), or "off" to always parse the file </td>
+ *   </tr>
+ *   <tr>
+ *     <td> COLLECTION_JOURNAL </td>
+ *     <td> the base name of the journal files, which turns on journaling of every modification of the collection
+ *     (see {@link Journal}). Once the journal has been written, the collection is restored from it on startup, and
+ *     the collection file is ignored </td>
+ *   </tr>
+ *   <tr>
+ *     <td> COLLECTION_AUTOSAVE_CHANGES </td>
+ *     <td> the number of modifications after which the collection is saved automatically (see {@link Autosave}) </td>
+ *   </tr>
+ *   <tr>
+ *     <td> COLLECTION_AUTOSAVE_SECONDS </td>
+ *     <td> the number of seconds after which the modified collection is saved automatically. If either this or the
+ *     previous variable is set, the modifications left unsaved are also saved on exit. The collection is saved
+ *     automatically as a snapshot, so a collection loaded from an XML file is written to a new snapshot the first
+ *     time, and only the changes are appended to its delta file after that </td>
+ *   </tr>
+ * </table>
+ */
+public class Settings {
+    private static final long PARALLEL_LOADING_THRESHOLD = 64L << 20; // the minimum file size for the auto mode
+    private final boolean columnarStorage;
+    private final String loading;
+    private final boolean parseCache;
+    private final File journal;
+    private final long autosaveModifications;
+    private final long autosaveInterval;
+
+    /**
+     * Constructs a {@code Settings} object from the given variables.
+     * @param variables the variables by their names, e.g. {@link System#getenv()}
+     * @throws IllegalArgumentException if a variable has an unsupported value
+     */
+    public Settings(Map<String, String> variables) {
+        String storage = variables.getOrDefault("COLLECTION_STORAGE", "heap").strip();
+        if (storage.equals("columnar")) {
+            columnarStorage = true;
+        } else if (storage.equals("heap") || storage.equals("")) {
+            columnarStorage = false;
+        } else {
+            throw new IllegalArgumentException("Unknown storage kind \"" + storage + "\" in COLLECTION_STORAGE");
+        }
+        loading = variables.getOrDefault("COLLECTION_LOADING", "auto").strip();
+        if (!List.of("auto", "sequential", "parallel", "lazy").contains(loading)) {
+            throw new IllegalArgumentException("Unknown loading mode \"" + loading + "\" in COLLECTION_LOADING");
+        }
+        String cache = variables.getOrDefault("COLLECTION_CACHE", "on").strip();
+        if (cache.equals("on") || cache.equals("")) {
+            parseCache = true;
+        } else if (cache.equals("off")) {
+            parseCache = false;
+        } else {
+            throw new IllegalArgumentException("Unknown cache mode \"" + cache + "\" in COLLECTION_CACHE");
+        }
+        String journalName = variables.getOrDefault("COLLECTION_JOURNAL", "").strip();
+        journal = journalName.equals("") ? null : new File(journalName);
+        autosaveModifications = readCount(variables, "COLLECTION_AUTOSAVE_CHANGES");
+        autosaveInterval = readCount(variables, "COLLECTION_AUTOSAVE_SECONDS");
+    }
+
+    /**
+     * Returns whether a collection file should be read in parallel according to the settings.
+     * @param file the collection file
+     * @return {@code true} if the file should be read in parallel; {@code false} otherwise
+     */
+    public boolean isParallelLoading(File file) {
+        return switch (loading) {
+            case "parallel" -> true;
+            case "sequential" -> false;
+            default -> file.length() >= PARALLEL_LOADING_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1;
+        };
+    }
+
+    /**
+     * Returns whether a snapshot file should be mapped into memory instead of being read according to the settings.
+     * @return {@code true} if the elements should only be created when they're requested; {@code false} otherwise
+     */
+    public boolean isLazyLoading() {
+        return loading.equals("lazy");
+    }
+
+    /**
+     * Returns whether the elements parsed from an XML file should be cached according to the settings.
+     * @return {@code true} if the parse cache is used; {@code false} otherwise
+     */
+    public boolean isParseCache() {
+        return parseCache;
+    }
+
+    /**
+     * Returns the base file of the journal, if journaling is turned on.
+     * @return the base {@link File} of the journal, or {@code null} if the collection isn't journaled
+     */
+    public File getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns whether the collection should be saved automatically according to the settings.
+     * @return {@code true} if either the autosave modifications or the autosave interval is set; {@code false}
+     * otherwise
+     */
+    public boolean isAutosave() {
+        return autosaveModifications > 0 || autosaveInterval > 0;
+    }
+
+    /**
+     * Returns the number of modifications after which the collection should be saved automatically.
+     * @return the number of modifications, or 0 if the collection isn't saved by the number of modifications
+     */
+    public long getAutosaveModifications() {
+        return autosaveModifications;
+    }
+
+    /**
+     * Returns the number of seconds after which the modified collection should be saved automatically.
+     * @return the number of seconds, or 0 if the collection isn't saved by time
+     */
+    public long getAutosaveInterval() {
+        return autosaveInterval;
+    }
+
+    /**
+     * Returns a new store for the collection according to the settings.
+     * @return an empty {@link RouteStore}
+     */
+    public RouteStore createStore() {
+        return columnarStorage ? new ColumnarRouteStore() : new HeapRouteStore();
+    }
+
+    // reads a positive number from a variable, or returns 0 if the variable isn't set
+    private static long readCount(Map<String, String> variables, String name) {
+        String value = variables.getOrDefault(name, "").strip();
+        if (value.equals("")) {
+            return 0;
+        }
+        try {
+            long count = Long.parseLong(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // reported below together with the non-positive numbers
+        }
+        throw new IllegalArgumentException("\"" + value + "\" in " + name + " is not a positive number");
+    }
+}
@@ -1,14 +1,13 @@
 package ru.bitte.lab5;
 
-import org.xml.sax.SAXException;
 import ru.bitte.lab5.commands.*;
 import ru.bitte.lab5.exceptions.*;
 import ru.bitte.lab5.route.Coordinates;
+import ru.bitte.lab5.route.Interner;
 import ru.bitte.lab5.route.Location;
 import ru.bitte.lab5.route.Route;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
@@ -38,12 +37,21 @@ import java.util.*;
  *     <td> execute_script file_name </td> <td> read and run a script from the specified file </td>
  *   </tr>
  *   <tr>
- *     <td> exit </td> <td> exit the program without saving the collection </td>
+ *     <td> exit </td>
+ *     <td> exit the program without saving the collection, unless it's saved automatically (see {@link Autosave}) </td>
  *   </tr>
  *   <tr>
  *     <td> filter_contains_name name </td> <td> output elements the names of which contain a given substring </td>
  *   </tr>
  *   <tr>
+ *     <td> filter_in_box x1 y1 x2 y2 </td>
+ *     <td> output elements the current coordinates of which are inside a given rectangle </td>
+ *   </tr>
+ *   <tr>
+ *     <td> filter_near x y r </td>
+ *     <td> output elements the current coordinates of which are within a given distance from a point </td>
+ *   </tr>
+ *   <tr>
  *     <td> help </td> <td> list all available commands </td>
  *   </tr>
  *   <tr>
@@ -53,7 +61,17 @@ import java.util.*;
  *     <td> info </td> <td> output information about the collection </td>
  *   </tr>
  *   <tr>
- *     <td> print_ascending </td> <td> output the collection elements in the ascending order </td>
+ *     <td> nearest_from x y z k </td>
+ *     <td> output k elements the starting locations of which are the nearest to a given point </td>
+ *   </tr>
+ *   <tr>
+ *     <td> nearest_to x y z k </td>
+ *     <td> output k elements the destinations of which are the nearest to a given point </td>
+ *   </tr>
+ *   <tr>
+ *     <td> print_ascending [limit] [offset] </td>
+ *     <td> output the collection elements in the ascending order, or a page of "limit" elements after "offset" ones
+ *     ("print_ascending next" outputs the next page) </td>
  *   </tr>
  *   <tr>
  *     <td> print_unique_distance </td> <td> output all the unique "distance" field values </td>
@@ -66,41 +84,125 @@ import java.util.*;
  *     <td> remove all of the collection elements the distance of which exceeds the given element's </td>
  *   </tr>
  *   <tr>
- *     <td> save </td> <td> save the collection to a file </td>
+ *     <td> save [--full|file] </td>
+ *     <td> save the collection to a file, or only the changes since the last save if it was saved to or loaded from a
+ *     snapshot, unless "--full" is given; given a file, save the collection to it in the format of its extension </td>
  *   </tr>
  *   <tr>
- *     <td> show </td> <td> output all of the collection elements in the string representation </td>
+ *     <td> show [limit] [offset] </td>
+ *     <td> output all of the collection elements in the string representation, or a page of "limit" elements after
+ *     "offset" ones ("show next" outputs the next page) </td>
  *   </tr>
  *   <tr>
  *     <td> update id {element} </td> <td>update the values of the collection element provided by the ID </td>
  *   </tr>
+ *   <tr>
+ *     <td> where expression </td>
+ *     <td> output elements matching a given expression over their fields (see {@link RouteQuery}), e.g.
+ *     distance &gt; 50 and from.name = "depot" </td>
+ *   </tr>
  * </table>
  */
 public class Terminal {
     private final Scanner in;
+    private final Output output; // the buffered output of the commands, flushed after every command
     @SuppressWarnings("FieldCanBeLocal")
     private final CollectionKeeper collection;
     private final Map<String, Command> commands;
     private final Deque<String> history;
+    private final Journal journal; // the journal of the modifications, or null if they aren't journaled
+    private final CollectionSaver saver;
+    private final Autosave autosave; // saves the collection automatically, or null if it's only saved by the command
 
     /**
-     * Constructs an instance of the {@code Terminal} class, reading {@link Route} elements from an XML file and adding
-     * them to a collection.
+     * Constructs an instance of the {@code Terminal} class with the default settings, reading {@link Route} elements
+     * from an XML file and adding them to a collection.
      * @param file the {@code File} object representing an XML file that contains properly formatted representations
      * of {@link Route} objects, i.e. elements, that get put into a collection and get later interacted with by commands.
      * @throws ElementParsingInFileException if an element couldn't be properly parsed from a file, including logical
      * and formatting errors
      * @throws IOException if an input/output exception occurred
-     * @throws SAXException if a SAX exception occurred
-     * @throws ParserConfigurationException if a parser configuration exception occurred
-     * @throws TransformerConfigurationException if an XML transformer exception occurred
+     * @throws XMLStreamException if the file isn't a well-formed XML document
      */
-    public Terminal(File file) throws IOException, SAXException, ParserConfigurationException,
-            ElementParsingInFileException, TransformerConfigurationException {
+    public Terminal(File file) throws IOException, XMLStreamException, ElementParsingInFileException {
+        this(file, new Settings(Map.of()));
+    }
+
+    /**
+     * Constructs an instance of the {@code Terminal} class, reading {@link Route} elements from an XML file and adding
+     * them to a collection. A file with the {@value BinarySnapshot#EXTENSION} extension is read as a binary snapshot
+     * instead (see {@link BinarySnapshot}), and the collection is then saved in the same format until it's saved to a
+     * file of the other one. If the settings turn on the journal and it has already been written, the collection is
+     * restored from the journal instead of the file (see {@link Journal}), and the following modifications are
+     * journaled. If the settings turn on the lazy loading, a snapshot file is mapped into memory instead of being read
+     * (see {@link MappedRouteStore}). The elements parsed from an XML file are cached next to it, and read from the
+     * cache while the file stays the same (see {@link ParseCache}).
+     * @param file the {@code File} object representing an XML file that contains properly formatted representations
+     * of {@link Route} objects, i.e. elements, that get put into a collection and get later interacted with by commands.
+     * @param settings the settings of the program
+     * @throws ElementParsingInFileException if an element couldn't be properly parsed from a file, including logical
+     * and formatting errors
+     * @throws IOException if an input/output exception occurred, or the snapshot file is damaged
+     * @throws XMLStreamException if the file isn't a well-formed XML document
+     */
+    public Terminal(File file, Settings settings) throws IOException, XMLStreamException,
+            ElementParsingInFileException {
         in = new Scanner(System.in);
+        output = new Output(System.out);
         Parser parser = new Parser();
-        // initialize the collection keeper with a file
-        collection = new CollectionKeeper(parser.readFromFile(file));
+        BinarySnapshot snapshot = new BinarySnapshot();
+        boolean binary = BinarySnapshot.isSnapshot(file);
+        journal = settings.getJournal() == null ? null : new Journal(settings.getJournal(), snapshot);
+        boolean recovering = journal != null && journal.hasCheckpoint();
+        // an XML file is read from its parse cache while it stays the same, unless there is a journal
+        ParseCache cache = binary || recovering || !settings.isParseCache() ? null : new ParseCache(file, snapshot);
+        MappedSnapshot cached = cache == null ? null : cache.open(); // already verified, so it isn't opened again
+        File source = binary ? file : cached != null ? cache.getFile() : null; // the snapshot to read the elements from
+        boolean mapped = source != null && settings.isLazyLoading() && !recovering;
+        if (mapped) {
+            // the elements stay in the mapped file until they're requested
+            collection = new CollectionKeeper(cached != null ? new MappedRouteStore(source, cached)
+                    : new MappedRouteStore(source));
+        } else {
+            collection = new CollectionKeeper(List.of(), settings.createStore());
+        }
+        // the snapshot the following changes can be saved as a delta to
+        File base = binary && !recovering ? file : null;
+        // stream the elements from a file into the collection keeper, unless there is a journal or it's mapped
+        if (recovering && journal.recover(collection)) {
+            System.out.println("Restored the collection from the journal");
+        } else if (mapped) {
+            System.out.println("Mapped the collection from: " + source);
+        } else if (cached != null) {
+            snapshot.readFromFile(source, cached, collection::addElement);
+        } else if (source != null) {
+            snapshot.readFromFile(source, collection::addElement);
+        } else {
+            if (settings.isParallelLoading(file)) {
+                parser.readFromFileInParallel(file, collection::addElements);
+            } else {
+                parser.readFromFile(file, collection::addElement);
+            }
+            if (cache != null) {
+                try {
+                    cache.write(collection.snapshot());
+                } catch (IOException e) {
+                    System.out.println("Couldn't write the parse cache because:\n" + e.getMessage());
+                }
+            }
+        }
+        collection.markSaved(collection.getModificationCount()); // the loaded collection is the saved one
+        if (journal != null) {
+            journal.start(collection);
+        }
+        saver = new CollectionSaver(collection, parser, snapshot, binary, base);
+        // the collection is saved automatically as a snapshot, which has to be written first if there is none
+        if (settings.isAutosave() && base == null) {
+            System.out.println("The collection is saved automatically as a snapshot, the first save writes it to a " +
+                    "new file");
+        }
+        autosave = settings.isAutosave() ? new Autosave(collection, saver, settings.getAutosaveModifications(),
+                settings.getAutosaveInterval()) : null;
         // initialize the commands by first getting them in a hashset and then adding to a hashmap in a loop
         history = new ArrayDeque<>(15);
         commands = new HashMap<>();
@@ -111,16 +213,21 @@ public class Terminal {
         tempComs.add(new ExecuteScriptCommand(this));
         tempComs.add(new ExitCommand());
         tempComs.add(new FilterCommand(collection));
+        tempComs.add(new FilterInBoxCommand(collection));
+        tempComs.add(new FilterNearCommand(collection));
         tempComs.add(new HelpCommand(commands));
         tempComs.add(new HistoryCommand(history));
         tempComs.add(new InfoCommand(collection));
+        tempComs.add(new NearestFromCommand(collection));
+        tempComs.add(new NearestToCommand(collection));
         tempComs.add(new PrintAscendingCommand(collection));
         tempComs.add(new PrintUniqueCommand(collection));
         tempComs.add(new RemoveByIDCommand(collection));
         tempComs.add(new RemoveGreaterCommand(collection));
-        tempComs.add(new SaveCommand(collection, parser));
+        tempComs.add(new SaveCommand(saver));
         tempComs.add(new ShowCommand(collection));
         tempComs.add(new UpdateCommand(collection));
+        tempComs.add(new WhereCommand(collection));
         tempComs.forEach(command -> commands.put(command.getName(), command));
     }
 
@@ -141,7 +248,9 @@ public class Terminal {
                  System.out.print(e.getMessage().equals("") ? "> " : e.getMessage() + "\n> ");
                  continue;
              }
-             command.run();
+             command.run(output);
+             output.flush(); // the command's output is written in batches, the rest of it goes before the arrow
+             syncJournal();
              addToHistory(command.getName());
              if (command instanceof ExitCommand) {
                  break;
@@ -149,6 +258,21 @@ public class Terminal {
              System.out.print("> ");
          }
         in.close();
+        try {
+            if (autosave != null) {
+                autosave.close(); // saves the modifications left unsaved
+            }
+            saver.close(); // lets the saves in progress finish
+        } catch (IOException e) {
+            System.out.println("Couldn't finish saving because:\n" + e.getMessage());
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.out.println("Couldn't write the changes to the journal because:\n" + e.getMessage());
+            }
+        }
     }
 
     /**
@@ -168,14 +292,36 @@ public class Terminal {
         if (!commands.containsKey(commandName)) { // verifies that a used command exists
             throw new CommandParsingException("Unknown command. Please see \"help\" for the list of commands.");
         }
+        Command command = commands.get(commandName); // retrieves a command object
+        // an expression command takes the whole rest of the line, spaces included
+        if (command instanceof ExpressionCommand) {
+            String expression = rawCommand.strip().substring(commandName.length()).strip();
+            if (expression.equals("")) {
+                throw new CommandParsingException("Missing command argument. Please see \"help\" on command usage.");
+            }
+            ((ExpressionCommand) command).passExpression(expression);
+            return command;
+        }
+        // a multi-argument command takes all of its required arguments and any of the optional ones
+        if (command instanceof MultiArgumentCommand) {
+            MultiArgumentCommand multiArgumentCommand = (MultiArgumentCommand) command;
+            int argumentCount = splitCommand.length - 1;
+            if (argumentCount < multiArgumentCommand.getRequiredArgumentCount()
+                    || argumentCount > multiArgumentCommand.getArgumentNames().size()) {
+                throw new CommandParsingException("Wrong number of arguments provided. Please see \"help\" on " +
+                        "command usage.");
+            }
+            multiArgumentCommand.passArguments(Arrays.copyOfRange(splitCommand, 1, splitCommand.length));
+            return command;
+        }
         if (splitCommand.length > 2) { // verifies the number of arguments
             throw new CommandParsingException("Too many arguments provided. Please see \"help\" on command usage.");
         }
         // if an argument was provided, it's set, and if it wasn't, the argument variable is set to an empty string
         String argument = splitCommand.length == 2 ? splitCommand[1] : "";
-        Command command = commands.get(commandName); // retrieves a command object
         // makes sure an argument-requiring command has been provided one
-        if (argument.equals("") && (command instanceof ArgumentCommand || command instanceof IDCommand)) {
+        if (argument.equals("") && ((command instanceof ArgumentCommand && !(command instanceof OptionalArgumentCommand))
+                || command instanceof IDCommand)) {
             throw new CommandParsingException("Missing command argument. Please see \"help\" on command usage.");
         }
         // makes sure an argument-non-requiring command isn't provided one
@@ -229,7 +375,7 @@ public class Terminal {
      * @throws ElementParsingFromCommandException if an incorrect input was entered by the user
      * @throws ElementConstructionException if there was a trouble constructing objects from user input
      * @see Route#Route(String, Coordinates, Location, Location)  Route
-     * @see Location#Location(Long, Long, float, String)  Location
+     * @see Location#of(long, long, float, String)  Location
      */
     public Route generateRoute() throws ElementParsingFromCommandException, ElementConstructionException {
         // reader for coordinates that separates values by a comma
@@ -237,12 +383,12 @@ public class Terminal {
         System.out.println("Assembling a Route object...");
         // get name
         System.out.print("Enter a name (can't be empty): ");
-        String name = in.nextLine();
+        String name = Interner.NAMES.intern(in.nextLine());
         // get coordinates
         Coordinates coords;
         System.out.println("Enter X and Y coordinates of the current position separated by a comma:");
         long[] coordsXY = readXY(inSep);
-        coords = new Coordinates(coordsXY[0], coordsXY[1]);
+        coords = Coordinates.of(coordsXY[0], coordsXY[1]);
         verifyEndOfLine(inSep);
         // get from
         Location from = newLocation(inSep, "starting");
@@ -252,6 +398,17 @@ public class Terminal {
         return new Route(name, coords, from, to);
     }
 
+    // waits until the modifications made by a command are written to the journal, if there is one
+    private void syncJournal() {
+        if (journal != null) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                System.out.println("Couldn't write the changes to the journal because:\n" + e.getMessage());
+            }
+        }
+    }
+
     // a method for reading the first two values input on a line separated by commas as long
     private long[] readXY(Scanner in) throws ElementParsingFromCommandException {
         long[] xy = new long[2];
@@ -286,7 +443,7 @@ public class Terminal {
         verifyEndOfLine(in);
         System.out.println("Enter that location's name (leave blank for the default):");
         String name = in.nextLine();
-        return new Location(locXY[0], locXY[1], locZ, name);
+        return Location.of(locXY[0], locXY[1], locZ, name);
     }
 
     // checks if a string is an integer
@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.route.Route;
 
@@ -9,7 +10,7 @@ import java.util.Objects;
 /**
  * An object of this class is used in {@link Terminal} as a command that creates and adds a new {@link Route} object to
  * the maintained collection of objects. The object of this class is used by supplying a {@code Route} object through
- * the method of the parent {@link ElementCommand} class and then running by the {@code run()} method.
+ * the method of the parent {@link ElementCommand} class and then running by the {@code run(Output)} method.
  * @see ElementCommand#passElement(Route)
  * @implNote An element command
  */
@@ -26,8 +27,8 @@ public class AddCommand extends ElementCommand {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         collection.addElement(Objects.requireNonNull(getElement()));
-        System.out.printf("Added %s to the collection\n", getElement().getName());
+        output.printf("Added %s to the collection\n", getElement().getName());
     }
 }
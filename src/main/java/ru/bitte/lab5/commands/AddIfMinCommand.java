@@ -1,17 +1,17 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.route.Route;
 
-import java.util.Collections;
 import java.util.Objects;
 
 /**
  * An object of this class is used in {@link Terminal} as a command that creates and adds a new {@link Route} object to
  * the maintained collection of objects if the object's distance value is less than the minimum distance value in the
  * collection. The object of this class is used by supplying a {@code Route} object through the method of the parent
- * {@link ElementCommand} class and then running by the {@code run()} method.
+ * {@link ElementCommand} class and then running by the {@code run(Output)} method.
  * @see ElementCommand#passElement(Route)
  * @implNote An element command
  */
@@ -29,13 +29,13 @@ public class AddIfMinCommand extends ElementCommand {
     }
 
     @Override
-    public void run() {
-        Route min = Collections.min(collection.copySorted());
-        if (getElement().getDistance() < min.getDistance()) {
+    public void run(Output output) {
+        if (collection.getCollectionSize() == 0
+                || getElement().getDistance() < collection.getMinElement().getDistance()) {
             collection.addElement(Objects.requireNonNull(getElement()));
-            System.out.printf("Added %s to the collection\n", getElement().getName());
+            output.printf("Added %s to the collection\n", getElement().getName());
         } else {
-            System.out.println("Didn't add the element since its distance value was greater than " +
+            output.println("Didn't add the element since its distance value was greater than " +
                     "the minimum one in the collection");
         }
     }
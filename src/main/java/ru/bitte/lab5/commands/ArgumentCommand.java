@@ -3,7 +3,7 @@ package ru.bitte.lab5.commands;
 /**
  * An abstract class that extends the abstract class {@link Command} used for implementing commands that need a
  * {@code String} argument to run. It provides getter and setter methods used for passing a string when preparing the
- * command to run and getting it in the implementation of the {@code run()} method.
+ * command to run and getting it in the implementation of the {@code run(Output)} method.
  */
 public abstract class ArgumentCommand extends Command {
     private String argument;
@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 
 import java.util.Scanner;
@@ -8,7 +9,7 @@ import java.util.Scanner;
 /**
  * An object of this class is used in {@link Terminal} as a command that removes every element in the maintained
  * collection. Before clearing the collection, the used will be prompted with confirmation of clearing the collection.
- * The object of this class is used by running the {@code run()} method.
+ * The object of this class is used by running the {@code run(Output)} method.
  * @implNote A no-argument command
  */
 public class ClearCommand extends Command {
@@ -24,15 +25,16 @@ public class ClearCommand extends Command {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         Scanner in = new Scanner(System.in);
-        System.out.print("Are you sure you want to do this? [Y/n]: ");
+        output.print("Are you sure you want to do this? [Y/n]: ");
+        output.flush(); // the question must be seen before the answer is read
         String response = in.nextLine();
         if (response.equals("Y")) {
             collection.clearCollection();
-            System.out.println("Successfully cleared the collection.");
+            output.println("Successfully cleared the collection.");
         } else {
-            System.out.println("Canceled the command.");
+            output.println("Canceled the command.");
         }
     }
 }
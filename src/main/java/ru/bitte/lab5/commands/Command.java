@@ -1,8 +1,10 @@
 package ru.bitte.lab5.commands;
 
+import ru.bitte.lab5.Output;
+
 /**
  * An abstract class from which every single command implementation and other abstract command interfaces inherit.
- * This class provides the interface for the {@code run()} method and defines the initialization and use of
+ * This class provides the interface for the {@code run(Output)} method and defines the initialization and use of
  * the {@code name} and {@code description} fields.
  */
 public abstract class Command {
@@ -21,8 +23,10 @@ public abstract class Command {
 
     /**
      * Runs the command.
+     * @param output the {@link Output} the command writes its messages and elements to, which is left for the caller
+     * to flush
      */
-    public abstract void run();
+    public abstract void run(Output output);
 
     /**
      * Returns the name of the command
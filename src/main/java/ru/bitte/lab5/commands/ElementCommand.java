@@ -5,8 +5,8 @@ import ru.bitte.lab5.route.Route;
 /**
  * An abstract class that extends the abstract class {@link Command} used for implementing commands that need a
  * {@link Route} object to run. It provides getter and setter methods used for passing a {@code Route} when preparing
- * the command to run and getting it in the implementation of the {@code run()} method. The command user is prompted
- * with a {@code Route} creation dialog that is called during the parsing of the command in terminal.
+ * the command to run and getting it in the implementation of the {@code run(Output)} method. The command user is
+ * prompted with a {@code Route} creation dialog that is called during the parsing of the command in terminal.
  */
 public abstract class ElementCommand extends Command {
     private Route element;
@@ -1,5 +1,6 @@
 package ru.bitte.lab5.commands;
 
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.exceptions.CommandParsingException;
 
@@ -12,7 +13,7 @@ import java.util.Scanner;
  * The file must contain commands in the same format as they are run in the terminal, with a single command on a line
  * in the file. If a command in the file cannot be run, the execution moves onto the next command in the file.
  * The object of this class is used by supplying the name of the file containing a script through the setter method of
- * the parent class {@link ArgumentCommand} and running by the {@code run()} method.
+ * the parent class {@link ArgumentCommand} and running by the {@code run(Output)} method.
  * @see ArgumentCommand#passArgument(String)
  * @implNote An argument command
  */
@@ -30,33 +31,35 @@ public class ExecuteScriptCommand extends ArgumentCommand {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         recursionDepth++;
         if (recursionDepth <= 2) {
-            System.out.printf("Executing %s...\n", getArgument());
+            output.printf("Executing %s...\n", getArgument());
             try (Scanner script = new Scanner(new File(getArgument()))) {
                 // scans the next line in the file
                 while (script.hasNextLine()) {
                     String commandRaw = script.nextLine();
+                    // parsing may write to the console directly, so the output of the previous commands goes first
+                    output.flush();
                     try {
                         // parses the command using the terminal and runs it
                         Command command = terminal.parseCommand(commandRaw);
                         terminal.addToHistory(command.getName());
-                        command.run();
+                        command.run(output);
                     } catch (CommandParsingException e) {
                         // skips the command if it can't be executed (caught an exception while parsing)
-                        System.out.println("Can't parse the following command: " + commandRaw);
-                        System.out.println("Moving onto the next one...");
+                        output.println("Can't parse the following command: " + commandRaw);
+                        output.println("Moving onto the next one...");
                     }
                 }
             } catch (FileNotFoundException e) {
-                System.out.println("No file with such a name found. Please try again with an existing file.");
+                output.println("No file with such a name found. Please try again with an existing file.");
             }
-            System.out.println("Finished the script execution.");
+            output.println("Finished the script execution.");
             recursionDepth--;
         } else {
-            System.out.println("Can't execute several self-executing scripts, the recursion is too deep!");
-            System.out.println("Skipping this script call...");
+            output.println("Can't execute several self-executing scripts, the recursion is too deep!");
+            output.println("Skipping this script call...");
             recursionDepth--;
         }
     }
@@ -0,0 +1,39 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.exceptions.CommandParsingException;
+
+/**
+ * An abstract class that extends the abstract class {@link Command} used for implementing commands that take an
+ * expression as their argument. Unlike the arguments of the other commands, the expression is the whole rest of the
+ * line after the command name, spaces included, and the command checks and compiles it itself when it's passed, so
+ * that a command with an invalid expression isn't run at all.
+ */
+public abstract class ExpressionCommand extends Command {
+    private final String argumentName;
+
+    /**
+     * Initializes the fields with the provided parameters.
+     * @param name the name of the command
+     * @param argumentName the name of the command's expression argument
+     * @param desc the command description
+     */
+    public ExpressionCommand(String name, String argumentName, String desc) {
+        super(name, desc);
+        this.argumentName = argumentName;
+    }
+
+    /**
+     * Returns the name of the command's expression argument
+     * @return {@code String} representing the argument's name
+     */
+    public String getArgumentName() {
+        return argumentName;
+    }
+
+    /**
+     * Sets the expression with which the command will run the next time
+     * @param expression the expression, not empty
+     * @throws CommandParsingException if the expression is invalid
+     */
+    public abstract void passExpression(String expression) throws CommandParsingException;
+}
@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.route.Route;
 
@@ -11,7 +12,7 @@ import java.util.Objects;
  * An object of this class is used in {@link Terminal} as a command that filters the elements of the collection by their
  * names and prints the filtered elements' formatted representations. The object of this class is used by supplying the
  * string that must be contained in the filtered elements' names through the setter method of the parent class
- * {@link ArgumentCommand} and running by the {@code run()} method.
+ * {@link ArgumentCommand} and running by the {@code run(Output)} method.
  * @see ArgumentCommand#passArgument(String)
  * @implNote An argument command
  */
@@ -29,9 +30,9 @@ public class FilterCommand extends ArgumentCommand {
     }
 
     @Override
-    public void run() {
-        System.out.printf("Elements in the collection containing \"%s\" in the name:\n", getArgument());
+    public void run(Output output) {
+        output.printf("Elements in the collection containing \"%s\" in the name:\n", getArgument());
         List<Route> filteredRoutes = collection.filterByString(Objects.requireNonNull(getArgument()));
-        filteredRoutes.stream().map(Route::format).forEach(System.out::println);
+        filteredRoutes.forEach(output::printlnFormatted);
     }
 }
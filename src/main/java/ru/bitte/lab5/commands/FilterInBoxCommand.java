@@ -0,0 +1,52 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
+import ru.bitte.lab5.Terminal;
+import ru.bitte.lab5.exceptions.CommandParsingException;
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An object of this class is used in {@link Terminal} as a command that filters the elements of the collection by their
+ * current coordinates and prints the formatted representations of the elements inside a given rectangle, including its
+ * borders. The object of this class is used by supplying the coordinates of two opposite corners of the rectangle
+ * through the method {@code passArguments(String[])} and running by the {@code run(Output)} method.
+ * @see MultiArgumentCommand#passArguments(String[])
+ * @implNote A multi-argument command
+ */
+public class FilterInBoxCommand extends MultiArgumentCommand {
+    private final CollectionKeeper collection;
+    private long x1;
+    private long y1;
+    private long x2;
+    private long y2;
+
+    /**
+     * Constructs a {@code FilterInBoxCommand} object.
+     * @param collection the reference to a collection keeper of elements
+     */
+    public FilterInBoxCommand(CollectionKeeper collection) {
+        super("filter_in_box", List.of("x1", "y1", "x2", "y2"), "output elements the current coordinates of " +
+                "which are inside a given rectangle");
+        this.collection = collection;
+    }
+
+    @Override
+    public void passArguments(String[] arguments) throws CommandParsingException {
+        List<String> names = getArgumentNames();
+        x1 = parseLong(arguments[0], names.get(0));
+        y1 = parseLong(arguments[1], names.get(1));
+        x2 = parseLong(arguments[2], names.get(2));
+        y2 = parseLong(arguments[3], names.get(3));
+    }
+
+    @Override
+    public void run(Output output) {
+        output.printf("Elements in the collection inside the rectangle from (%d, %d) to (%d, %d):\n",
+                x1, y1, x2, y2);
+        List<Route> filteredRoutes = collection.filterInBox(x1, y1, x2, y2);
+        filteredRoutes.forEach(output::printlnFormatted);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
+import ru.bitte.lab5.Terminal;
+import ru.bitte.lab5.exceptions.CommandParsingException;
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An object of this class is used in {@link Terminal} as a command that filters the elements of the collection by their
+ * current coordinates and prints the formatted representations of the elements within a given distance from a point.
+ * The object of this class is used by supplying the coordinates of the point and the distance through the method
+ * {@code passArguments(String[])} and running by the {@code run(Output)} method.
+ * @see MultiArgumentCommand#passArguments(String[])
+ * @implNote A multi-argument command
+ */
+public class FilterNearCommand extends MultiArgumentCommand {
+    private final CollectionKeeper collection;
+    private long x;
+    private long y;
+    private long radius;
+
+    /**
+     * Constructs a {@code FilterNearCommand} object.
+     * @param collection the reference to a collection keeper of elements
+     */
+    public FilterNearCommand(CollectionKeeper collection) {
+        super("filter_near", List.of("x", "y", "r"), "output elements the current coordinates of which are " +
+                "within a given distance from a point");
+        this.collection = collection;
+    }
+
+    @Override
+    public void passArguments(String[] arguments) throws CommandParsingException {
+        List<String> names = getArgumentNames();
+        long newRadius = parseLong(arguments[2], names.get(2));
+        if (newRadius < 0) {
+            throw new CommandParsingException("The argument \"r\" can't be negative. Please see \"help\" on command " +
+                    "usage.");
+        }
+        x = parseLong(arguments[0], names.get(0));
+        y = parseLong(arguments[1], names.get(1));
+        radius = newRadius;
+    }
+
+    @Override
+    public void run(Output output) {
+        output.printf("Elements in the collection within %d from (%d, %d):\n", radius, x, y);
+        List<Route> filteredRoutes = collection.filterNear(x, y, radius);
+        filteredRoutes.forEach(output::printlnFormatted);
+    }
+}
@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 
 import java.util.*;
@@ -8,7 +9,7 @@ import java.util.*;
 
 /**
  * An object of this class is used in {@link Terminal} as a command that outputs the list of available commands and
- * their descriptions. The object of this class is used by running the {@code run()} method.
+ * their descriptions. The object of this class is used by running the {@code run(Output)} method.
  * @implNote A no-argument command
  */
 public class HelpCommand extends Command {
@@ -24,30 +25,40 @@ public class HelpCommand extends Command {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         List<Command> commandsObjects = new ArrayList<>(commands.values());
         commandsObjects.sort(Comparator.comparing(Command::getName));
-        System.out.println("Available commands:");
+        output.println("Available commands:");
         Iterator<Command> iterator = commandsObjects.iterator();
         while (iterator.hasNext()) {
             Command command = iterator.next();
-            System.out.print(" - " + command.getName());
-            if (command instanceof ArgumentCommand) { // appends the argument name if it's an argument command
-                System.out.print(" " + ((ArgumentCommand) command).getArgumentName());
+            output.print(" - " + command.getName());
+            if (command instanceof OptionalArgumentCommand) { // appends the argument name in brackets if it's optional
+                output.print(" [" + ((ArgumentCommand) command).getArgumentName() + "]");
+            } else if (command instanceof ArgumentCommand) { // appends the argument name if it's an argument command
+                output.print(" " + ((ArgumentCommand) command).getArgumentName());
+            } else if (command instanceof MultiArgumentCommand) { // appends the argument names, optional in brackets
+                List<String> names = ((MultiArgumentCommand) command).getArgumentNames();
+                for (int i = 0; i < names.size(); i++) {
+                    boolean optional = i >= ((MultiArgumentCommand) command).getRequiredArgumentCount();
+                    output.print(optional ? " [" + names.get(i) + "]" : " " + names.get(i));
+                }
+            } else if (command instanceof ExpressionCommand) { // appends the name of the expression argument
+                output.print(" " + ((ExpressionCommand) command).getArgumentName());
             } else if (command instanceof IDCommand) { // appends the word "id" if it's an id command
-                System.out.print(" id");
+                output.print(" id");
             }
             if (command instanceof ElementCommand) { // appends "{element}" if it's an element command
-                System.out.print(" {element}");
+                output.print(" {element}");
             }
             // prints a period after the last command
             if (!iterator.hasNext()) {
-                System.out.println(" : " + command.getDescription() + ".");
+                output.println(" : " + command.getDescription() + ".");
             } else {
-                System.out.println(" : " + command.getDescription() + ",");
+                output.println(" : " + command.getDescription() + ",");
             }
         }
-        System.out.println("Note: the \"{element}\" commands should not be provided an element argument. Instead, " +
+        output.println("Note: the \"{element}\" commands should not be provided an element argument. Instead, " +
                 "an element constructor is called.");
     }
 }
@@ -1,5 +1,6 @@
 package ru.bitte.lab5.commands;
 
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 
 import java.util.Deque;
@@ -7,7 +8,7 @@ import java.util.Deque;
 /**
  * An object of this class is used in {@link Terminal} as a command that outputs the last 15 used commands in the current
  * terminal. The commands are printed without their arguments. The object of this class is used by running
- * the {@code run()} method.
+ * the {@code run(Output)} method.
  * @implNote A no-argument command
  */
 public class HistoryCommand extends Command {
@@ -23,8 +24,8 @@ public class HistoryCommand extends Command {
     }
 
     @Override
-    public void run() {
-        System.out.println("Last 15 used commands:");
-        history.forEach(System.out::println);
+    public void run(Output output) {
+        output.println("Last 15 used commands:");
+        history.forEach(output::println);
     }
 }
@@ -0,0 +1,99 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.exceptions.CommandParsingException;
+
+import java.util.List;
+
+/**
+ * An abstract class that extends the abstract class {@link Command} used for implementing commands that need several
+ * arguments separated by spaces to run. The arguments are named, and the last of them may be optional, in which case
+ * the command can be run with only the first few of them. The command checks and converts the values of the arguments
+ * itself when they're passed, so that a command with invalid arguments isn't run at all.
+ */
+public abstract class MultiArgumentCommand extends Command {
+    private final List<String> argumentNames;
+    private final int requiredArgumentCount;
+
+    /**
+     * Initializes the fields with the provided parameters. All the arguments of the command are required.
+     * @param name the name of the command
+     * @param argumentNames the names of the command's arguments in the order they're provided in
+     * @param desc the command description
+     */
+    public MultiArgumentCommand(String name, List<String> argumentNames, String desc) {
+        this(name, argumentNames, argumentNames.size(), desc);
+    }
+
+    /**
+     * Initializes the fields with the provided parameters.
+     * @param name the name of the command
+     * @param argumentNames the names of the command's arguments in the order they're provided in
+     * @param requiredArgumentCount the number of the first arguments that are required, the rest being optional
+     * @param desc the command description
+     */
+    public MultiArgumentCommand(String name, List<String> argumentNames, int requiredArgumentCount, String desc) {
+        super(name, desc);
+        this.argumentNames = List.copyOf(argumentNames);
+        this.requiredArgumentCount = requiredArgumentCount;
+    }
+
+    /**
+     * Returns the names of the command's arguments
+     * @return an unmodifiable {@link List} of the names in the order the arguments are provided in
+     */
+    public List<String> getArgumentNames() {
+        return argumentNames;
+    }
+
+    /**
+     * Returns the number of the command's required arguments
+     * @return the number of the first arguments that are required
+     */
+    public int getRequiredArgumentCount() {
+        return requiredArgumentCount;
+    }
+
+    /**
+     * Sets the arguments with which the command will run the next time
+     * @param arguments the values of the arguments, at least as many as there are required arguments and at most as
+     * many as there are argument names
+     * @throws CommandParsingException if any of the values is invalid
+     */
+    public abstract void passArguments(String[] arguments) throws CommandParsingException;
+
+    /**
+     * Converts the value of an argument to a {@code long} number.
+     * @param value the value of the argument
+     * @param argumentName the name of the argument, used in the error message
+     * @return the {@code long} value
+     * @throws CommandParsingException if the value isn't an integer
+     */
+    protected static long parseLong(String value, String argumentName) throws CommandParsingException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new CommandParsingException("The argument \"" + argumentName + "\" must be an integer. Please see " +
+                    "\"help\" on command usage.");
+        }
+    }
+
+    /**
+     * Converts the value of an argument to a finite {@code float} number.
+     * @param value the value of the argument
+     * @param argumentName the name of the argument, used in the error message
+     * @return the {@code float} value
+     * @throws CommandParsingException if the value isn't a finite number
+     */
+    protected static float parseFloat(String value, String argumentName) throws CommandParsingException {
+        try {
+            float number = Float.parseFloat(value);
+            if (Float.isFinite(number)) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+            // handled below, together with the infinite values
+        }
+        throw new CommandParsingException("The argument \"" + argumentName + "\" must be a number. Please see " +
+                "\"help\" on command usage.");
+    }
+}
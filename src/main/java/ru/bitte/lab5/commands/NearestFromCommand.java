@@ -0,0 +1,57 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
+import ru.bitte.lab5.Terminal;
+import ru.bitte.lab5.exceptions.CommandParsingException;
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An object of this class is used in {@link Terminal} as a command that finds the elements of the collection the
+ * starting locations of which are the nearest to a given point and prints their formatted representations in the
+ * ascending order of the distances. The object of this class is used by supplying the coordinates of the point and the
+ * number of the elements through the method {@code passArguments(String[])} and running by the
+ * {@code run(Output)} method.
+ * @see MultiArgumentCommand#passArguments(String[])
+ * @implNote A multi-argument command
+ */
+public class NearestFromCommand extends MultiArgumentCommand {
+    private final CollectionKeeper collection;
+    private long x;
+    private long y;
+    private float z;
+    private int count;
+
+    /**
+     * Constructs a {@code NearestFromCommand} object.
+     * @param collection the reference to a collection keeper of elements
+     */
+    public NearestFromCommand(CollectionKeeper collection) {
+        super("nearest_from", List.of("x", "y", "z", "k"), "output k elements the starting locations of which are " +
+                "the nearest to a given point");
+        this.collection = collection;
+    }
+
+    @Override
+    public void passArguments(String[] arguments) throws CommandParsingException {
+        List<String> names = getArgumentNames();
+        long newCount = parseLong(arguments[3], names.get(3));
+        if (newCount < 1) {
+            throw new CommandParsingException("The argument \"k\" must be positive. Please see \"help\" on command " +
+                    "usage.");
+        }
+        x = parseLong(arguments[0], names.get(0));
+        y = parseLong(arguments[1], names.get(1));
+        z = parseFloat(arguments[2], names.get(2));
+        count = (int) Math.min(newCount, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void run(Output output) {
+        output.printf("Elements in the collection with the starting location nearest to (%d, %d, %f):\n", x, y, z);
+        List<Route> nearestRoutes = collection.nearestFrom(x, y, z, count);
+        nearestRoutes.forEach(output::printlnFormatted);
+    }
+}
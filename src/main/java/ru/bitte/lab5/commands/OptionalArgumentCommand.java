@@ -0,0 +1,18 @@
+package ru.bitte.lab5.commands;
+
+/**
+ * An abstract class that extends the abstract class {@link ArgumentCommand} used for implementing commands that can
+ * be run both with and without a {@code String} argument. When no argument is provided, the argument is set to an
+ * empty string.
+ */
+public abstract class OptionalArgumentCommand extends ArgumentCommand {
+    /**
+     * Initializes the fields with the provided parameters.
+     * @param name the name of the command
+     * @param argumentName the name of the command's argument
+     * @param desc the command description
+     */
+    public OptionalArgumentCommand(String name, String argumentName, String desc) {
+        super(name, argumentName, desc);
+    }
+}
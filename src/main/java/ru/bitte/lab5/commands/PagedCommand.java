@@ -0,0 +1,115 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.ElementCursor;
+import ru.bitte.lab5.Output;
+import ru.bitte.lab5.exceptions.CommandParsingException;
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An abstract class that extends the abstract class {@link MultiArgumentCommand} used for implementing commands that
+ * output the elements of the collection either all at once or page by page. Run without arguments, the command outputs
+ * all the elements. Run with a limit and an optional offset, it opens a cursor over the elements (see
+ * {@link ElementCursor}), skips the offset and outputs at most the limit of elements. Run with the "next" argument, it
+ * outputs the following page of the last opened cursor, which takes as long as the page itself no matter how far the
+ * cursor has gone.
+ */
+public abstract class PagedCommand extends MultiArgumentCommand {
+    private ElementCursor cursor; // the cursor of the last output page
+    private int limit; // the number of the elements in a page of the cursor
+    private int requestedLimit; // the limit of the next run, or 0 if all the elements are to be output
+    private long requestedOffset; // the offset of the next run
+    private boolean continued; // whether the next run continues the last cursor
+
+    /**
+     * Initializes the fields with the provided parameters.
+     * @param name the name of the command
+     * @param desc the command description
+     */
+    public PagedCommand(String name, String desc) {
+        super(name, List.of("limit", "offset"), 0, desc);
+    }
+
+    @Override
+    public void passArguments(String[] arguments) throws CommandParsingException {
+        if (arguments.length > 0 && arguments[0].equals("next")) {
+            if (arguments.length > 1) {
+                throw new CommandParsingException("The argument \"next\" can't be given an offset. Please see " +
+                        "\"help\" on command usage.");
+            }
+            if (cursor == null) {
+                throw new CommandParsingException("There's no page to continue. Please run \"" + getName() +
+                        " limit\" first.");
+            }
+            continued = true;
+            return;
+        }
+        long newLimit = arguments.length > 0 ? parseLong(arguments[0], "limit") : 0;
+        if (arguments.length > 0 && newLimit < 1) {
+            throw new CommandParsingException("The argument \"limit\" must be positive. Please see \"help\" on " +
+                    "command usage.");
+        }
+        long newOffset = arguments.length > 1 ? parseLong(arguments[1], "offset") : 0;
+        if (newOffset < 0) {
+            throw new CommandParsingException("The argument \"offset\" can't be negative. Please see \"help\" on " +
+                    "command usage.");
+        }
+        requestedLimit = (int) Math.min(newLimit, Integer.MAX_VALUE);
+        requestedOffset = newOffset;
+        continued = false;
+    }
+
+    @Override
+    public void run(Output output) {
+        if (!continued && requestedLimit == 0) {
+            runAll(output);
+            return;
+        }
+        if (!continued) {
+            cursor = openCursor();
+            cursor.skip(requestedOffset);
+            limit = requestedLimit;
+        }
+        long first = cursor.getPosition() + 1;
+        List<Route> page = cursor.next(limit);
+        if (page.isEmpty()) {
+            output.println("There are no more elements to output.");
+            return;
+        }
+        output.println(describePage(first, first + page.size() - 1));
+        page.forEach(element -> printElement(output, element));
+        if (cursor.hasNext()) {
+            output.printf("To see the next %d elements, enter \"%s next\".\n", limit, getName());
+        } else {
+            output.println("That's the end of the collection.");
+        }
+    }
+
+    /**
+     * Outputs all the elements at once, which is what the command does when it's run without arguments.
+     * @param output the {@link Output} the elements are written to
+     */
+    protected abstract void runAll(Output output);
+
+    /**
+     * Opens a cursor over the elements in the order the command outputs them in.
+     * @return a new {@link ElementCursor} at the first element
+     */
+    protected abstract ElementCursor openCursor();
+
+    /**
+     * Returns the heading of an output page.
+     * @param first the number of the first element of the page, starting from 1
+     * @param last the number of the last element of the page
+     * @return the {@code String} heading
+     */
+    protected abstract String describePage(long first, long last);
+
+    /**
+     * Writes the representation of an element in an output page, followed by a line separator.
+     * @param output the {@link Output} the element is written to
+     * @param element the element to be output
+     */
+    protected abstract void printElement(Output output, Route element);
+}
@@ -1,18 +1,23 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.ElementCursor;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.route.Route;
 
-import java.util.Set;
+import java.util.List;
 
 /**
  * An object of this class is used in {@link Terminal} as a command that prints all the elements in the maintained
  * collection in the ascending order (sorting by the distance value). The object of this class is used by running
- * the {@code run()} method.
- * @implNote A no-argument command
+ * the {@code run(Output)} method, optionally after supplying a page limit and offset, or "next", through the method
+ * {@code passArguments(String[])}, in which case only a page of the elements is output. The pages follow the distance
+ * index of the collection, so the collection is neither copied nor sorted for them.
+ * @see PagedCommand
+ * @implNote A paged command
  */
-public class PrintAscendingCommand extends Command {
+public class PrintAscendingCommand extends PagedCommand {
     private final CollectionKeeper collection;
 
     /**
@@ -20,16 +25,32 @@ public class PrintAscendingCommand extends Command {
      * @param collection the reference to a collection keeper of elements
      */
     public PrintAscendingCommand(CollectionKeeper collection) {
-        super("print_ascending", "output the collection elements in the ascending order");
+        super("print_ascending", "output the collection elements in the ascending order, or a page of \"limit\" " +
+                "elements after \"offset\" ones (\"print_ascending next\" outputs the next page)");
         this.collection = collection;
     }
 
     @Override
-    public void run() {
-        System.out.println("Collection elements in the ascending order:");
-        Set<Route> mirror = collection.copySorted();
+    protected void runAll(Output output) {
+        output.println("Collection elements in the ascending order:");
+        List<Route> mirror = collection.copySorted();
         for (Route element : mirror) {
-            System.out.println(element.format());
+            output.printlnFormatted(element);
         }
     }
+
+    @Override
+    protected ElementCursor openCursor() {
+        return collection.openSortedCursor();
+    }
+
+    @Override
+    protected String describePage(long first, long last) {
+        return "Collection elements " + first + "-" + last + " in the ascending order:";
+    }
+
+    @Override
+    protected void printElement(Output output, Route element) {
+        output.printlnFormatted(element);
+    }
 }
@@ -1,14 +1,14 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
-import ru.bitte.lab5.route.Route;
 
 import java.util.stream.Collectors;
 
 /**
  * An object of this class is used in {@link Terminal} as a command that prints all the unique distance values of the
- * elements of the maintained collection. The object of this class is used by running the {@code run()} method.
+ * elements of the maintained collection. The object of this class is used by running the {@code run(Output)} method.
  * @implNote A no-argument command
  */
 public class PrintUniqueCommand extends Command {
@@ -24,9 +24,9 @@ public class PrintUniqueCommand extends Command {
     }
 
     @Override
-    public void run() {
-        // get the distance values, keep only distinct, sort and join with a comma
-        System.out.println(collection.copyCollection().stream().map(Route::getDistance)
-                .distinct().sorted().map(x -> Integer.toString(x)).collect(Collectors.joining(", ")));
+    public void run(Output output) {
+        // get the distinct distance values in the ascending order and join with a comma
+        output.println(collection.getUniqueDistances().stream()
+                .map(x -> Integer.toString(x)).collect(Collectors.joining(", ")));
     }
 }
@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.exceptions.GetByIDException;
 import ru.bitte.lab5.route.Route;
@@ -8,7 +9,7 @@ import ru.bitte.lab5.route.Route;
 /**
  * An object of this class is used in {@link Terminal} as a command that removes an object with the provided ID from the
  * maintained collection. The object of this class is used by supplying an ID of a {@link Route} object through the
- * {@code passID(int)} method and then running by the {@code run()} method.
+ * {@code passID(int)} method and then running by the {@code run(Output)} method.
  * @implNote An ID command
  */
 public class RemoveByIDCommand extends Command implements IDCommand {
@@ -35,12 +36,12 @@ public class RemoveByIDCommand extends Command implements IDCommand {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         try {
             collection.removeByID(id);
-            System.out.println("Successfully removed the element by ID " + getID());
+            output.println("Successfully removed the element by ID " + getID());
         } catch (GetByIDException e) {
-            System.out.println("No element with such an ID found.");
+            output.println("No element with such an ID found.");
         }
     }
 }
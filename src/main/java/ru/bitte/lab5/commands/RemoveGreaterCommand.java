@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.route.Route;
 
@@ -11,7 +12,7 @@ import java.util.Scanner;
  * An object of this class is used in {@link Terminal} as a command that the elements of the collection the distance of
  * which is greater than the distance of the provided element. The object of this class is used by supplying a
  * {@code Route} object through the method of the parent {@link ElementCommand} class and then running by
- * the {@code run()} method.
+ * the {@code run(Output)} method.
  * @see ElementCommand#passElement(Route)
  * @implNote An element command
  */
@@ -29,23 +30,22 @@ public class RemoveGreaterCommand extends ElementCommand {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         Scanner in = new Scanner(System.in);
         // gets the elements the distance of which is greater than of the provided one
         List<Route> greaterElements = collection.getElementsGreaterThan(getElement());
         int n = greaterElements.size();
-        System.out.printf("Are you sure you want to remove %d elements from the collection? [Y/n]: ", n);
+        output.printf("Are you sure you want to remove %d elements from the collection? [Y/n]: ", n);
+        output.flush(); // the question must be seen before the answer is read
         String response = in.nextLine();
         if (response.equals("Y")) {
             // removes the elements
-            for (Route element : collection.copyCollection()) {
-                if (greaterElements.contains(element)) {
-                    collection.removeElement(element);
-                }
+            for (Route element : greaterElements) {
+                collection.removeElement(element);
             }
-            System.out.printf("Successfully removed %d elements.\n", n);
+            output.printf("Successfully removed %d elements.\n", n);
         } else {
-            System.out.println("Canceled the command.");
+            output.println("Canceled the command.");
         }
     }
 }
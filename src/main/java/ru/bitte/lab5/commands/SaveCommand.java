@@ -1,47 +1,69 @@
 package ru.bitte.lab5.commands;
 
-import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.BinarySnapshot;
+import ru.bitte.lab5.CollectionSaver;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Parser;
 import ru.bitte.lab5.Terminal;
 
-import javax.xml.transform.TransformerException;
 import java.io.File;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * An object of this class is used in {@link Terminal} as a command that saves the maintained collection to file with
  * an autogenerated name. The route objects are saved to an {@code .xml} file with all of their fields, including
  * the {@code id} and {@code creationDate}. The saved elements in the file can later be used to start
  * the program with them, except that the ID and creation date would be ignored and instantiated as new.
- * The name of the file is generated as: "collection_yyyy-MM-dd_HH-mm-ss.xml".
- * The object of this class is used by running the {@code run()} method.
- * @implNote A no-argument command
+ * If the collection was loaded from a binary snapshot, it's saved as a snapshot instead (see {@link BinarySnapshot}),
+ * which keeps the IDs and creation dates as they are. In that case, only the changes made since the last save are
+ * appended to the delta file of the last written snapshot, unless the command is run with the "--full" argument,
+ * which rewrites that snapshot with the whole collection and deletes its delta file.
+ * The name of a new file is generated as: "collection_yyyy-MM-dd_HH-mm-ss.xml" (or ".bin" for a snapshot).
+ * <br>The command can also be given a file to save the whole collection to, the format of which is picked by its
+ * extension: "save routes.bin" writes a snapshot and "save routes.xml" writes an XML file. Given only an extension,
+ * such as "save .bin", the command saves the collection to a file with a generated name in that format. The following
+ * saves keep to the format of the last given file, so after a snapshot has been written, only the changes are
+ * appended to its delta file, even if the collection was loaded from an XML file.
+ * The collection is written in the background by a {@link CollectionSaver}, so the command returns right away, and
+ * the outcome is reported once the file has been written.
+ * The object of this class is used by running the {@code run(Output)} method.
+ * @implNote An optional argument command
  */
-public class SaveCommand extends Command {
-    private final CollectionKeeper collection;
-    private final Parser parser;
+public class SaveCommand extends OptionalArgumentCommand {
+    private final CollectionSaver saver;
 
     /**
      * Constructs a {@code SaveCommand} object.
-     * @param collection the reference to a collection keeper of elements
-     * @param parser a reference to a {@link Parser} instance used for saving to a file
+     * @param saver a reference to a {@link CollectionSaver} instance used for saving the collection
      */
-    public SaveCommand(CollectionKeeper collection, Parser parser) {
-        super("save", "save the collection to a file");
-        this.collection = collection;
-        this.parser = parser;
+    public SaveCommand(CollectionSaver saver) {
+        super("save", "--full|file", "save the collection to a file, picking the format by its extension, or only " +
+                "the changes since the last save unless \"--full\" is given");
+        this.saver = saver;
     }
 
     @Override
-    public void run() {
-        String fileName = "collection_" +
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")) + ".xml";
-        try {
-            parser.writeToFile(collection.copyCollection(), new File(fileName));
-            System.out.println("Successfully saved the collection to: " + fileName);
-            } catch (TransformerException e) {
-                System.out.println("Couldn't save the file because:\n" + e.getMessage());
+    public void run(Output output) {
+        String argument = getArgument();
+        if (argument.equals("") || argument.equals("--full")) {
+            if (saver.save(argument.equals("--full"))) {
+                output.println("Saving the collection in the background...");
+            } else {
+                output.println("No changes since the last save.");
+            }
+        } else if (argument.startsWith("-")) {
+            output.println("Unknown option \"" + argument + "\". Please see \"help\" on command usage.");
+        } else {
+            // a bare extension stands for a file with a generated name
+            String lowerCase = argument.toLowerCase();
+            boolean extension = lowerCase.equals(BinarySnapshot.EXTENSION) || lowerCase.equals(Parser.EXTENSION);
+            File file = extension ? CollectionSaver.generateFile(lowerCase) : new File(argument);
+            if (!BinarySnapshot.isSnapshot(file) && !file.getName().toLowerCase().endsWith(Parser.EXTENSION)) {
+                output.println("The file must have the \"" + Parser.EXTENSION + "\" or \"" + BinarySnapshot.EXTENSION
+                        + "\" extension. Please see \"help\" on command usage.");
+            } else {
+                saver.save(file);
+                output.println("Saving the collection in the background...");
+            }
         }
     }
 }
@@ -1,15 +1,21 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.ElementCursor;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
+import ru.bitte.lab5.route.Route;
 
 /**
  * An object of this class is used in {@link Terminal} as a command that outputs all the elements in the maintained
  * representation in the standard string representation. The object of this class is used by running
- * the {@code run()} method.
- * @implNote A no-argument command
+ * the {@code run(Output)} method, optionally after supplying a page limit and offset, or "next", through the method
+ * {@code passArguments(String[])}, in which case only a page of the elements is output. The pages go through a
+ * snapshot of the collection taken when the first page is output.
+ * @see PagedCommand
+ * @implNote A paged command
  */
-public class ShowCommand extends Command {
+public class ShowCommand extends PagedCommand {
     private final CollectionKeeper collection;
 
     /**
@@ -17,12 +23,28 @@ public class ShowCommand extends Command {
      * @param collection the reference to a collection keeper of elements
      */
     public ShowCommand(CollectionKeeper collection) {
-        super("show", "output all of the collection elements in the string representation");
+        super("show", "output all of the collection elements in the string representation, or a page of \"limit\" " +
+                "elements after \"offset\" ones (\"show next\" outputs the next page)");
         this.collection = collection;
     }
 
     @Override
-    public void run() {
-        collection.copyCollection().forEach(System.out::println);
+    protected void runAll(Output output) {
+        collection.snapshot().forEach(output::println);
+    }
+
+    @Override
+    protected ElementCursor openCursor() {
+        return collection.openCursor();
+    }
+
+    @Override
+    protected String describePage(long first, long last) {
+        return "Collection elements " + first + "-" + last + ":";
+    }
+
+    @Override
+    protected void printElement(Output output, Route element) {
+        output.println(element);
     }
 }
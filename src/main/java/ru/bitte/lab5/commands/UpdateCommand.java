@@ -1,6 +1,7 @@
 package ru.bitte.lab5.commands;
 
 import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
 import ru.bitte.lab5.Terminal;
 import ru.bitte.lab5.exceptions.*;
 import ru.bitte.lab5.route.Route;
@@ -10,7 +11,7 @@ import ru.bitte.lab5.route.Route;
  * maintained collection by replacing the fields provided by the passed element. As such, the ID and creation date are
  * left unmodified, only the new field values are replaced. The object of this class is used by supplying an ID of
  * an element from the collection through the {@code passID(int)} method, a {@code Route} object through the method of
- * the parent {@link ElementCommand} class and then running by the {@code run()} method.
+ * the parent {@link ElementCommand} class and then running by the {@code run(Output)} method.
  * @see ElementCommand#passElement(Route)
  * @implNote An ID-element command
  */
@@ -38,7 +39,7 @@ public class UpdateCommand extends ElementCommand implements IDCommand {
     }
 
     @Override
-    public void run() {
+    public void run(Output output) {
         Route varElement;
         // tries to retrieve an object by the id and if fails
         try {
@@ -61,12 +62,12 @@ public class UpdateCommand extends ElementCommand implements IDCommand {
             }
             // replacing with the new modified object
             collection.replaceByID(varElement);
-            System.out.println("The element by ID " + getID() + " has been updated successfully.");
+            output.println("The element by ID " + getID() + " has been updated successfully.");
         } catch (GetByIDException e){
-            System.out.println("No element with such an ID found.");
+            output.println("No element with such an ID found.");
         } catch (ElementConstructionException e){
-            System.out.println("Couldn't change the object because: " + e.getMessage());
-            System.out.println("The element by the provided ID was left intact.");
+            output.println("Couldn't change the object because: " + e.getMessage());
+            output.println("The element by the provided ID was left intact.");
         }
     }
 }
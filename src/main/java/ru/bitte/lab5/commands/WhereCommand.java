@@ -0,0 +1,51 @@
+package ru.bitte.lab5.commands;
+
+import ru.bitte.lab5.CollectionKeeper;
+import ru.bitte.lab5.Output;
+import ru.bitte.lab5.RouteQuery;
+import ru.bitte.lab5.Terminal;
+import ru.bitte.lab5.exceptions.CommandParsingException;
+import ru.bitte.lab5.exceptions.QueryParsingException;
+import ru.bitte.lab5.route.Route;
+
+import java.util.List;
+
+/**
+ * An object of this class is used in {@link Terminal} as a command that selects the elements of the collection matching
+ * a query expression (see {@link RouteQuery}) and prints the selected elements' formatted representations. The object
+ * of this class is used by supplying the expression through the method {@code passExpression(String)}, which compiles
+ * it, and running by the {@code run(Output)} method.
+ * @see ExpressionCommand#passExpression(String)
+ * @implNote An expression command
+ */
+public class WhereCommand extends ExpressionCommand {
+    private final CollectionKeeper collection;
+    private RouteQuery query;
+
+    /**
+     * Constructs a {@code WhereCommand} object.
+     * @param collection the reference to a collection keeper of elements
+     */
+    public WhereCommand(CollectionKeeper collection) {
+        super("where", "expression", "output elements matching a given expression, e.g. " +
+                "distance > 50 and from.name = \"depot\"");
+        this.collection = collection;
+    }
+
+    @Override
+    public void passExpression(String expression) throws CommandParsingException {
+        try {
+            query = RouteQuery.compile(expression);
+        } catch (QueryParsingException e) {
+            throw new CommandParsingException("Invalid expression: " + e.getMessage() + ". Please see \"help\" on " +
+                    "command usage.");
+        }
+    }
+
+    @Override
+    public void run(Output output) {
+        output.printf("Elements in the collection matching \"%s\":\n", query);
+        List<Route> matchingRoutes = collection.where(query);
+        matchingRoutes.forEach(output::printlnFormatted);
+    }
+}
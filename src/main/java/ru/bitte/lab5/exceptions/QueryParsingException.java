@@ -0,0 +1,14 @@
+package ru.bitte.lab5.exceptions;
+
+/**
+ * A {@code QueryParsingException} is thrown when a query expression couldn't be parsed.
+ */
+public class QueryParsingException extends Exception {
+    /**
+     * Report a {@code QueryParsingException} with a specified message.
+     * @param message a {@code String} message indicating what is wrong with the expression
+     */
+    public QueryParsingException(String message) {
+        super(message);
+    }
+}
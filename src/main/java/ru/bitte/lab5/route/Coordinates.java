@@ -2,8 +2,6 @@ package ru.bitte.lab5.route;
 
 import ru.bitte.lab5.exceptions.ElementConstructionException;
 
-import java.util.Objects;
-
 /**
  * A {@code Coordinates} object represents a particular two-dimensional point in space. The two coordinates
  * are represented by {@code long} fields with the {@code X} field being less than -974 and the {@code Y} field being
@@ -11,7 +9,8 @@ import java.util.Objects;
  */
 public class Coordinates {
     private final long x; // the max value should be 926
-    private final Long y; // the min value should be -974, can't be null
+    private final long y; // the min value should be -974
+    private static final Interner<Coordinates> POOL = new Interner<>();
 
     /**
      * Returns a {@code Coordinates} object with the passed parameters.
@@ -28,6 +27,19 @@ public class Coordinates {
         }
     }
 
+    /**
+     * Returns the canonical {@code Coordinates} object with the passed parameters (see {@link Interner}), so that all
+     * the equal coordinates created this way share a single object.
+     * @param x the value of the <i>X</i> coordinate
+     * @param y the value of the <i>Y</i> coordinate
+     * @return the canonical {@code Coordinates} object
+     * @throws ElementConstructionException if either {@code X} is less than -974 or {@code Y} is greater than 926.
+     * @see #Coordinates(long, long)
+     */
+    public static Coordinates of(long x, long y) throws ElementConstructionException {
+        return POOL.intern(new Coordinates(x, y));
+    }
+
     /**
      * Returns a {@code long} value representing the location's <i>X</i> coordinate
      * @return the {@code long} value of the {@code X} field
@@ -37,10 +49,10 @@ public class Coordinates {
     }
 
     /**
-     * Returns a {@link Long} object representing a {@code long} value of the location's <i>Y</i> coordinate
-     * @return the {@code Long} value of the {@code Y} field
+     * Returns a {@code long} value representing the location's <i>Y</i> coordinate
+     * @return the {@code long} value of the {@code Y} field
      */
-    public Long getY() {
+    public long getY() {
         return y;
     }
 
@@ -55,7 +67,7 @@ public class Coordinates {
         if (otherObject == null) return false;
         if (this.getClass() != otherObject.getClass()) return false;
         Coordinates other = (Coordinates) otherObject;
-        return this.x == other.x && this.y.equals(other.y);
+        return this.x == other.x && this.y == other.y;
     }
 
     /**
@@ -65,7 +77,8 @@ public class Coordinates {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(x,y);
+        // the same value as Objects.hash(x, y), without boxing the fields into an array
+        return 31 * (31 + Long.hashCode(x)) + Long.hashCode(y);
     }
 
     /**
@@ -0,0 +1,60 @@
+package ru.bitte.lab5.route;
+
+/**
+ * This class holds the calculation of the {@code distance} field of {@link Route}, the length of a line segment between
+ * two points in a 3-d euclidean space truncated to an {@code int}, both for a single pair of points and for whole
+ * arrays of them at once. Both ways give exactly the same results.
+ * <br>The squares are computed by multiplying the differences by themselves, which gives the same values as
+ * {@code Math.pow(d, 2)} (the power of 2 is computed as a single multiplication there as well) without calling it.
+ * The batch method is a plain loop over primitive arrays with no branches and no calls other than the square root,
+ * which the JIT compiler turns into vector instructions where the hardware supports them.
+ * <br>The batch method is only of use where the points of many elements are already laid out in primitive arrays,
+ * which is the case when a snapshot is opened and the distances stored in it are checked against the points. The
+ * elements parsed from an XML file are created one by one, each calculating its own distance by the method for a
+ * single pair, since the parsing takes far longer than the calculation, and the queries by the distance use the
+ * distances already stored in the elements rather than calculating them again.
+ */
+public final class Distances {
+    private Distances() {
+    }
+
+    /**
+     * Calculates the distance between two points.
+     * @param x1 the <i>X</i> coordinate of the first point
+     * @param y1 the <i>Y</i> coordinate of the first point
+     * @param z1 the <i>Z</i> coordinate of the first point
+     * @param x2 the <i>X</i> coordinate of the second point
+     * @param y2 the <i>Y</i> coordinate of the second point
+     * @param z2 the <i>Z</i> coordinate of the second point
+     * @return the distance truncated to an {@code int}
+     */
+    public static int distance(long x1, long y1, float z1, long x2, long y2, float z2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        return (int) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Calculates the distances between the pairs of points stored in arrays, where the {@code i}-th elements of the
+     * arrays describe the {@code i}-th pair.
+     * @param fromX the <i>X</i> coordinates of the first points
+     * @param fromY the <i>Y</i> coordinates of the first points
+     * @param fromZ the <i>Z</i> coordinates of the first points
+     * @param toX the <i>X</i> coordinates of the second points
+     * @param toY the <i>Y</i> coordinates of the second points
+     * @param toZ the <i>Z</i> coordinates of the second points
+     * @param distances the array the distances are written to
+     * @param count the number of pairs, starting from the first elements of the arrays
+     * @throws IndexOutOfBoundsException if any of the arrays is shorter than {@code count}
+     */
+    public static void distances(long[] fromX, long[] fromY, float[] fromZ, long[] toX, long[] toY, float[] toZ,
+                                 int[] distances, int count) {
+        for (int i = 0; i < count; i++) {
+            double dx = toX[i] - fromX[i];
+            double dy = toY[i] - fromY[i];
+            double dz = toZ[i] - fromZ[i];
+            distances[i] = (int) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+    }
+}
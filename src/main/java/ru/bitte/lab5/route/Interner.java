@@ -0,0 +1,56 @@
+package ru.bitte.lab5.route;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * An object of the {@code Interner} class is a pool of canonical instances of an immutable value class, in the same
+ * way as {@link String#intern()} is for strings. Interning a value returns the instance equal to it that was interned
+ * first, so all the equal values interned by the program share a single instance, and comparing them with
+ * {@code equals} comes down to an identity check.
+ * <br>The pool only references the instances weakly, so an instance that isn't used anywhere else anymore is removed
+ * from the pool by the garbage collector. The pool is split into several parts by the hash codes of the values, each
+ * with its own lock, so that the values can be interned from multiple threads at once.
+ * @param <T> the type of the interned values, which must be immutable and must implement {@code equals} and
+ * {@code hashCode}
+ */
+public final class Interner<T> {
+    /**
+     * The pool of the names of the routes and the locations.
+     */
+    public static final Interner<String> NAMES = new Interner<>();
+    private static final int STRIPES = 16; // the number of the separately locked parts of the pool
+    private final WeakHashMap<T, WeakReference<T>>[] stripes;
+
+    /**
+     * Constructs an empty {@code Interner}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Interner() {
+        stripes = new WeakHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new WeakHashMap<>();
+        }
+    }
+
+    /**
+     * Returns the canonical instance of a value. If no equal value has been interned yet (or it isn't used anymore),
+     * the given value becomes the canonical one.
+     * @param value the value to be interned
+     * @return the canonical instance equal to the value
+     */
+    public T intern(T value) {
+        int hash = value.hashCode();
+        WeakHashMap<T, WeakReference<T>> stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            WeakReference<T> reference = stripe.get(value);
+            T canonical = reference == null ? null : reference.get();
+            if (canonical == null) {
+                // the value references itself weakly, so the entry doesn't keep the value from being collected
+                stripe.put(value, new WeakReference<>(value));
+                canonical = value;
+            }
+            return canonical;
+        }
+    }
+}
@@ -4,14 +4,15 @@ import java.util.Objects;
 
 /**
  * A {@code Location} object represents a particular location, namely its coordinates and name. The {@code X} and
- * {@code Y} coordinates are represented by {@link Long} objects, and the {@code Z} coordinate is a {@code float} field.
+ * {@code Y} coordinates are represented by {@code long} fields, and the {@code Z} coordinate is a {@code float} field.
  * The {@code name} is either the one provided or "Unnamed object" if it is empty.
  */
 public class Location {
-    private final Long x;
-    private final Long y; // can't be null
-    private final float z; // can't be null
+    private final long x;
+    private final long y;
+    private final float z;
     private final String name; // can't be empty nor null
+    private static final Interner<Location> POOL = new Interner<>();
 
     /**
      * Constructs a {@code Location} object with the passed parameters. If the provided {@code name} string parameer is
@@ -21,7 +22,7 @@ public class Location {
      * @param z the value of the <i>Z</i> coordinate
      * @param name the name of the location
      */
-    public Location(Long x, Long y, float z, String name) {
+    public Location(long x, long y, float z, String name) {
         this.x = x;
         this.y = y;
         this.z = z;
@@ -30,18 +31,32 @@ public class Location {
     }
 
     /**
-     * Returns a {@link Long} object representing a {@code long} value of the location's <i>X</i> coordinate
-     * @return the {@code Long} value of the {@code X} field
+     * Returns the canonical {@code Location} object with the passed parameters (see {@link Interner}), so that all the
+     * equal locations created this way share a single object. The name of the location is interned as well.
+     * @param x the value of the <i>X</i> coordinate
+     * @param y the value of the <i>Y</i> coordinate
+     * @param z the value of the <i>Z</i> coordinate
+     * @param name the name of the location, or an empty string for the default name
+     * @return the canonical {@code Location} object
+     * @see #Location(long, long, float, String)
+     */
+    public static Location of(long x, long y, float z, String name) {
+        return POOL.intern(new Location(x, y, z, Interner.NAMES.intern(name)));
+    }
+
+    /**
+     * Returns a {@code long} value representing the location's <i>X</i> coordinate
+     * @return the {@code long} value of the {@code X} field
      */
-    public Long getX() {
+    public long getX() {
         return x;
     }
 
     /**
-     * Returns a {@link Long} object representing a {@code long} value of the location's <i>Y</i> coordinate
-     * @return the {@code Long} value of the {@code Y} field
+     * Returns a {@code long} value representing the location's <i>Y</i> coordinate
+     * @return the {@code long} value of the {@code Y} field
      */
-    public Long getY() {
+    public long getY() {
         return y;
     }
 
@@ -72,7 +87,7 @@ public class Location {
         if (otherObject == null) return false;
         if (this.getClass() != otherObject.getClass()) return false;
         Location other = (Location) otherObject;
-        return this.x.equals(other.x) && this.y.equals(other.y)
+        return this.x == other.x && this.y == other.y
                 && this.z == other.z && this.name.equals(other.name);
     }
 
@@ -83,7 +98,12 @@ public class Location {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(x,y,z,name);
+        // the same value as Objects.hash(x, y, z, name), without boxing the fields into an array
+        int result = 1;
+        result = 31 * result + Long.hashCode(x);
+        result = 31 * result + Long.hashCode(y);
+        result = 31 * result + Float.hashCode(z);
+        return 31 * result + name.hashCode();
     }
 
     /**
@@ -3,13 +3,12 @@ package ru.bitte.lab5.route;
 import ru.bitte.lab5.exceptions.ElementConstructionException;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
 import java.util.Objects;
 import java.util.Random;
 
-import static java.lang.Math.*;
-
 /**
  * A {@code Route} object represents a route from a starting point {@code from} to a destination point {@code to}.
  * A route also has a name, a unique ID, the creation date, distance calculated from the starting and destination
@@ -18,22 +17,26 @@ import static java.lang.Math.*;
  * which has the {@code X} and {@code Y} coordinates represented by {@code long}, a {@code Z} coordinate represented
  * by a {@code float} and a name represented by a {@link String}. The name must not be null nor empty. The ID field is
  * represented by an {@code int} and is generated automatically as a random integer that is then incremented with every
- * new object. The creation date, {@code creationDate}, is an object of the class {@link LocalDateTime}. The distance
- * is an object of the {@link Integer} class and is calculated as the length of a line segment between the two points
- * {@code from} and {@code to}. If the calculated distance is less than or equal to 1, then the object cannot be created
- * and a {@link ElementConstructionException} is thrown.
+ * new object. The creation date, {@code creationDate}, is stored as a {@code long} number of nanoseconds since the
+ * epoch (see {@link #getCreationTime()}) and is available as an object of the class {@link LocalDateTime}. The
+ * distance is an {@code int} value calculated as the length of a line segment between the two points {@code from} and
+ * {@code to}. If the calculated distance is less than or equal to 1, then the object cannot be created and a
+ * {@link ElementConstructionException} is thrown.
  *
  * @implNote This class is immutable and the values returned by {@code change} methods are that same object with a
- * particular field modified.
+ * particular field modified. The fields are kept as primitive values and the hash code is computed once on creation, so
+ * comparing, hashing and indexing the objects allocates nothing.
  */
 public final class Route implements Comparable<Route> {
-    private final Integer id; // can't be null, must be greater than 0, is generated automatically
+    private final int id; // must be greater than 0, is generated automatically
     private final String name; // can't be null nor empty
     private final Coordinates coordinates; // can't be null
-    private final LocalDateTime creationDate; // can't be null, is generated automatically
+    private final long creationTime; // nanoseconds since the epoch in UTC, is generated automatically
     private final Location from; // can't be null
     private final Location to; // can't be null
-    private final Integer distance; // can't be null, must be greater than 1
+    private final int distance; // must be greater than 1
+    private final int hash; // the hash code of all the fields above
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
     private static int nextId = new Random().nextInt(1000,9999);
 
     /**
@@ -46,8 +49,8 @@ public final class Route implements Comparable<Route> {
      * @throws ElementConstructionException if the calculated distance between the points is less than or equal to 1
      */
     public Route(String name, Coordinates coordinates, Location from, Location to) throws ElementConstructionException {
-        this.id = nextId++;
-        this.creationDate = LocalDateTime.now();
+        this.id = generateId();
+        this.creationTime = toEpochNanos(LocalDateTime.now());
 //        this.id = abs(LocalDateTime.now().toString().hashCode());
         this.name = Objects.requireNonNull(name, "null name provided");
         if (name.length() == 0) throw new ElementConstructionException("Empty name string provided");
@@ -57,22 +60,88 @@ public final class Route implements Comparable<Route> {
         distance = calculateDistance(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ());
         if (distance <= 1)
             throw new ElementConstructionException("the calculated distance turned out to be less than or equal to 1");
+        this.hash = computeHash();
     }
 
     /* special constructor used for returning objects with changed fields
      (since Route is immutable and there needs to be a way to change some fields) */
-    private Route(Integer id, String name, Coordinates coordinates, LocalDateTime creationDate,
-                  Location from, Location to, Integer distance) throws ElementConstructionException {
+    private Route(int id, String name, Coordinates coordinates, long creationTime,
+                  Location from, Location to, int distance) throws ElementConstructionException {
         this.id = id;
         this.name = Objects.requireNonNull(name);
         if (name.length() == 0) throw new IllegalArgumentException("Empty name string provided");
         this.coordinates = Objects.requireNonNull(coordinates);
-        this.creationDate = creationDate;
+        this.creationTime = creationTime;
         this.from = Objects.requireNonNull(from);
         this.to = Objects.requireNonNull(to);
         this.distance = distance;
         if (distance <= 1)
             throw new ElementConstructionException("the calculated distance turned out to be less than or equal to 1");
+        this.hash = computeHash();
+    }
+
+    /**
+     * Returns a {@code Route} object restored from previously stored values of all of its fields, e.g. when it gets
+     * read back from a storage. Unlike the public constructor, the restored object keeps the provided ID and creation
+     * date, and the distance is calculated from the starting and destination points. The IDs generated for the new
+     * objects after this call are guaranteed to be greater than the provided one.
+     * @param id the unique ID of the restored object
+     * @param name the name of the restored object
+     * @param coordinates the current position in the route
+     * @param creationDate the creation date of the restored object
+     * @param from the coordinates of the starting point
+     * @param to the coordinates of the destination point
+     * @return the restored {@code Route} object
+     * @throws ElementConstructionException if the calculated distance between the points is less than or equal to 1
+     */
+    public static Route restore(int id, String name, Coordinates coordinates, LocalDateTime creationDate,
+                                Location from, Location to) throws ElementConstructionException {
+        return restore(id, name, coordinates, toEpochNanos(Objects.requireNonNull(creationDate)), from, to);
+    }
+
+    /**
+     * Returns a {@code Route} object restored from previously stored values of all of its fields, with the creation
+     * date stored as nanoseconds since the epoch. This is the way the objects are restored from the binary files, as
+     * it doesn't create a {@link LocalDateTime} object at all.
+     * @see #restore(int, String, Coordinates, LocalDateTime, Location, Location)
+     * @param id the unique ID of the restored object
+     * @param name the name of the restored object
+     * @param coordinates the current position in the route
+     * @param creationTime the creation date of the restored object as returned by {@link #getCreationTime()}
+     * @param from the coordinates of the starting point
+     * @param to the coordinates of the destination point
+     * @return the restored {@code Route} object
+     * @throws ElementConstructionException if the calculated distance between the points is less than or equal to 1
+     */
+    public static Route restore(int id, String name, Coordinates coordinates, long creationTime,
+                                Location from, Location to) throws ElementConstructionException {
+        Objects.requireNonNull(from, "null departure point provided");
+        Objects.requireNonNull(to, "null destination point provided");
+        int distance = calculateDistance(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ());
+        Route restored = new Route(id, name, coordinates, creationTime, from, to, distance);
+        reserveIds(id);
+        return restored;
+    }
+
+    /**
+     * Returns a {@code Route} object created from the values of all of its fields kept by a storage, the distance
+     * included. Unlike {@link #restore(int, String, Coordinates, long, Location, Location) restore}, it neither
+     * calculates the distance nor reserves the ID, since the storage has already done both when it took the element
+     * in (see {@link #reserveIds(int)}), so any number of threads can create the objects at once without waiting for
+     * each other.
+     * @param id the unique ID of the object, already reserved
+     * @param name the name of the object
+     * @param coordinates the current position in the route
+     * @param creationTime the creation date of the object as returned by {@link #getCreationTime()}
+     * @param from the coordinates of the starting point
+     * @param to the coordinates of the destination point
+     * @param distance the distance between the points, as calculated for the element taken in by the storage
+     * @return the {@code Route} object
+     * @throws ElementConstructionException if the distance is less than or equal to 1
+     */
+    public static Route materialize(int id, String name, Coordinates coordinates, long creationTime,
+                                    Location from, Location to, int distance) throws ElementConstructionException {
+        return new Route(id, name, coordinates, creationTime, from, to, distance);
     }
 
     /**
@@ -82,7 +151,7 @@ public final class Route implements Comparable<Route> {
      */
     public Route changeName(String newName) {
         try {
-            return new Route(this.id, newName, this.coordinates, this.creationDate, this.from, this.to, this.distance);
+            return new Route(this.id, newName, this.coordinates, this.creationTime, this.from, this.to, this.distance);
         } catch (ElementConstructionException e) {
             throw new RuntimeException(e);
         }
@@ -95,7 +164,7 @@ public final class Route implements Comparable<Route> {
      */
     public Route changeCoordinates(Coordinates newCoordinates) {
         try {
-            return new Route(this.id, this.name, newCoordinates, this.creationDate, this.from, this.to, this.distance);
+            return new Route(this.id, this.name, newCoordinates, this.creationTime, this.from, this.to, this.distance);
         } catch (ElementConstructionException e) {
             throw new RuntimeException(e);
         }
@@ -112,7 +181,7 @@ public final class Route implements Comparable<Route> {
     public Route changeFrom(Location newFrom) throws ElementConstructionException {
         int newDistance = calculateDistance(newFrom.getX(), newFrom.getY(), newFrom.getZ(),
                 to.getX(), to.getY(), to.getZ());
-        return new Route(this.id, this.name, this.coordinates, this.creationDate, newFrom, this.to, newDistance);
+        return new Route(this.id, this.name, this.coordinates, this.creationTime, newFrom, this.to, newDistance);
     }
 
     /**
@@ -126,14 +195,14 @@ public final class Route implements Comparable<Route> {
     public Route changeTo(Location newTo) throws ElementConstructionException {
         int newDistance = calculateDistance(from.getX(), from.getY(), from.getZ(),
                 newTo.getX(), newTo.getY(), newTo.getZ());
-        return new Route(this.id, this.name, this.coordinates, this.creationDate, this.from, newTo, newDistance);
+        return new Route(this.id, this.name, this.coordinates, this.creationTime, this.from, newTo, newDistance);
     }
 
     /**
      * Returns the unique ID of the object.
-     * @return the integer value of the {@code id} field contained in a wrapper
+     * @return the integer value of the {@code id} field
      */
-    public Integer getId() {
+    public int getId() {
         return id;
     }
 
@@ -154,12 +223,31 @@ public final class Route implements Comparable<Route> {
     }
 
     /**
-     * Returns the {@link LocalDateTime} object of this {@code Route} instance
-     *
-     * @return the unique {@link LocalDateTime} object captured at the object's creation moment
+     * Returns the {@link LocalDateTime} object of this {@code Route} instance, created from the stored creation time
+     * @return the {@link LocalDateTime} object of the object's creation moment
+     */
+    public LocalDateTime getCreationDate() {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(creationTime, NANOS_PER_SECOND),
+                (int) Math.floorMod(creationTime, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    /**
+     * Returns the creation date of this {@code Route} instance as the number of nanoseconds since the epoch, taking
+     * the local date and time as if they were in UTC. The value is meant for storing the date compactly, and the date
+     * restored from it is exactly the same as the original one.
+     * @implNote A {@code long} value only covers the dates between the years 1677 and 2262
+     * @return the creation date in nanoseconds
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Returns the creation date of this {@code Route} instance formatted in the medium localized style
+     * @return the formatted {@code String} representation of the creation date
      */
     public String getFormattedDate() {
-        return creationDate.format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM));
+        return getCreationDate().format(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM));
     }
 
     /**
@@ -179,11 +267,10 @@ public final class Route implements Comparable<Route> {
     }
 
     /**
-     * Returns the {@link Integer} value of the distance between the start and the end of the {@code Route}.
+     * Returns the {@code int} value of the distance between the start and the end of the {@code Route}.
      * @return the integer value of the route distance calculated from the {@code from} and {@code to} fields
-     * contained in a wrapper
      */
-    public Integer getDistance() {
+    public int getDistance() {
         return distance;
     }
 
@@ -191,6 +278,7 @@ public final class Route implements Comparable<Route> {
      * Returns an inline representation of a {@code Route} object.
      * @return A single-line {@code String} representation of a {@code Route} object with values of single fields
      * separated by semicolons and inside values of them separated by commas
+     * @see RouteFormatter#appendFormatted(StringBuilder, Route)
      */
     public String format() {
         return String.format("ID: %d; name: %s; creationDate=%s; coordinates: x=%d, y=%d; from: x=%d, y=%d, z=%f, " +
@@ -211,7 +299,7 @@ public final class Route implements Comparable<Route> {
      */
     @Override
     public int compareTo(Route o) {
-        return this.distance - o.distance;
+        return Integer.compare(this.distance, o.distance);
     }
 
     // rewrite perhaps because objects can have the same id's apparently? -- not anymore haha
@@ -228,32 +316,63 @@ public final class Route implements Comparable<Route> {
         if (otherObject == null) return false;
         // check that the other objects is Route
         if (this.getClass() != otherObject.getClass()) return false;
-        return Objects.equals(this.id, ((Route) otherObject).getId());
+        return this.id == ((Route) otherObject).id;
     }
 
     /**
      * Returns a hash code for this {@code Route} object.
-     * @return a hash code value for this object,
-     * equal to the primitive int value represented by this {@code Route} object.
+     * @return a hash code value for this object, computed once when the object was created
      */
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, creationDate, coordinates, from, to);
+        return hash;
     }
 
     /**
      * Returns a String object representing this {@code Route}'s value.
      * @return a string representation of this object
+     * @see RouteFormatter#appendString(StringBuilder, Route)
      */
     @Override
     public String toString() {
         return "Route[id=" + id + ",name=" + name + ",coordinates=" + coordinates.toString()
-                + ",creationDate=" + creationDate.toString()
+                + ",creationDate=" + getCreationDate().toString()
                 + ",from=" + from.toString() + ",to=" + to.toString() + ",distance=" + distance + "]";
     }
 
+    /**
+     * Makes sure the IDs generated for the new {@code Route} objects are greater than the given one. It's meant for the
+     * objects that are going to be restored later, so that no new object takes their IDs in the meantime.
+     * @param id the greatest ID already taken
+     */
+    public static synchronized void reserveIds(int id) {
+        if (id >= nextId) nextId = id + 1;
+    }
+
+    // computes the hash code of the fields in the same way as Objects.hash, but without boxing them into an array
+    private int computeHash() {
+        int result = 1;
+        result = 31 * result + Integer.hashCode(id);
+        result = 31 * result + name.hashCode();
+        result = 31 * result + Long.hashCode(creationTime);
+        result = 31 * result + coordinates.hashCode();
+        result = 31 * result + from.hashCode();
+        result = 31 * result + to.hashCode();
+        return result;
+    }
+
+    // converts a local date and time to nanoseconds since the epoch, taking it as if it were in UTC
+    private static long toEpochNanos(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + dateTime.getNano();
+    }
+
+    // returns a new unique id
+    private static synchronized int generateId() {
+        return nextId++;
+    }
+
     // calculates the distance between two points in a 3-d euclidean space
-    private int calculateDistance(long x1, long y1, float z1, long x2, long y2, float z2) {
-        return (int) sqrt(pow((x2 - x1), 2) + pow((y2 - y1), 2) + pow((z2 - z1), 2));
+    private static int calculateDistance(long x1, long y1, float z1, long x2, long y2, float z2) {
+        return Distances.distance(x1, y1, z1, x2, y2, z2);
     }
 }
@@ -0,0 +1,234 @@
+package ru.bitte.lab5.route;
+
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * An object of this class writes the representations of {@link Route} objects into a {@link StringBuilder}, producing
+ * exactly the same text as {@link Route#format()} and {@link Route#toString()}, but without creating any objects for
+ * the most of the elements. The numbers are written digit by digit, and the parts that can't be written that way, i.e.
+ * the dates and the <i>Z</i> coordinates, are cached by their values after being written for the first time, so
+ * writing many elements with the same dates and coordinates creates only as many strings as there are distinct values.
+ * <br>The formatted representation follows the locale of formatting at the time the {@code RouteFormatter} is
+ * constructed, rather than at the time each element is written.
+ * @implNote The object isn't thread-safe. The localized dates are cached by the second, since the medium style
+ * doesn't show the fractions of a second
+ */
+public final class RouteFormatter {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int SECONDS_PER_DAY = 86_400;
+    private final char zeroDigit; // the digit zero of the locale, the other digits following it
+    private final DateTimeFormatter dateFormatter;
+    private final StringBuilder zText; // the formatted Z coordinate, reused by the formatter below
+    private final Formatter zFormatter;
+    private final TextCache formattedZ = new TextCache(1 << 14);
+    private final TextCache plainZ = new TextCache(1 << 14);
+    private final TextCache formattedDates = new TextCache(1 << 10); // by the epoch second
+    private final TextCache plainDates = new TextCache(1 << 6); // by the epoch day
+
+    /**
+     * Constructs a {@code RouteFormatter} following the current locale of formatting.
+     */
+    public RouteFormatter() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        zeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        dateFormatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM).withLocale(locale);
+        zText = new StringBuilder();
+        zFormatter = new Formatter(zText, locale);
+    }
+
+    /**
+     * Appends the formatted representation of an element, the same as the one returned by {@link Route#format()}.
+     * @param target the {@code StringBuilder} to append to
+     * @param element the element to be written
+     * @return the {@code target}
+     */
+    public StringBuilder appendFormatted(StringBuilder target, Route element) {
+        Coordinates coordinates = element.getCoordinates();
+        Location from = element.getFrom();
+        Location to = element.getTo();
+        target.append("ID: ");
+        appendLocalized(target, element.getId());
+        target.append("; name: ").append(element.getName()).append("; creationDate=");
+        appendFormattedDate(target, element.getCreationTime());
+        target.append("; coordinates: x=");
+        appendLocalized(target, coordinates.getX());
+        target.append(", y=");
+        appendLocalized(target, coordinates.getY());
+        target.append("; from: x=");
+        appendLocalized(target, from.getX());
+        target.append(", y=");
+        appendLocalized(target, from.getY());
+        target.append(", z=");
+        appendFormattedZ(target, from.getZ());
+        target.append(", name=").append(from.getName()).append("; to: x=");
+        appendLocalized(target, to.getX());
+        target.append(", y=");
+        appendLocalized(target, to.getY());
+        target.append(", z=");
+        appendFormattedZ(target, to.getZ());
+        target.append(", name=").append(to.getName()).append("; distance=");
+        appendLocalized(target, element.getDistance());
+        return target.append(';');
+    }
+
+    /**
+     * Appends the string representation of an element, the same as the one returned by {@link Route#toString()}.
+     * @param target the {@code StringBuilder} to append to
+     * @param element the element to be written
+     * @return the {@code target}
+     */
+    public StringBuilder appendString(StringBuilder target, Route element) {
+        Coordinates coordinates = element.getCoordinates();
+        target.append("Route[id=").append(element.getId()).append(",name=").append(element.getName())
+                .append(",coordinates=Coordinates[x=").append(coordinates.getX())
+                .append(",y=").append(coordinates.getY()).append("],creationDate=");
+        appendDate(target, element.getCreationTime());
+        target.append(",from=");
+        appendLocation(target, element.getFrom());
+        target.append(",to=");
+        appendLocation(target, element.getTo());
+        return target.append(",distance=").append(element.getDistance()).append(']');
+    }
+
+    // writes a location in the same way as Location.toString
+    private void appendLocation(StringBuilder target, Location location) {
+        target.append("Coordinates[x=").append(location.getX()).append(",y=").append(location.getY()).append(",z=");
+        float z = location.getZ();
+        String text = plainZ.get(Float.floatToRawIntBits(z));
+        if (text == null) {
+            text = Float.toString(z);
+            plainZ.put(Float.floatToRawIntBits(z), text);
+        }
+        target.append(text).append(",name=").append(location.getName()).append(']');
+    }
+
+    // writes a date in the same way as LocalDateTime.toString
+    private void appendDate(StringBuilder target, long creationTime) {
+        long second = Math.floorDiv(creationTime, NANOS_PER_SECOND);
+        int nano = (int) Math.floorMod(creationTime, NANOS_PER_SECOND);
+        long day = Math.floorDiv(second, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(second, SECONDS_PER_DAY);
+        String date = plainDates.get(day);
+        if (date == null) {
+            date = LocalDate.ofEpochDay(day).toString();
+            plainDates.put(day, date);
+        }
+        target.append(date).append('T');
+        appendPadded(target, secondOfDay / 3600, 2);
+        target.append(':');
+        appendPadded(target, secondOfDay / 60 % 60, 2);
+        if (secondOfDay % 60 > 0 || nano > 0) {
+            target.append(':');
+            appendPadded(target, secondOfDay % 60, 2);
+            if (nano > 0) {
+                // the fraction is shortened to milliseconds or microseconds when the rest of it is zero
+                target.append('.');
+                if (nano % 1_000_000 == 0) {
+                    appendPadded(target, nano / 1_000_000, 3);
+                } else if (nano % 1000 == 0) {
+                    appendPadded(target, nano / 1000, 6);
+                } else {
+                    appendPadded(target, nano, 9);
+                }
+            }
+        }
+    }
+
+    // writes a date in the same way as Route.getFormattedDate
+    private void appendFormattedDate(StringBuilder target, long creationTime) {
+        long second = Math.floorDiv(creationTime, NANOS_PER_SECOND);
+        String date = formattedDates.get(second);
+        if (date == null) {
+            date = dateFormatter.format(LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC));
+            formattedDates.put(second, date);
+        }
+        target.append(date);
+    }
+
+    // writes a Z coordinate in the same way as the "%f" format specifier
+    private void appendFormattedZ(StringBuilder target, float z) {
+        String text = formattedZ.get(Float.floatToRawIntBits(z));
+        if (text == null) {
+            zText.setLength(0);
+            zFormatter.format("%f", z);
+            text = zText.toString();
+            formattedZ.put(Float.floatToRawIntBits(z), text);
+        }
+        target.append(text);
+    }
+
+    // writes an integer in the same way as the "%d" format specifier, i.e. with the digits of the locale
+    private void appendLocalized(StringBuilder target, long value) {
+        int start = target.length();
+        target.append(value);
+        if (zeroDigit != '0') {
+            for (int i = start; i < target.length(); i++) {
+                char c = target.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    target.setCharAt(i, (char) (c - '0' + zeroDigit));
+                }
+            }
+        }
+    }
+
+    // writes a non-negative integer padded with zeros to the given number of digits
+    private static void appendPadded(StringBuilder target, int value, int digits) {
+        for (int limit = 10; digits > 1; digits--, limit *= 10) {
+            if (value < limit) {
+                target.append('0');
+            }
+        }
+        target.append(value);
+    }
+
+    /* a cache of the strings written for the values, as an open-addressing table with linear probing. once the table
+    is three quarters full, it's emptied to make room for the new values, so it never takes more than its fixed size */
+    private static final class TextCache {
+        private final long[] keys;
+        private final String[] texts; // null marks an empty slot
+        private int count;
+
+        private TextCache(int size) {
+            keys = new long[size];
+            texts = new String[size];
+        }
+
+        private String get(long key) {
+            int mask = texts.length - 1;
+            for (int slot = slot(key); texts[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return texts[slot];
+                }
+            }
+            return null;
+        }
+
+        private void put(long key, String text) {
+            if (count >= texts.length / 4 * 3) {
+                Arrays.fill(texts, null);
+                count = 0;
+            }
+            int mask = texts.length - 1;
+            int slot = slot(key);
+            while (texts[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            texts[slot] = text;
+            count++;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (texts.length - 1);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 /**
  * This package contains the class {@link Route} and its supplementary classes. Those are the {@link Location} and
- * {@link Coordinates} classes
+ * {@link Coordinates} classes, the {@link Interner} pool the equal values of which share a single instance, and the
+ * {@link RouteFormatter} writing the representations of the routes without creating any objects
  */
 package ru.bitte.lab5.route;
@@ -0,0 +1,165 @@
+package ru.bitte.lab5;
+
+import ru.bitte.lab5.exceptions.ElementConstructionException;
+import ru.bitte.lab5.exceptions.GetByIDException;
+import ru.bitte.lab5.route.Coordinates;
+import ru.bitte.lab5.route.Location;
+import ru.bitte.lab5.route.Route;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A throughput benchmark of a {@link CollectionKeeper} used by several threads at once. It's a plain program rather
+ * than a test, and is run with the main sources on the class path:
+ * <pre>
+ * java -cp classes:test-classes ru.bitte.lab5.CollectionKeeperBenchmark [size] [seconds] [store]
+ * </pre>
+ * where {@code size} is the number of the elements in the collection (200 000 by default), {@code seconds} is the
+ * length of every measurement (3 by default) and {@code store} is either {@code heap} (the default) or
+ * {@code columnar}.
+ * <br>The benchmark has two parts. The first one runs 1, 2, 4 and so on up to the number of the available processors
+ * of the reader threads, doing the reads by the ID and of the minimal element, while a single writer keeps replacing
+ * random elements, and prints the number of the reads and the writes per second, showing how the reads scale with the
+ * cores while the collection is being modified. The second one runs the same writer against the threads that keep
+ * taking the snapshots of the collection and iterating over them, and prints the average time of a write, showing
+ * what the snapshots cost the writer.
+ */
+public class CollectionKeeperBenchmark {
+    private static final int WARMUP_SECONDS = 1;
+    private static final int SNAPSHOT_STEPS = 64; // the number of the elements iterated over in every snapshot
+
+    /**
+     * The starting point of the benchmark.
+     * @param args the optional size of the collection, the length of a measurement in seconds and the type of the store
+     * @throws Exception if the elements couldn't be created or a thread was interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        Supplier<RouteStore> store = args.length > 2 && args[2].equals("columnar")
+                ? ColumnarRouteStore::new : HeapRouteStore::new;
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%,d elements, %d s per measurement, %d processors%n", size, seconds, processors);
+        CollectionKeeper keeper = new CollectionKeeper(store.get());
+        keeper.addElements(generate(size));
+        measure(keeper, size, 1, false, WARMUP_SECONDS);
+        System.out.println("readers  reads/s        writes/s");
+        for (int readers = 1; readers <= processors; readers *= 2) {
+            Result result = measure(keeper, size, readers, false, seconds);
+            System.out.printf("%7d  %,13.0f  %,13.0f%n", readers, result.readsPerSecond, result.writesPerSecond);
+        }
+        System.out.println("snapshot readers  snapshots/s    write time, ns");
+        for (int readers = 0; readers <= processors; readers = readers == 0 ? 1 : readers * 2) {
+            Result result = measure(keeper, size, readers, true, seconds);
+            System.out.printf("%16d  %,13.0f  %,14.0f%n", readers, result.readsPerSecond,
+                    1e9 / result.writesPerSecond);
+        }
+    }
+
+    // runs the readers alongside a single writer for the given time
+    private static Result measure(CollectionKeeper keeper, int size, int readers, boolean snapshots, int seconds)
+            throws InterruptedException {
+        LongAdder reads = new LongAdder();
+        LongAdder writes = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            long seed = i;
+            threads.add(new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                await(start);
+                long count = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    if (snapshots) {
+                        iterate(keeper.snapshot());
+                    } else if ((count & 1) == 0) {
+                        try {
+                            keeper.getByID(1 + random.nextInt(size));
+                        } catch (GetByIDException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    } else {
+                        keeper.getMinElement();
+                    }
+                    count++;
+                }
+                reads.add(count);
+            }));
+        }
+        threads.add(new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(-1);
+            await(start);
+            long count = 0;
+            while (System.nanoTime() < deadline[0]) {
+                try {
+                    keeper.replaceByID(generate(1 + random.nextInt(size), random));
+                } catch (GetByIDException | ElementConstructionException e) {
+                    throw new IllegalStateException(e);
+                }
+                count++;
+            }
+            writes.add(count);
+        }));
+        threads.forEach(Thread::start);
+        deadline[0] = System.nanoTime() + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Result(reads.sum() / (double) seconds, writes.sum() / (double) seconds);
+    }
+
+    // walks over the beginning of a snapshot, so that taking it isn't optimized away
+    private static void iterate(Collection<Route> snapshot) {
+        Iterator<Route> iterator = snapshot.iterator();
+        for (int i = 0; i < SNAPSHOT_STEPS && iterator.hasNext(); i++) {
+            if (iterator.next() == null) {
+                throw new IllegalStateException("null element in a snapshot");
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // the elements with the IDs from 1 to the given size
+    private static List<Route> generate(int size) throws ElementConstructionException {
+        SplittableRandom random = new SplittableRandom(0);
+        List<Route> elements = new ArrayList<>(size);
+        for (int id = 1; id <= size; id++) {
+            elements.add(generate(id, random));
+        }
+        return elements;
+    }
+
+    private static Route generate(int id, SplittableRandom random) throws ElementConstructionException {
+        Location from = Location.of(random.nextInt(10_000), random.nextInt(10_000), random.nextInt(100), "from");
+        Location to = Location.of(random.nextInt(10_000) + 10_000, random.nextInt(10_000), random.nextInt(100), "to");
+        return Route.restore(id, "route" + random.nextInt(1000), Coordinates.of(random.nextInt(500),
+                random.nextInt(500)), System.nanoTime(), from, to);
+    }
+
+    // the numbers of the reads and the writes per second done in a measurement
+    private static final class Result {
+        private final double readsPerSecond;
+        private final double writesPerSecond;
+
+        private Result(double readsPerSecond, double writesPerSecond) {
+            this.readsPerSecond = readsPerSecond;
+            this.writesPerSecond = writesPerSecond;
+        }
+    }
+}